@@ -0,0 +1,27 @@
+package com.bluediamond.assignment.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar. Takes the usual JMH command line, and adds the GC profiler unless another
+ * profiler is requested, so that every run also reports the bytes allocated per operation.
+ * <p>
+ * Build and run from the repository root with:
+ * <pre>
+ * mvn install -DskipTests
+ * mvn -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar [JMH options, e.g. OrderBookBenchmark -p bookSize=1000]
+ * </pre>
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
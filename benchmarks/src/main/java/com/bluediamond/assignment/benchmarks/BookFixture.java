@@ -0,0 +1,81 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.TickSize;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * Book prefilled with a number of resting orders spread evenly over a number of price levels per side, shared by
+ * the benchmarks. Order ids run from 1 to the book size, even ids resting on the BID side and odd ids on the ASK side.
+ * Bids rest at BEST_BID and below, asks at BEST_BID + 1 and above, so the book is never crossed.
+ */
+final class BookFixture {
+    static final long BEST_BID = 100_000L;
+    // Large enough for every benchmark to keep trading a lot without filling the order
+    static final long QUANTITY = 1_000_000_000L;
+
+    final OrderBook book;
+    final int bookSize;
+    final int levels;
+    final long[] bidTicks;
+    final long[] askTicks;
+    final BigDecimal[] bidPrices;
+    final BigDecimal[] askPrices;
+    // Order ids in random order, for benchmarks working through the resting orders
+    final long[] shuffledIds;
+
+    BookFixture(int bookSize, int levels) {
+        this.bookSize = bookSize;
+        this.levels = levels;
+        this.book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(bookSize));
+        bidTicks = new long[levels];
+        askTicks = new long[levels];
+        bidPrices = new BigDecimal[levels];
+        askPrices = new BigDecimal[levels];
+        for (int i = 0; i < levels; i++) {
+            bidTicks[i] = BEST_BID - i;
+            askTicks[i] = BEST_BID + 1L + i;
+            bidPrices[i] = TickSize.DEFAULT.toPrice(bidTicks[i]);
+            askPrices[i] = TickSize.DEFAULT.toPrice(askTicks[i]);
+        }
+        for (long orderId = 1L; orderId <= bookSize; orderId++) {
+            add(orderId);
+        }
+        shuffledIds = new long[bookSize];
+        for (int i = 0; i < bookSize; i++) {
+            shuffledIds[i] = i + 1L;
+        }
+        Random random = new Random(42L);
+        for (int i = bookSize - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long id = shuffledIds[i];
+            shuffledIds[i] = shuffledIds[j];
+            shuffledIds[j] = id;
+        }
+    }
+
+    /**
+     * Adds an order at the level its id maps to.
+     */
+    void add(long orderId) {
+        book.onNewOrder(sideOf(orderId), priceTicksOf(orderId), QUANTITY, orderId);
+    }
+
+    static Side sideOf(long orderId) {
+        return orderId % 2 == 0 ? Side.BID : Side.ASK;
+    }
+
+    long priceTicksOf(long orderId) {
+        int level = (int) ((orderId >>> 1) % levels);
+        return orderId % 2 == 0 ? bidTicks[level] : askTicks[level];
+    }
+
+    BigDecimal priceOf(long orderId) {
+        int level = (int) ((orderId >>> 1) % levels);
+        return orderId % 2 == 0 ? bidPrices[level] : askPrices[level];
+    }
+}
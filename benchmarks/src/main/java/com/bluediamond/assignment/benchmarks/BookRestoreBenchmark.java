@@ -0,0 +1,105 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.BookCheckpointer;
+import com.bluediamond.assignment.EventJournal;
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.TickSize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * How long a deep book takes to restore from its latest checkpoint plus the journal tail written after it, and how
+ * long a checkpoint of it takes. The trial journals bookSize resting orders, checkpoints them, then journals
+ * TAIL_EVENTS trades; each single shot restores a new book from those files, or writes a new checkpoint of the book.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookRestoreBenchmark {
+    private static final int TAIL_EVENTS = 100_000;
+
+    @Param({"1000000"})
+    int bookSize;
+
+    private Path directory;
+    private Path journalDirectory;
+    private Path checkpointDirectory;
+    private BookCheckpointer checkpointer;
+    private long eventSequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("restore-bench");
+        journalDirectory = directory.resolve("journal");
+        checkpointDirectory = directory.resolve("checkpoints");
+        OrderBook book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(bookSize));
+        try (EventJournal journal = new EventJournal(journalDirectory)) {
+            book.setJournal(journal);
+            for (long orderId = 1L; orderId <= bookSize; orderId++) {
+                boolean bid = orderId % 2 == 0;
+                book.onNewOrder(bid ? Side.BID : Side.ASK, bid ? 900L + orderId % 50 : 1000L + orderId % 50, 100L,
+                        orderId);
+            }
+            try (BookCheckpointer initial = new BookCheckpointer("BENCH", TickSize.DEFAULT, journalDirectory,
+                    checkpointDirectory)) {
+                initial.checkpoint();
+            }
+            for (long orderId = 1L; orderId <= TAIL_EVENTS; orderId++) {
+                book.onTrade(10L, orderId);
+            }
+        }
+        eventSequence = book.getEventSequence();
+        // Checkpoints taken by the checkpoint benchmark go elsewhere, leaving the journal tail to restore
+        checkpointer = new BookCheckpointer("BENCH", TickSize.DEFAULT, journalDirectory,
+                directory.resolve("checkpoint-bench"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        checkpointer.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public OrderBook restore() throws IOException {
+        OrderBook restored = BookCheckpointer.restore(
+                new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(bookSize)), journalDirectory,
+                checkpointDirectory);
+        if (restored.getEventSequence() != eventSequence) {
+            throw new IllegalStateException("Restored book is behind: " + restored.getEventSequence());
+        }
+        return restored;
+    }
+
+    @Benchmark
+    public long checkpoint() throws IOException {
+        return checkpointer.checkpoint();
+    }
+}
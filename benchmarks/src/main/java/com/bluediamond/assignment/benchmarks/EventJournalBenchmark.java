@@ -0,0 +1,93 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.EventJournal;
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.TickSize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of applying events to a book with and without an EventJournal, to check that journaling keeps up with the
+ * book. Every invocation adds a batch of orders and cancels as many older ones, keeping about a hundred orders on the
+ * book. Each iteration journals to a new directory, deleted afterwards, so that the segments written don't pile up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventJournalBenchmark {
+    static final int BATCH = 1_000;
+    private static final long RESTING_ORDERS = 100L;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private Path directory;
+    private EventJournal journal;
+    private OrderBook book;
+    private long nextOrderId;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(256));
+        if (journaled) {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = new EventJournal(directory);
+            book.setJournal(journal);
+        }
+        nextOrderId = 1L;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+            journal = null;
+        }
+    }
+
+    /**
+     * Adds BATCH orders and cancels as many, each counting as two events.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2 * BATCH)
+    public void addAndCancel() {
+        for (int i = 0; i < BATCH; i++) {
+            long orderId = nextOrderId++;
+            boolean bid = orderId % 2 == 0;
+            book.onNewOrder(bid ? Side.BID : Side.ASK, bid ? 900L + orderId % 20 : 1000L + orderId % 20, 100L,
+                    orderId);
+            if (orderId > RESTING_ORDERS) {
+                book.onCancelOrder(orderId - RESTING_ORDERS);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.FeedHandler;
+import com.bluediamond.assignment.FeedPacketWriter;
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.OrderMessageEncoder;
+import com.bluediamond.assignment.TickSize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per packet of a FeedHandler receiving packets of order messages from a local TCP publisher and applying them
+ * to a book. A publisher thread streams packets of new orders and cancels, keeping about a hundred orders on the book,
+ * as fast as the connection takes them; every invocation polls the handler until it has applied a batch of packets.
+ * The handler's statistics, decode latency included, are printed at the end of the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedHandlerBenchmark {
+    static final int BATCH = 1_000;
+    private static final int MESSAGES_PER_PACKET = 10;
+    private static final long RESTING_ORDERS = 100L;
+
+    private ServerSocketChannel server;
+    private FeedHandler handler;
+    private Thread publisher;
+    private volatile boolean closed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        OrderBook book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(256));
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        handler = new FeedHandler().register(1, book);
+        handler.connectTcp("bench", (InetSocketAddress) server.getLocalAddress());
+        SocketChannel channel = server.accept();
+        publisher = new Thread(() -> publish(channel), "publisher");
+        publisher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        closed = true;
+        handler.close();
+        publisher.join();
+        server.close();
+        System.out.println(handler.getStatistics());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void applyPackets() throws IOException {
+        int applied = 0;
+        while (applied < BATCH) {
+            applied += handler.poll();
+        }
+    }
+
+    /**
+     * Streams packets until the trial ends, each holding new orders and cancels of orders RESTING_ORDERS ids older.
+     */
+    private void publish(SocketChannel channel) {
+        FeedPacketWriter writer = new FeedPacketWriter();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        long orderId = 0L;
+        try (channel) {
+            while (!closed) {
+                buffer.clear();
+                while (buffer.remaining() >= 1024) {
+                    int start = buffer.position();
+                    OrderMessageEncoder encoder = writer.begin(buffer, start);
+                    for (int i = 0; i < MESSAGES_PER_PACKET; i += 2) {
+                        orderId++;
+                        boolean bid = orderId % 2 == 0;
+                        encoder.newOrder(1, bid ? Side.BID : Side.ASK,
+                                bid ? 900L + orderId % 20 : 1000L + orderId % 20, 100L, orderId);
+                        if (orderId > RESTING_ORDERS) {
+                            encoder.cancel(1, orderId - RESTING_ORDERS);
+                        } else {
+                            encoder.trade(1, 1L, orderId);
+                        }
+                    }
+                    buffer.position(start + writer.finish(MESSAGES_PER_PACKET));
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            // The handler closed the connection at the end of the trial
+        }
+    }
+}
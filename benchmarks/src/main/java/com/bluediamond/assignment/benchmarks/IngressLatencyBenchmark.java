@@ -0,0 +1,132 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.OrderMessage;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import com.bluediamond.assignment.RingBuffer;
+import com.bluediamond.assignment.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hand-off latency of the ArrayBlockingQueue ingress against the RingBuffer ingress with each WaitStrategy: the time
+ * from a message being published to the consumer thread picking it up and acknowledging it back to the producer.
+ * The consumer is left idle for a while before every message, outside the measurement, so that its wake-up cost
+ * shows; the sample time distribution gives the percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngressLatencyBenchmark {
+    private static final long IDLE_NANOS = 20_000L;
+
+    @Param({"queue", "busySpin", "yielding", "parking"})
+    String ingress;
+
+    private BlockingQueue<OrderMessage> queue;
+    private RingBuffer<OrderMessage> ring;
+    // Number of messages the consumer has picked up
+    private final AtomicLong consumed = new AtomicLong();
+    private Thread consumer;
+    private long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (ingress.equals("queue")) {
+            queue = new ArrayBlockingQueue<>(128);
+            consumer = new Thread(this::consumeQueue, "consumer");
+        } else {
+            WaitStrategy waitStrategy = switch (ingress) {
+                case "busySpin" -> new WaitStrategy.BusySpin();
+                case "yielding" -> new WaitStrategy.Yielding();
+                default -> new WaitStrategy.Parking(10_000L);
+            };
+            ring = new RingBuffer<>(128, OrderMessage::new, waitStrategy);
+            consumer = new Thread(this::consumeRing, "consumer");
+        }
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        publish(MessageType.Close);
+        consumer.join();
+    }
+
+    /**
+     * Leaves the consumer waiting for the next message, as it would between messages on a quiet feed.
+     */
+    @Setup(Level.Invocation)
+    public void idle() {
+        long until = System.nanoTime() + IDLE_NANOS;
+        while (System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    public void handOff() throws InterruptedException {
+        publish(MessageType.Cancel);
+        while (consumed.get() < published) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void publish(MessageType type) throws InterruptedException {
+        published++;
+        if (queue != null) {
+            // Queued messages are only handed over by reference, so each needs its own instance
+            queue.put(new OrderMessage().set(type, null, 0L, 0L, published));
+        } else {
+            long sequence = ring.next();
+            ring.get(sequence).set(type, null, 0L, 0L, published);
+            ring.publish(sequence);
+        }
+    }
+
+    private void consumeQueue() {
+        try {
+            while (queue.take().getMsgType() != MessageType.Close) {
+                consumed.lazySet(consumed.get() + 1L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consumeRing() {
+        try {
+            long nextSequence = 0L;
+            while (true) {
+                long available = ring.waitFor(nextSequence);
+                for (; nextSequence <= available; nextSequence++) {
+                    if (ring.get(nextSequence).getMsgType() == MessageType.Close) {
+                        return;
+                    }
+                    consumed.lazySet(consumed.get() + 1L);
+                }
+                ring.release(available);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.BookSnapshot;
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.OrderMessage;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import com.bluediamond.assignment.RingBuffer;
+import com.bluediamond.assignment.TickSize;
+import com.bluediamond.assignment.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of a book running on its own thread, fed through its BlockingQueue or RingBuffer ingress.
+ * Every invocation publishes a batch of messages, adding orders and cancelling older ones so that the book keeps a
+ * steady size, and waits until the book thread has applied all of them, as seen through the book's BookSnapshot.
+ * With metrics on, messages are stamped as they are published and the book records their latencies.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngressThroughputBenchmark {
+    static final int BATCH = 10_000;
+    private static final int RESTING_ORDERS = 1_000;
+
+    @Param({"queue", "ring"})
+    String ingress;
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    private BlockingQueue<OrderMessage> queue;
+    private RingBuffer<OrderMessage> ring;
+    private OrderBook book;
+    private BookSnapshot snapshot;
+    private Thread thread;
+    private long nextOrderId = 1L;
+    private long expectedVersion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (ingress.equals("queue")) {
+            queue = new ArrayBlockingQueue<>(1 << 14);
+            book = new OrderBook("BENCH", queue, TickSize.DEFAULT, new HashOrderIndex(RESTING_ORDERS * 2));
+        } else {
+            ring = new RingBuffer<>(1 << 14, OrderMessage::new, new WaitStrategy.Yielding());
+            book = new OrderBook("BENCH", ring, TickSize.DEFAULT, new HashOrderIndex(RESTING_ORDERS * 2));
+        }
+        snapshot = book.enableSnapshot();
+        if (metrics) {
+            book.enableMetrics();
+        }
+        thread = new Thread(book, "book");
+        thread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        publish(MessageType.Close, null, 0L, 0L, 0L);
+        thread.join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void applyBatch() throws InterruptedException {
+        for (int i = 0; i < BATCH; i += 2) {
+            long orderId = nextOrderId++;
+            boolean bid = orderId % 2 == 0;
+            publish(MessageType.New, bid ? Side.BID : Side.ASK, bid ? 1000L - orderId % 20 : 1001L + orderId % 20,
+                    100L, orderId);
+            if (orderId > RESTING_ORDERS) {
+                publish(MessageType.Cancel, null, 0L, 0L, orderId - RESTING_ORDERS);
+            } else {
+                publish(MessageType.Trade, null, 0L, 1L, orderId);
+            }
+        }
+        expectedVersion += BATCH;
+        while (snapshot.getVersion() < expectedVersion) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void publish(MessageType type, Side side, long priceTicks, long quantity, long orderId)
+            throws InterruptedException {
+        if (queue != null) {
+            // Queued messages are only handed over by reference, so each needs its own instance
+            OrderMessage msg = new OrderMessage().set(type, side, priceTicks, quantity, orderId);
+            queue.put(metrics ? msg.stamp() : msg);
+        } else {
+            long sequence = ring.next();
+            OrderMessage msg = ring.get(sequence).set(type, side, priceTicks, quantity, orderId);
+            if (metrics) {
+                msg.stamp();
+            }
+            ring.publish(sequence);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.TickSize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fill of a book in matching mode. Before each single shot, RESTING_ORDERS orders are laid out on twenty
+ * levels per side; the shot then sweeps all of them with crossing orders, each filling against four resting orders.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchingBenchmark {
+    static final int RESTING_ORDERS = 1_000_000;
+
+    private OrderBook book;
+    private long fills;
+    private long nextOrderId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(RESTING_ORDERS))
+                .setMatching(true)
+                .setFillListener((aggressorOrderId, restingOrderId, aggressorSide, priceTicks, quantity, sequence) ->
+                        fills++);
+        fills = 0L;
+        for (long orderId = 1L; orderId <= RESTING_ORDERS; orderId++) {
+            boolean bid = orderId % 2 == 0;
+            book.onNewOrder(bid ? Side.BID : Side.ASK, bid ? 900L - orderId % 20 : 901L + orderId % 20, 10L, orderId);
+        }
+        nextOrderId = RESTING_ORDERS + 1L;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (fills != RESTING_ORDERS || book.getBookDepth(Side.BID) != 0L || book.getBookDepth(Side.ASK) != 0L) {
+            throw new IllegalStateException("Sweeps left the book with orders on it after " + fills + " fills");
+        }
+    }
+
+    /**
+     * Sweeps the book, alternating sides, each crossing order taking the whole quantity of four resting orders.
+     */
+    @Benchmark
+    @OperationsPerInvocation(RESTING_ORDERS)
+    public void sweep() {
+        for (int i = 0; i < RESTING_ORDERS; i += 4) {
+            boolean bid = i % 8 == 0;
+            book.onNewOrder(bid ? Side.BID : Side.ASK, bid ? 1000L : 800L, 40L, nextOrderId++);
+        }
+    }
+}
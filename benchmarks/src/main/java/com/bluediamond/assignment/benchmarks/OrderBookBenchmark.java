@@ -0,0 +1,131 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Level2View operations that leave the size of the book unchanged: amendments, trades and queries, on
+ * books of various sizes and depths. Each call works on the next resting order in a random permutation, so that the
+ * benchmarks don't keep hitting the same cache lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBookBenchmark {
+    private static final int DEPTH_LEVELS = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    int bookSize;
+
+    @Param({"10", "1000"})
+    int levels;
+
+    private BookFixture fixture;
+    private int cursor;
+    // Orders currently amended up in quantity by onReplaceOrderQuantity
+    private boolean[] raised;
+    // Orders currently moved away from their original price by onReplaceOrderPrice
+    private boolean[] moved;
+    private final long[] depthPrices = new long[DEPTH_LEVELS];
+    private final long[] depthQuantities = new long[DEPTH_LEVELS];
+
+    @Setup
+    public void setUp() {
+        fixture = new BookFixture(bookSize, levels);
+        raised = new boolean[bookSize + 1];
+        moved = new boolean[bookSize + 1];
+    }
+
+    private long nextOrderId() {
+        if (++cursor == fixture.bookSize) {
+            cursor = 0;
+        }
+        return fixture.shuffledIds[cursor];
+    }
+
+    /**
+     * Amends the quantity of an order at its current price, each order alternately up one lot, which sends it to the
+     * back of its level, and back down, which keeps its place in the queue.
+     */
+    @Benchmark
+    public void onReplaceOrderQuantity() {
+        long orderId = nextOrderId();
+        int index = (int) orderId;
+        raised[index] = !raised[index];
+        fixture.book.onReplaceOrder(fixture.priceTicksOf(orderId),
+                raised[index] ? BookFixture.QUANTITY + 1L : BookFixture.QUANTITY, orderId);
+    }
+
+    /**
+     * Moves an order one level away from the top of its side, or back, sending it to the back of the queue.
+     */
+    @Benchmark
+    public void onReplaceOrderPrice() {
+        long orderId = nextOrderId();
+        int index = (int) orderId;
+        moved[index] = !moved[index];
+        long priceTicks = fixture.priceTicksOf(orderId);
+        long awayFromTop = BookFixture.sideOf(orderId) == Side.BID ? -1L : 1L;
+        fixture.book.onReplaceOrder(moved[index] ? priceTicks + awayFromTop : priceTicks, BookFixture.QUANTITY,
+                orderId);
+    }
+
+    /**
+     * Trades a single lot on an order, which is never filled.
+     */
+    @Benchmark
+    public void onTrade() {
+        fixture.book.onTrade(1L, nextOrderId());
+    }
+
+    @Benchmark
+    public long getSizeForPriceLevel() {
+        long orderId = nextOrderId();
+        return fixture.book.getSizeForPriceLevel(BookFixture.sideOf(orderId), fixture.priceOf(orderId));
+    }
+
+    @Benchmark
+    public long getSizeForPriceLevelTicks() {
+        long orderId = nextOrderId();
+        return fixture.book.getSizeForPriceLevel(BookFixture.sideOf(orderId), fixture.priceTicksOf(orderId));
+    }
+
+    @Benchmark
+    public long getBookDepth() {
+        return fixture.book.getBookDepth(BookFixture.sideOf(nextOrderId()));
+    }
+
+    @Benchmark
+    public BigDecimal getTopOfBook() {
+        return fixture.book.getTopOfBook(BookFixture.sideOf(nextOrderId()));
+    }
+
+    @Benchmark
+    public long getTopOfBookTicks() {
+        return fixture.book.getTopOfBookTicks(BookFixture.sideOf(nextOrderId()));
+    }
+
+    /**
+     * Copies the best DEPTH_LEVELS levels of a side into preallocated arrays.
+     */
+    @Benchmark
+    public int getDepth() {
+        return fixture.book.getDepth(BookFixture.sideOf(nextOrderId()), depthPrices, depthQuantities);
+    }
+}
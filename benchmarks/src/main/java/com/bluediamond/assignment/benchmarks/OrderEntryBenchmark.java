@@ -0,0 +1,102 @@
+package com.bluediamond.assignment.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adding and cancelling orders on books of various sizes and depths.
+ * Adding or cancelling changes the size of the book, so every invocation applies a batch of BATCH orders, and an
+ * untimed setup before each invocation puts the book back to its original size: the batch added by the previous
+ * invocation is cancelled, or the batch to be cancelled is added.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderEntryBenchmark {
+    static final int BATCH = 1_000;
+
+    @State(Scope.Thread)
+    public static class BookState {
+        @Param({"1000", "100000", "1000000"})
+        int bookSize;
+
+        @Param({"10", "1000"})
+        int levels;
+
+        BookFixture fixture;
+        long firstBatchId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = new BookFixture(bookSize, levels);
+            firstBatchId = bookSize + 1L;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AddState extends BookState {
+        private boolean added;
+
+        @Setup(Level.Invocation)
+        public void removeBatch() {
+            if (added) {
+                for (long orderId = firstBatchId; orderId < firstBatchId + BATCH; orderId++) {
+                    fixture.book.onCancelOrder(orderId);
+                }
+            }
+            added = true;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CancelState extends BookState {
+        @Setup(Level.Invocation)
+        public void addBatch() {
+            for (long orderId = firstBatchId; orderId < firstBatchId + BATCH; orderId++) {
+                fixture.add(orderId);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void onNewOrder(AddState state) {
+        BookFixture fixture = state.fixture;
+        for (long orderId = state.firstBatchId; orderId < state.firstBatchId + BATCH; orderId++) {
+            fixture.book.onNewOrder(BookFixture.sideOf(orderId), fixture.priceOf(orderId), BookFixture.QUANTITY,
+                    orderId);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void onNewOrderTicks(AddState state) {
+        BookFixture fixture = state.fixture;
+        for (long orderId = state.firstBatchId; orderId < state.firstBatchId + BATCH; orderId++) {
+            fixture.add(orderId);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void onCancelOrder(CancelState state) {
+        for (long orderId = state.firstBatchId; orderId < state.firstBatchId + BATCH; orderId++) {
+            state.fixture.book.onCancelOrder(orderId);
+        }
+    }
+}
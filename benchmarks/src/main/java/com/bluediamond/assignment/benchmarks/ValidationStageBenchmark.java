@@ -0,0 +1,147 @@
+package com.bluediamond.assignment.benchmarks;
+
+import com.bluediamond.assignment.BookSnapshot;
+import com.bluediamond.assignment.HashOrderIndex;
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderBook;
+import com.bluediamond.assignment.OrderMessage;
+import com.bluediamond.assignment.OrderMessageDecoder;
+import com.bluediamond.assignment.OrderMessageEncoder;
+import com.bluediamond.assignment.RingBuffer;
+import com.bluediamond.assignment.TickSize;
+import com.bluediamond.assignment.ValidationStage;
+import com.bluediamond.assignment.WaitStrategy;
+import com.bluediamond.assignment.WireBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of a book fed with batches of wire encoded messages, with and without a ValidationStage.
+ * Without the stage, the book thread decodes the batches itself and applies each message with
+ * process(OrderMessageDecoder); with it, the stage thread decodes and validates them and the book thread only applies
+ * the messages forwarded through its RingBuffer. Every invocation publishes a batch of messages, adding orders and
+ * cancelling older ones so that the book keeps a steady size, and waits until the book has applied all of them, as
+ * seen through its BookSnapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationStageBenchmark {
+    static final int BATCH = 10_000;
+    private static final int INSTRUMENT = 1;
+    private static final int MESSAGES_PER_ENTRY = 10;
+    private static final int RESTING_ORDERS = 1_000;
+
+    @Param({"false", "true"})
+    boolean stage;
+
+    private RingBuffer<WireBatch> inbound;
+    private BookSnapshot snapshot;
+    private Thread[] threads;
+    private final OrderMessageEncoder encoder = new OrderMessageEncoder();
+    private long nextOrderId = 1L;
+    private long expectedVersion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        inbound = new RingBuffer<>(1 << 10, () -> new WireBatch(1024), new WaitStrategy.Yielding());
+        if (stage) {
+            RingBuffer<OrderMessage> bookRing = new RingBuffer<>(1 << 14, OrderMessage::new,
+                    new WaitStrategy.Yielding());
+            OrderBook book = new OrderBook("BENCH", bookRing, TickSize.DEFAULT,
+                    new HashOrderIndex(RESTING_ORDERS * 2));
+            snapshot = book.enableSnapshot();
+            threads = new Thread[]{new Thread(new ValidationStage("BENCH", INSTRUMENT, inbound, bookRing), "stage"),
+                    new Thread(book, "book")};
+        } else {
+            OrderBook book = new OrderBook("BENCH", TickSize.DEFAULT, new HashOrderIndex(RESTING_ORDERS * 2));
+            snapshot = book.enableSnapshot();
+            threads = new Thread[]{new Thread(() -> decodeInline(book), "book")};
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        long sequence = inbound.next();
+        WireBatch batch = inbound.get(sequence);
+        batch.setLength(encoder.wrap(batch.getBuffer(), 0).close(INSTRUMENT).getEncodedLength());
+        inbound.publish(sequence);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void applyBatch() {
+        for (int i = 0; i < BATCH; i += MESSAGES_PER_ENTRY) {
+            long sequence = inbound.next();
+            WireBatch batch = inbound.get(sequence);
+            encoder.wrap(batch.getBuffer(), 0);
+            for (int j = 0; j < MESSAGES_PER_ENTRY; j += 2) {
+                long orderId = nextOrderId++;
+                boolean bid = orderId % 2 == 0;
+                encoder.newOrder(INSTRUMENT, bid ? Side.BID : Side.ASK,
+                        bid ? 1000L - orderId % 20 : 1001L + orderId % 20, 100L, orderId);
+                if (orderId > RESTING_ORDERS) {
+                    encoder.cancel(INSTRUMENT, orderId - RESTING_ORDERS);
+                } else {
+                    encoder.trade(INSTRUMENT, 1L, orderId);
+                }
+            }
+            batch.setLength(encoder.getEncodedLength());
+            inbound.publish(sequence);
+        }
+        expectedVersion += BATCH;
+        while (snapshot.getVersion() < expectedVersion) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Book thread without the stage: decodes every batch available and applies its messages straight from the
+     * buffer, publishing the snapshot after each run of batches as the book's own ring loop does.
+     */
+    private void decodeInline(OrderBook book) {
+        OrderMessageDecoder decoder = new OrderMessageDecoder();
+        long nextSequence = 0L;
+        try {
+            while (true) {
+                long available = inbound.waitFor(nextSequence);
+                for (; nextSequence <= available; nextSequence++) {
+                    WireBatch batch = inbound.get(nextSequence);
+                    decoder.wrap(batch.getBuffer(), 0, batch.getLength());
+                    while (decoder.next()) {
+                        if (!book.process(decoder)) {
+                            return;
+                        }
+                    }
+                }
+                inbound.release(available);
+                book.publishSnapshot();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
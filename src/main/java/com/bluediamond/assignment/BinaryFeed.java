@@ -0,0 +1,120 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Recorded feed in compact binary form, read through memory-mapped windows of the file so that feeds larger than a
+ * single mapping are supported.
+ * Layout, little-endian: a 16 byte header (magic, format version, message count), then 32 bytes per message (order
+ * id, price in ticks, quantity, message type ordinal, side: 0 none, 1 BID, 2 ASK, padding).
+ */
+public class BinaryFeed implements FeedSource {
+    static final int MAGIC = 0x42464544;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+    private static final long WINDOW_SIZE = (1L << 30) / RECORD_SIZE * RECORD_SIZE;
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    private final FileChannel channel;
+    private final long count;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long read;
+
+    public BinaryFeed(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0L);
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Not a binary feed: " + path);
+        }
+        count = header.getLong(8);
+        if (channel.size() < HEADER_SIZE + count * RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Truncated binary feed: " + path);
+        }
+    }
+
+    @Override
+    public boolean next(OrderMessage msg) throws IOException {
+        if (read == count) {
+            return false;
+        }
+        long offset = read * RECORD_SIZE;
+        if (window == null || offset - windowStart >= window.capacity()) {
+            windowStart = offset;
+            long size = Math.min(WINDOW_SIZE, (count - read) * RECORD_SIZE);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + windowStart, size);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int position = (int) (offset - windowStart);
+        byte side = window.get(position + 25);
+        msg.set(MESSAGE_TYPES[window.get(position + 24)], side == 0 ? null : side == 1 ? Side.BID : Side.ASK,
+                window.getLong(position + 8), window.getLong(position + 16), window.getLong(position));
+        read++;
+        return true;
+    }
+
+    /**
+     * @return The number of messages in the feed
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Writes every remaining message of a feed to a new binary feed file.
+     *
+     * @return The number of messages written
+     */
+    public static long write(Path path, FeedSource source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        OrderMessage msg = new OrderMessage();
+        long written = 0L;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(0L);
+            while (source.next(msg)) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    drain(channel, buffer);
+                }
+                Order order = msg.getOrderData();
+                Side side = order.getSide();
+                buffer.putLong(order.getOrderId()).putLong(order.getPriceTicks()).putLong(order.getQuantity())
+                        .put((byte) msg.getMsgType().ordinal()).put(side == null ? 0 : (byte) (side.ordinal() + 1))
+                        .putShort((short) 0).putInt(0);
+                written++;
+            }
+            drain(channel, buffer);
+            // The message count goes in once known
+            buffer.putLong(written).flip();
+            channel.write(buffer, 8L);
+        }
+        return written;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,212 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Takes binary checkpoints of an OrderBook's resting orders, and restores a book from its latest checkpoint plus the
+ * tail of its EventJournal.
+ * The live book is never paused or read: the checkpointer keeps a shadow copy of the book, which it brings up to
+ * date from the journal whenever a checkpoint is taken, and writes the shadow's orders out. A checkpoint therefore
+ * captures the book exactly as of a journal sequence, and restoring it only has to replay the events journaled after
+ * that sequence. checkpoint() may be called from any one thread, e.g. a scheduled executor.
+ * <p>
+ * Checkpoint files are named after the last journal sequence they include. Layout, little-endian: a 32 byte header
+ * (magic, format version, last journal sequence, order count), then 32 bytes per resting order (order id, price in
+ * ticks, quantity, side), bids before asks, each side from its worst to its best price level and each level in time
+ * priority.
+ */
+public class BookCheckpointer implements Closeable {
+    private static final Logger logger = LogManager.getLogger(BookCheckpointer.class);
+    static final int MAGIC = 0x424B4350;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ORDER_SIZE = 32;
+    static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int RETAINED_CHECKPOINTS = 2;
+
+    private final Path checkpointDirectory;
+    private final OrderBook shadow;
+    private final JournalReader reader;
+    private final OrderMessage msg = new OrderMessage();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Restores the shadow book from the latest checkpoint and journal, ready to take new checkpoints.
+     *
+     * @param id                  Identifier of the book
+     * @param tickSize            Price grid of the book
+     * @param journalDirectory    Directory of the book's EventJournal
+     * @param checkpointDirectory Directory of the book's checkpoints
+     */
+    public BookCheckpointer(String id, TickSize tickSize, Path journalDirectory, Path checkpointDirectory)
+            throws IOException {
+        this.checkpointDirectory = Files.createDirectories(checkpointDirectory);
+        this.shadow = new OrderBook(id, tickSize, new HashOrderIndex());
+        long lastSequence = load(shadow, checkpointDirectory);
+        this.reader = new JournalReader(journalDirectory, lastSequence + 1L);
+        catchUp();
+    }
+
+    /**
+     * Restores a book from its latest checkpoint, then applies the events journaled after it. The book comes back
+     * with its event sequence matching the journal, so that an EventJournal reopened on the same directory carries
+     * on where it left off.
+     *
+     * @param book                Empty book, without a journal attached
+     * @param journalDirectory    Directory of the book's EventJournal
+     * @param checkpointDirectory Directory of the book's checkpoints
+     * @return The book
+     */
+    public static OrderBook restore(OrderBook book, Path journalDirectory, Path checkpointDirectory)
+            throws IOException {
+        long lastSequence = load(book, checkpointDirectory);
+        try (JournalReader reader = new JournalReader(journalDirectory, lastSequence + 1L)) {
+            OrderMessage msg = new OrderMessage();
+            while (reader.read(msg)) {
+                book.process(msg);
+            }
+            logger.info("Restored book " + book.getId() + " from checkpoint at sequence " + lastSequence
+                    + " and " + (reader.getNextSequence() - lastSequence - 1L) + " journaled events");
+        }
+        return book;
+    }
+
+    /**
+     * Loads the latest checkpoint into an empty book.
+     *
+     * @return The last journal sequence included in the checkpoint, or 0 if there is none
+     */
+    static long load(OrderBook book, Path checkpointDirectory) throws IOException {
+        List<Path> checkpoints = listCheckpoints(checkpointDirectory);
+        if (checkpoints.isEmpty()) {
+            return 0L;
+        }
+        Path path = checkpoints.get(checkpoints.size() - 1);
+        MappedByteBuffer checkpoint;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            checkpoint = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        checkpoint.order(ByteOrder.LITTLE_ENDIAN);
+        if (checkpoint.capacity() < HEADER_SIZE || checkpoint.getInt(0) != MAGIC
+                || checkpoint.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a book checkpoint: " + path);
+        }
+        long lastSequence = checkpoint.getLong(8);
+        long orderCount = checkpoint.getLong(16);
+        if (checkpoint.capacity() != HEADER_SIZE + orderCount * ORDER_SIZE) {
+            throw new IOException("Truncated book checkpoint: " + path);
+        }
+        for (int i = 0; i < orderCount; i++) {
+            int offset = HEADER_SIZE + i * ORDER_SIZE;
+            book.restoreOrder(checkpoint.get(offset + 24) == 1 ? Side.BID : Side.ASK, checkpoint.getLong(offset + 8),
+                    checkpoint.getLong(offset + 16), checkpoint.getLong(offset));
+        }
+        book.setEventSequence(lastSequence);
+        return lastSequence;
+    }
+
+    /**
+     * Applies the events journaled since the previous call to the shadow book.
+     */
+    private void catchUp() throws IOException {
+        while (reader.read(msg)) {
+            shadow.process(msg);
+        }
+    }
+
+    /**
+     * Brings the shadow book up to date with the journal and writes it to a new checkpoint, removing older ones.
+     *
+     * @return The last journal sequence included in the checkpoint
+     */
+    public long checkpoint() throws IOException {
+        catchUp();
+        long lastSequence = reader.getNextSequence() - 1L;
+        Path path = checkpointDirectory.resolve(checkpointName(lastSequence));
+        Path temp = checkpointDirectory.resolve(checkpointName(lastSequence) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(lastSequence)
+                    .putLong(shadow.buys.size() + shadow.sells.size()).putLong(0L);
+            writeSide(channel, shadow.buys);
+            writeSide(channel, shadow.sells);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        // Readers only ever see complete checkpoints
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        List<Path> checkpoints = listCheckpoints(checkpointDirectory);
+        for (int i = 0; i < checkpoints.size() - RETAINED_CHECKPOINTS; i++) {
+            Files.deleteIfExists(checkpoints.get(i));
+        }
+        logger.info("Checkpointed book " + shadow.getId() + " at sequence " + lastSequence);
+        return lastSequence;
+    }
+
+    private void writeSide(FileChannel channel, BookSide side) throws IOException {
+        byte sideCode = side.getSide() == Side.BID ? (byte) 1 : (byte) 2;
+        for (int i = 0; i < side.getDepth(); i++) {
+            for (Order order = side.getLevelAt(i).getHead(); order != null; order = order.getNext()) {
+                if (buffer.remaining() < ORDER_SIZE) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.putLong(order.getOrderId()).putLong(order.getPriceTicks()).putLong(order.getQuantity())
+                        .putLong(sideCode);
+            }
+        }
+    }
+
+    static String checkpointName(long lastSequence) {
+        return String.format("%020d%s", lastSequence, CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * @return The checkpoint files of a directory, in sequence order
+     */
+    static List<Path> listCheckpoints(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(CHECKPOINT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return The shadow book, only to be used from the thread taking checkpoints
+     */
+    OrderBook getShadow() {
+        return shadow;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
@@ -0,0 +1,138 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of an OrderBook, per message type: how long messages wait between being stamped by their
+ * producer (OrderMessage.stamp()) and being picked up by the book thread, and how long the book takes to apply them.
+ * The book thread reads the clock once per message, the end of one message being the start of the next within a
+ * batch, so recording costs one System.nanoTime() call and two histogram updates per message.
+ * The histograms can be read from any thread, programmatically or through JMX once registered.
+ */
+public class BookMetrics implements BookMetricsMXBean {
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    private final String bookId;
+    private final LatencyHistogram[] queueWait = new LatencyHistogram[MESSAGE_TYPES.length];
+    private final LatencyHistogram[] processing = new LatencyHistogram[MESSAGE_TYPES.length];
+
+    BookMetrics(String bookId) {
+        this.bookId = bookId;
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            queueWait[i] = new LatencyHistogram();
+            processing[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the latencies of a message. Book thread only.
+     *
+     * @param msg         Message applied
+     * @param startNanos  Time the book thread started applying the message
+     * @param endNanos    Time the book thread finished applying the message
+     */
+    void record(OrderMessage msg, long startNanos, long endNanos) {
+        record(msg.getMsgType(), msg.getEnqueueNanos(), startNanos, endNanos);
+    }
+
+    /**
+     * Records the latencies of a message applied without an OrderMessage, such as straight from a decoder. Book
+     * thread only.
+     *
+     * @param type         Type of the message applied
+     * @param enqueueNanos Time the message was stamped by its producer, or 0 if it wasn't, recording no queue wait
+     * @param startNanos   Time the book thread started applying the message
+     * @param endNanos     Time the book thread finished applying the message
+     */
+    void record(MessageType type, long enqueueNanos, long startNanos, long endNanos) {
+        int index = type.ordinal();
+        if (enqueueNanos != 0L) {
+            queueWait[index].record(startNanos - enqueueNanos);
+        }
+        processing[index].record(endNanos - startNanos);
+    }
+
+    public LatencyHistogram getQueueWait(MessageType type) {
+        return queueWait[type.ordinal()];
+    }
+
+    public LatencyHistogram getProcessing(MessageType type) {
+        return processing[type.ordinal()];
+    }
+
+    /**
+     * @return Per message type, the queue wait latencies since the previous interval snapshot
+     */
+    public Map<MessageType, LatencyHistogram.Snapshot> intervalQueueWait() {
+        Map<MessageType, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(MessageType.class);
+        for (MessageType type : MESSAGE_TYPES) {
+            snapshots.put(type, queueWait[type.ordinal()].intervalSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return Per message type, the processing latencies since the previous interval snapshot
+     */
+    public Map<MessageType, LatencyHistogram.Snapshot> intervalProcessing() {
+        Map<MessageType, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(MessageType.class);
+        for (MessageType type : MESSAGE_TYPES) {
+            snapshots.put(type, processing[type.ordinal()].intervalSnapshot());
+        }
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getQueueWait() {
+        return snapshots(queueWait);
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getProcessing() {
+        return snapshots(processing);
+    }
+
+    private static Map<String, LatencyHistogram.Snapshot> snapshots(LatencyHistogram[] histograms) {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        for (MessageType type : MESSAGE_TYPES) {
+            snapshots.put(type.name(), histograms[type.ordinal()].snapshot());
+        }
+        return snapshots;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < MESSAGE_TYPES.length; i++) {
+            queueWait[i].reset();
+            processing[i].reset();
+        }
+    }
+
+    /**
+     * @return The JMX name the metrics are registered under
+     */
+    public ObjectName getObjectName() throws JMException {
+        return new ObjectName("com.bluediamond.assignment:type=OrderBook,name=" + ObjectName.quote(bookId));
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, getObjectName());
+    }
+
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(getObjectName());
+    }
+}
@@ -0,0 +1,23 @@
+package com.bluediamond.assignment;
+
+import java.util.Map;
+
+/**
+ * JMX view of a book's BookMetrics: latency histograms per message type, cumulative since the last reset.
+ */
+public interface BookMetricsMXBean {
+    /**
+     * @return Per message type, the time messages waited between being stamped by the producer and being applied
+     */
+    Map<String, LatencyHistogram.Snapshot> getQueueWait();
+
+    /**
+     * @return Per message type, the time the book took to apply messages
+     */
+    Map<String, LatencyHistogram.Snapshot> getProcessing();
+
+    /**
+     * Starts every histogram afresh.
+     */
+    void reset();
+}
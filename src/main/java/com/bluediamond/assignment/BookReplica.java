@@ -0,0 +1,240 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hot-standby follower of a primary OrderBook: it tails the primary's EventJournal, whose memory-mapped segments are
+ * shared with the primary's process, and applies every journaled event to its own book, on its own thread.
+ * Journaled events are the primary's accepted events, fills included, so the follower reaches exactly the primary's
+ * state at every sequence; it never matches orders itself. Queries are served from the follower's BookSnapshot,
+ * refreshed whenever the replica has caught up with the journal, away from the primary's thread.
+ * The replica measures its lag behind the journal, and checks that it is in sync with the primary by comparing
+ * checksums: verifyAt() posts the primary's checksum at a sequence, which the replica compares with its own once it
+ * has applied exactly that sequence. On failover, promote() stops following, applies whatever is left of the journal
+ * and hands the book over, ready to be driven as the new primary.
+ */
+public class BookReplica implements Runnable, Closeable {
+    private static final Logger logger = LogManager.getLogger(BookReplica.class);
+    private static final long IDLE_PARK_NANOS = 50_000L;
+
+    /**
+     * Checksum of the primary at a sequence, waiting to be compared.
+     */
+    private record Verification(long sequence, long checksum) {
+    }
+
+    private final OrderBook book;
+    private final JournalReader reader;
+    private final BookSnapshot snapshot;
+    private final OrderMessage msg = new OrderMessage();
+    private final Queue<Verification> verifications = new ConcurrentLinkedQueue<>();
+    // Claimed by whichever of run() and promote() or close() comes first, the latter never waiting for a thread that
+    // hasn't started
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicLong appliedSequence = new AtomicLong();
+    private final AtomicLong lag = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong missedVerifications = new AtomicLong();
+    private volatile boolean closed;
+    // Replica thread state
+    private Verification pending;
+
+    /**
+     * Restores the follower from the primary's latest checkpoint, if there is one, then follows the journal from the
+     * sequence after it.
+     *
+     * @param book                Empty follower book, without a journal attached; switched out of matching mode
+     * @param journalDirectory    Directory of the primary's EventJournal
+     * @param checkpointDirectory Directory of the primary's checkpoints, or null to replay the journal from its start
+     */
+    public BookReplica(OrderBook book, Path journalDirectory, Path checkpointDirectory) throws IOException {
+        this.book = book.setMatching(false);
+        long lastSequence = checkpointDirectory != null ? BookCheckpointer.load(book, checkpointDirectory) : 0L;
+        this.reader = new JournalReader(journalDirectory, lastSequence + 1L);
+        this.snapshot = book.enableSnapshot();
+        appliedSequence.set(lastSequence);
+    }
+
+    /**
+     * Follows the journal until the replica is closed or promoted, parking briefly whenever it has caught up. Returns
+     * straight away if the replica was already closed or promoted, or is already running.
+     */
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            logger.warn("Replica of " + book.getId() + " already started or stopped.");
+            return;
+        }
+        logger.info("Replica of " + book.getId() + " started...");
+        try {
+            while (!closed) {
+                if (poll() == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Replica of " + book.getId() + " failed to read the journal.", e);
+        } finally {
+            stopped.countDown();
+            logger.info("Replica of " + book.getId() + " stopped.");
+        }
+    }
+
+    /**
+     * Applies the records journaled since the previous call, checking the posted verifications along the way, then
+     * publishes the follower's snapshot and measures the lag. Replica thread only.
+     *
+     * @return The number of records applied
+     */
+    int poll() throws IOException {
+        int applied = 0;
+        while (reader.read(msg)) {
+            book.process(msg);
+            applied++;
+            verify(reader.getNextSequence() - 1L);
+        }
+        if (applied == 0) {
+            verify(reader.getNextSequence() - 1L);
+            return 0;
+        }
+        book.publishSnapshot();
+        long sequence = reader.getNextSequence() - 1L;
+        appliedSequence.lazySet(sequence);
+        lag.lazySet(reader.getWrittenSequence() - sequence);
+        return applied;
+    }
+
+    /**
+     * Compares the follower's checksum with the primary's for every posted verification at the sequence just applied,
+     * and gives up on those whose sequence was passed before they were posted.
+     */
+    private void verify(long sequence) {
+        while (true) {
+            if (pending == null && (pending = verifications.poll()) == null) {
+                return;
+            }
+            if (pending.sequence() > sequence) {
+                return;
+            }
+            if (pending.sequence() < sequence) {
+                missedVerifications.lazySet(missedVerifications.get() + 1L);
+            } else if (book.checksum() == pending.checksum()) {
+                verified.lazySet(verified.get() + 1L);
+            } else {
+                mismatches.lazySet(mismatches.get() + 1L);
+                logger.error("Replica of " + book.getId() + " out of sync with its primary at sequence " + sequence);
+            }
+            pending = null;
+        }
+    }
+
+    /**
+     * Posts the primary's checksum at a sequence, for the replica to compare with its own once it applies that
+     * sequence. May be called from any thread, typically the primary's book thread right after checksum().
+     *
+     * @param sequence Event sequence of the primary the checksum was taken at
+     * @param checksum The primary's checksum()
+     */
+    public void verifyAt(long sequence, long checksum) {
+        verifications.add(new Verification(sequence, checksum));
+    }
+
+    /**
+     * Stops following the journal and applies the rest of it, once the primary has stopped writing, so that the book
+     * can take over as primary. Attaching an EventJournal reopened on the same directory carries the journal on where
+     * the old primary left off.
+     *
+     * @return The follower book, now only to be used from the caller's thread or the one it hands it to
+     */
+    public OrderBook promote() throws InterruptedException {
+        stop();
+        try {
+            poll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info("Replica of " + book.getId() + " promoted at sequence " + getAppliedSequence());
+        return book;
+    }
+
+    /**
+     * @return The follower's snapshot, safe to query from any thread
+     */
+    public BookSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return The last journal sequence applied to the follower
+     */
+    public long getAppliedSequence() {
+        return appliedSequence.get();
+    }
+
+    /**
+     * @return The number of records the writer was ahead of the follower when the replica last caught up, as far as
+     * the reader's current journal segment goes
+     */
+    public long getLag() {
+        return lag.get();
+    }
+
+    /**
+     * @return The number of checksums found to match the primary's
+     */
+    public long getVerified() {
+        return verified.get();
+    }
+
+    /**
+     * @return The number of checksums that didn't match the primary's
+     */
+    public long getMismatches() {
+        return mismatches.get();
+    }
+
+    /**
+     * @return The number of verifications posted too late, after the follower had passed their sequence
+     */
+    public long getMissedVerifications() {
+        return missedVerifications.get();
+    }
+
+    /**
+     * Stops following the journal, waiting for the replica thread to finish its current poll.
+     */
+    @Override
+    public void close() {
+        try {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.close();
+    }
+
+    /**
+     * Stops the replica thread, if it was started, waiting for it to finish its current poll.
+     */
+    private void stop() throws InterruptedException {
+        closed = true;
+        if (started.compareAndSet(false, true)) {
+            stopped.countDown();
+        } else {
+            stopped.await();
+        }
+    }
+}
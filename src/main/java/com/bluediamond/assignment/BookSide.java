@@ -0,0 +1,358 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * One side (BID or ASK) of the OrderBook.
+ * Price levels are kept in an array sorted by tick price, with the best price at the end: most activity happens at
+ * the top of the book, so inserting or dropping a level there only shifts a few entries, and looking a level up is a
+ * binary search on primitive tick prices. Each level queues its orders in time priority.
+ * Adding an order therefore only costs a level lookup and an append, instead of re-sorting the whole side.
+ * Iterating the side visits the orders in price-time priority. The sides of an OffHeapOrderBook queue OrderSlots
+ * slots on their levels instead of orders, and find the level of a slot by its price.
+ * Emptied levels are kept for reuse, so a side that has reached its working depth no longer allocates levels.
+ * When the book publishes a BookSnapshot, the side tracks the lowest level index changed since the last publication,
+ * so that only the levels from there up to the top of the book are copied again.
+ */
+public class BookSide implements Iterable<Order> {
+    private static final int INITIAL_LEVELS = 64;
+
+    private final Side side;
+    private final TickSize tickSize;
+    private PriceLevel[] levels = new PriceLevel[INITIAL_LEVELS];
+    private int depth;
+    private PriceLevel[] freeLevels = new PriceLevel[INITIAL_LEVELS];
+    private int freeCount;
+    private int orderCount;
+    private boolean trackChanges;
+    private int dirtyFrom = Integer.MAX_VALUE;
+
+    public BookSide(Side side, TickSize tickSize) {
+        this.side = side;
+        this.tickSize = tickSize;
+    }
+
+    /**
+     * Appends the order to the back of its price level, creating the level if it is the first order at that price.
+     *
+     * @param order Order joining the book
+     */
+    void add(Order order) {
+        int index = levelIndexFor(order.getPriceTicks());
+        levels[index].addOrder(order);
+        orderCount++;
+        if (trackChanges) {
+            markChanged(index);
+        }
+    }
+
+    /**
+     * Appends the slot to the back of its price level, creating the level if it is the first order at that price.
+     *
+     * @param slot Slot of the order joining the book
+     */
+    void add(OrderSlots slots, int slot) {
+        int index = levelIndexFor(slots.getPriceTicks(slot));
+        levels[index].addSlot(slots, slot);
+        orderCount++;
+        if (trackChanges) {
+            markChanged(index);
+        }
+    }
+
+    /**
+     * @return The index of the level at that price, created if there is none
+     */
+    private int levelIndexFor(long priceTicks) {
+        int index = indexOf(priceTicks);
+        if (index < 0) {
+            index = -index - 1;
+            insertLevel(index, freeCount > 0 ? freeLevels[--freeCount].init(priceTicks)
+                    : new PriceLevel(priceTicks, tickSize));
+        }
+        return index;
+    }
+
+    /**
+     * Unlinks the order from its price level in constant time, dropping the level once it is empty.
+     *
+     * @param order Order leaving the book, with its remaining quantity
+     */
+    void remove(Order order) {
+        PriceLevel level = order.getLevel();
+        level.removeOrder(order);
+        if (level.isEmpty()) {
+            int index = indexOf(level.getPriceTicks());
+            removeLevel(index);
+            if (trackChanges) {
+                markChanged(index);
+            }
+        } else if (trackChanges) {
+            markChanged(indexOf(level.getPriceTicks()));
+        }
+        orderCount--;
+    }
+
+    /**
+     * Unlinks the slot from its price level in constant time once the level is found, dropping the level once it is
+     * empty.
+     *
+     * @param slot Slot of the order leaving the book, with its remaining quantity
+     */
+    void remove(OrderSlots slots, int slot) {
+        int index = indexOf(slots.getPriceTicks(slot));
+        PriceLevel level = levels[index];
+        level.removeSlot(slots, slot);
+        if (level.isEmpty()) {
+            removeLevel(index);
+        }
+        if (trackChanges) {
+            markChanged(index);
+        }
+        orderCount--;
+    }
+
+    /**
+     * Applies a change of a resting order's quantity to the running total of its price level.
+     *
+     * @param order Resting order, whose quantity is about to change
+     * @param delta Quantity change (negative on trades)
+     */
+    void adjustQuantity(Order order, long delta) {
+        PriceLevel level = order.getLevel();
+        level.adjustQuantity(delta);
+        if (trackChanges) {
+            markChanged(indexOf(level.getPriceTicks()));
+        }
+    }
+
+    /**
+     * Applies a change of quantity of a resting slot to the running total of its price level.
+     *
+     * @param priceTicks Price of the resting slot, in ticks
+     * @param delta      Quantity change (negative on trades)
+     */
+    void adjustQuantity(long priceTicks, long delta) {
+        int index = indexOf(priceTicks);
+        levels[index].adjustQuantity(delta);
+        if (trackChanges) {
+            markChanged(index);
+        }
+    }
+
+    /**
+     * Sends a resting order to the back of its price level with a new quantity, as an amendment up in size loses its
+     * time priority. The level's totals are adjusted by the change of quantity.
+     *
+     * @param order    Resting order
+     * @param quantity New quantity of the order
+     */
+    void requeue(Order order, long quantity) {
+        PriceLevel level = order.getLevel();
+        level.removeOrder(order);
+        order.setQuantity(quantity);
+        level.addOrder(order);
+        if (trackChanges) {
+            markChanged(indexOf(level.getPriceTicks()));
+        }
+    }
+
+    /**
+     * Sends a resting slot to the back of its price level with a new quantity, as requeue(Order, long) does.
+     *
+     * @param slot     Slot of the resting order
+     * @param quantity New quantity of the order
+     */
+    void requeue(OrderSlots slots, int slot, long quantity) {
+        int index = indexOf(slots.getPriceTicks(slot));
+        PriceLevel level = levels[index];
+        level.removeSlot(slots, slot);
+        slots.setQuantity(slot, quantity);
+        level.addSlot(slots, slot);
+        if (trackChanges) {
+            markChanged(index);
+        }
+    }
+
+    private void markChanged(int index) {
+        if (index < dirtyFrom) {
+            dirtyFrom = index;
+        }
+    }
+
+    /**
+     * Starts tracking the levels changed between publications, the next publication copying every level.
+     */
+    void trackChanges() {
+        trackChanges = true;
+        dirtyFrom = 0;
+    }
+
+    /**
+     * Copies the levels changed since the previous publication into the ladder of a BookSnapshot. The caller holds
+     * the snapshot's write lock.
+     *
+     * @param ladder Snapshot ladder of this side
+     */
+    void publishTo(BookSnapshot.Ladder ladder) {
+        if (ladder.ensureCapacity(depth)) {
+            dirtyFrom = 0;
+        }
+        for (int i = Math.min(dirtyFrom, depth); i < depth; i++) {
+            ladder.set(i, levels[i]);
+        }
+        ladder.depth = depth;
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Copies the best levels of the side, best first, as many as the arrays hold, and zeroes the entries left over.
+     *
+     * @return The number of levels copied
+     */
+    int copyDepth(long[] pricesTicks, long[] quantities) {
+        int levelCount = Math.min(Math.min(pricesTicks.length, quantities.length), depth);
+        for (int i = 0; i < levelCount; i++) {
+            PriceLevel level = levels[depth - 1 - i];
+            pricesTicks[i] = level.getPriceTicks();
+            quantities[i] = level.getQuantity();
+        }
+        Arrays.fill(pricesTicks, levelCount, pricesTicks.length, 0L);
+        Arrays.fill(quantities, levelCount, quantities.length, 0L);
+        return levelCount;
+    }
+
+    /**
+     * @param priceTicks Price level requested, in ticks
+     * @return The price level, or null if no order rests at that price
+     */
+    PriceLevel getLevel(long priceTicks) {
+        int index = indexOf(priceTicks);
+        return index >= 0 ? levels[index] : null;
+    }
+
+    /**
+     * @param index Index of the level, from 0 (worst price) to getDepth() - 1 (best price)
+     * @return The price level at that index
+     */
+    PriceLevel getLevelAt(int index) {
+        return levels[index];
+    }
+
+    /**
+     * @return The best price level of this side, or null if the side is empty
+     */
+    PriceLevel getBestLevel() {
+        return depth > 0 ? levels[depth - 1] : null;
+    }
+
+    /**
+     * Sort key of a tick price: levels are stored in ascending key order, so the best price ends up last on both
+     * sides (highest bid, lowest ask).
+     */
+    private long sortKey(long priceTicks) {
+        return side == Side.BID ? priceTicks : -priceTicks;
+    }
+
+    /**
+     * Binary search of the level array, checking the best level first as most lookups hit the top of the book.
+     *
+     * @return The index of the level at that price, or (-(insertion point) - 1) if there is none
+     */
+    private int indexOf(long priceTicks) {
+        long key = sortKey(priceTicks);
+        int high = depth - 1;
+        if (high >= 0 && levels[high].getPriceTicks() == priceTicks) {
+            return high;
+        }
+        int low = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = sortKey(levels[mid].getPriceTicks());
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertLevel(int index, PriceLevel level) {
+        if (depth == levels.length) {
+            levels = Arrays.copyOf(levels, depth * 2);
+        }
+        System.arraycopy(levels, index, levels, index + 1, depth - index);
+        levels[index] = level;
+        depth++;
+    }
+
+    private void removeLevel(int index) {
+        if (freeCount == freeLevels.length) {
+            freeLevels = Arrays.copyOf(freeLevels, freeCount * 2);
+        }
+        freeLevels[freeCount++] = levels[index];
+        System.arraycopy(levels, index + 1, levels, index, depth - index - 1);
+        levels[--depth] = null;
+    }
+
+    /**
+     * @return The number of price levels on this side
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return The number of orders resting on this side
+     */
+    public int size() {
+        return orderCount;
+    }
+
+    public boolean isEmpty() {
+        return orderCount == 0;
+    }
+
+    /**
+     * @return Iterator over the resting orders in price-time priority
+     */
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private int levelIndex = depth;
+            private Order nextOrder = null;
+
+            @Override
+            public boolean hasNext() {
+                while (nextOrder == null) {
+                    if (levelIndex == 0) {
+                        return false;
+                    }
+                    nextOrder = levels[--levelIndex].getHead();
+                }
+                return true;
+            }
+
+            @Override
+            public Order next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Order order = nextOrder;
+                nextOrder = order.getNext();
+                return order;
+            }
+        };
+    }
+}
@@ -0,0 +1,292 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Level 2 view of an OrderBook that any number of threads may query while the book thread keeps applying events.
+ * The book thread publishes its price levels into the snapshot after each event or batch, copying only the levels
+ * that changed, under a sequence lock: the lock counter is odd while a publication is in progress. Readers never
+ * block the book thread; they read the levels optimistically and retry only if a publication overlapped their read.
+ * Every publication is stamped with the book's event sequence, so callers can tell how fresh the data is.
+ */
+public class BookSnapshot implements TickLevel2Query {
+    private static final VarHandle LOCK;
+
+    static {
+        try {
+            LOCK = MethodHandles.lookup().findVarHandle(BookSnapshot.class, "lock", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Price levels of one side, laid out like the BookSide levels: sorted with the best price last.
+     */
+    static final class Ladder {
+        long[] prices;
+        long[] quantities;
+        long[] counts;
+        int depth;
+
+        Ladder(int capacity) {
+            prices = new long[capacity];
+            quantities = new long[capacity];
+            counts = new long[capacity];
+        }
+
+        /**
+         * @return True if the arrays had to grow, in which case every level must be copied again
+         */
+        boolean ensureCapacity(int capacity) {
+            if (capacity <= prices.length) {
+                return false;
+            }
+            int newCapacity = Math.max(capacity, prices.length * 2);
+            prices = Arrays.copyOf(prices, newCapacity);
+            quantities = Arrays.copyOf(quantities, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+            return true;
+        }
+
+        void set(int index, PriceLevel level) {
+            prices[index] = level.getPriceTicks();
+            quantities[index] = level.getQuantity();
+            counts[index] = level.getOrderCount();
+        }
+    }
+
+    private final TickSize tickSize;
+    final Ladder bids;
+    final Ladder asks;
+    private volatile long lock;
+    private long version = -1L;
+
+    BookSnapshot(TickSize tickSize, int capacity) {
+        this.tickSize = tickSize;
+        this.bids = new Ladder(capacity);
+        this.asks = new Ladder(capacity);
+    }
+
+    /**
+     * Called by the book thread before updating the ladders.
+     */
+    void beginWrite() {
+        LOCK.setOpaque(this, lock + 1L);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Called by the book thread once the ladders are updated.
+     *
+     * @param version Event sequence of the book at the time of the publication
+     */
+    void endWrite(long version) {
+        this.version = version;
+        LOCK.setRelease(this, lock + 1L);
+    }
+
+    /**
+     * @return Last published version, as seen by the book thread
+     */
+    long publishedVersion() {
+        return version;
+    }
+
+    private long beginRead() {
+        long stamp;
+        while (((stamp = (long) LOCK.getAcquire(this)) & 1L) != 0L) {
+            Thread.onSpinWait();
+        }
+        return stamp;
+    }
+
+    private boolean validate(long stamp) {
+        VarHandle.acquireFence();
+        return stamp == lock;
+    }
+
+    private Ladder ladder(Side side) {
+        return side == Side.BID ? bids : asks;
+    }
+
+    /**
+     * Binary search of a ladder that may be modified concurrently; the result is only trusted once validated.
+     */
+    private static int indexOf(Side side, long[] prices, int depth, long priceTicks) {
+        long key = side == Side.BID ? priceTicks : -priceTicks;
+        int low = 0;
+        int high = Math.min(depth, prices.length) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = side == Side.BID ? prices[mid] : -prices[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The book's event sequence at the time of the last publication, -1 before the first one
+     */
+    public long getVersion() {
+        while (true) {
+            long stamp = beginRead();
+            long result = version;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The number of orders resting on the price level, as of the last publication
+     */
+    public long getSizeForPriceLevel(Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Ladder ladder = ladder(side);
+            long[] counts = ladder.counts;
+            int index = indexOf(side, ladder.prices, ladder.depth, priceTicks);
+            long result = index >= 0 && index < counts.length ? counts[index] : 0L;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The total quantity resting on the price level, as of the last publication
+     */
+    public long getQuantityForPriceLevel(Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Ladder ladder = ladder(side);
+            long[] quantities = ladder.quantities;
+            int index = indexOf(side, ladder.prices, ladder.depth, priceTicks);
+            long result = index >= 0 && index < quantities.length ? quantities[index] : 0L;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The number of price levels on the side, as of the last publication
+     */
+    public long getBookDepth(Side side) {
+        while (true) {
+            long stamp = beginRead();
+            long result = ladder(side).depth;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The best price of the side in ticks as of the last publication, or 0 if the side was empty
+     */
+    public long getTopOfBookTicks(Side side) {
+        while (true) {
+            long stamp = beginRead();
+            long result = topOfBook(ladder(side));
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The best price of the side as of the last publication, or 0 if the side was empty
+     */
+    public BigDecimal getTopOfBook(Side side) {
+        long priceTicks = getTopOfBookTicks(side);
+        return priceTicks != 0L ? tickSize.toPrice(priceTicks) : BigDecimal.ZERO;
+    }
+
+    /**
+     * @return The best ask minus the best bid in ticks, both from the same publication, or 0 if a side was empty
+     */
+    public long getSpreadTicks() {
+        while (true) {
+            long stamp = beginRead();
+            long bid = topOfBook(bids);
+            long ask = topOfBook(asks);
+            if (validate(stamp)) {
+                return bid != 0L && ask != 0L ? ask - bid : 0L;
+            }
+        }
+    }
+
+    /**
+     * Fills the best price levels of a side as of the last publication into the caller's arrays, without allocating.
+     *
+     * @param pricesTicks Receives the level prices in ticks, best first; its length is the number of levels requested
+     * @param quantities  Receives the total quantity of each level
+     * @return The number of levels filled, the entries past it being zeroed
+     */
+    public int getDepth(Side side, long[] pricesTicks, long[] quantities) {
+        while (true) {
+            long stamp = beginRead();
+            int result = copyDepth(ladder(side), pricesTicks, quantities);
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Fills the best price levels of both sides into the caller's arrays, both taken from the same publication.
+     *
+     * @return The version of the publication the ladder was taken from
+     */
+    public long getDepth(long[] bidPricesTicks, long[] bidQuantities, long[] askPricesTicks, long[] askQuantities) {
+        while (true) {
+            long stamp = beginRead();
+            copyDepth(bids, bidPricesTicks, bidQuantities);
+            copyDepth(asks, askPricesTicks, askQuantities);
+            long result = version;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Copies the top of a ladder that may be modified concurrently; the copy is only trusted once validated.
+     */
+    private static int copyDepth(Ladder ladder, long[] pricesTicks, long[] quantities) {
+        long[] prices = ladder.prices;
+        long[] levelQuantities = ladder.quantities;
+        int depth = Math.min(ladder.depth, Math.min(prices.length, levelQuantities.length));
+        int levelCount = Math.min(Math.min(pricesTicks.length, quantities.length), depth);
+        for (int i = 0; i < levelCount; i++) {
+            pricesTicks[i] = prices[depth - 1 - i];
+            quantities[i] = levelQuantities[depth - 1 - i];
+        }
+        Arrays.fill(pricesTicks, levelCount, pricesTicks.length, 0L);
+        Arrays.fill(quantities, levelCount, quantities.length, 0L);
+        return levelCount;
+    }
+
+    private static long topOfBook(Ladder ladder) {
+        long[] prices = ladder.prices;
+        int depth = ladder.depth;
+        return depth > 0 && depth <= prices.length ? prices[depth - 1] : 0L;
+    }
+
+    public TickSize getTickSize() {
+        return tickSize;
+    }
+}
@@ -0,0 +1,123 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-threaded event loop applying messages to the OrderBooks assigned to it by an OrderBookManager.
+ * Messages for all of the worker's books arrive, already routed, through one RingBuffer inbox, and each book is only
+ * ever touched by the worker it is assigned to, so books stay single-writer without any locking.
+ * Moving a book to another worker is a two step hand-off: the old worker releases the book once it has applied every
+ * message routed to it before the move, and the new worker waits for that release before applying newer messages.
+ */
+class BookWorker implements Runnable {
+    private static final Logger logger = LogManager.getLogger(BookWorker.class);
+
+    enum Command {
+        DISPATCH, RELEASE, ADOPT, STOP
+    }
+
+    /**
+     * Preallocated inbox entry: a message routed to a book, or a control command.
+     */
+    static final class Envelope {
+        final OrderMessage message = new OrderMessage();
+        Command command;
+        OrderBookManager.BookHandle handle;
+        CountDownLatch handoff;
+    }
+
+    private final int index;
+    private final RingBuffer<Envelope> inbox;
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    // Number of books assigned to the worker, only updated by the producer thread
+    int bookCount;
+
+    BookWorker(int index, int inboxCapacity, WaitStrategy waitStrategy) {
+        this.index = index;
+        this.inbox = new RingBuffer<>(inboxCapacity, Envelope::new, waitStrategy);
+    }
+
+    /**
+     * Claims the next inbox entry, to be filled in and published by the producer thread.
+     */
+    long claim() {
+        return inbox.next();
+    }
+
+    Envelope entry(long sequence) {
+        return inbox.get(sequence);
+    }
+
+    void publish(long sequence) {
+        inbox.publish(sequence);
+    }
+
+    /**
+     * Applies the inbox in batches until a STOP command is received.
+     */
+    public void run() {
+        logger.info("Book worker " + index + " started...");
+        long nextSequence = 0L;
+        while (true) {
+            try {
+                long available = inbox.waitFor(nextSequence);
+                long start = System.nanoTime();
+                long applied = 0L;
+                long clock = start;
+                boolean stop = false;
+                for (; nextSequence <= available; nextSequence++) {
+                    Envelope envelope = inbox.get(nextSequence);
+                    switch (envelope.command) {
+                        case DISPATCH -> {
+                            OrderBook book = envelope.handle.book;
+                            clock = book.dispatch(envelope.message, clock);
+                            envelope.handle.messages.lazySet(envelope.handle.messages.get() + 1L);
+                            applied++;
+                            if (nextSequence == available || inbox.get(nextSequence + 1L).handle != envelope.handle) {
+                                book.publishSnapshot();
+                            }
+                        }
+                        case RELEASE -> envelope.handoff.countDown();
+                        case ADOPT -> {
+                            envelope.handoff.await();
+                            clock = 0L;
+                        }
+                        case STOP -> stop = true;
+                    }
+                    envelope.handle = null;
+                    envelope.handoff = null;
+                }
+                inbox.release(available);
+                messages.lazySet(messages.get() + applied);
+                busyNanos.lazySet(busyNanos.get() + System.nanoTime() - start);
+                if (stop) {
+                    logger.info("Book worker " + index + " stopped.");
+                    return;
+                }
+            } catch (InterruptedException e) {
+                logger.error("Book worker was interrupted unexpectedly.", e);
+            }
+        }
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    long getMessages() {
+        return messages.get();
+    }
+
+    long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    long getBacklog() {
+        return inbox.backlog();
+    }
+}
@@ -0,0 +1,351 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+import java.util.Arrays;
+
+/**
+ * Level2Listener decoupling a slow consumer from the book thread by conflating updates per price level.
+ * The book thread only records the latest state of each level it changes into a pending set, so it never waits for
+ * the consumer, and the memory used is bounded by the number of levels rather than by how far behind the consumer is.
+ * The consumer thread calls poll() at its own pace to receive the latest state of every level changed since its
+ * previous poll, several changes to a level in between arriving as one update.
+ * The pending set is double-buffered: poll() swaps it for an empty one under a lock held only for the swap, or for the
+ * book thread to record one update, and the consumer merges the swapped out set into its own copy of the levels
+ * without the lock. Everything that costs more than one update, merging, compacting the levels or sorting an image,
+ * therefore runs on the consumer thread, and never holds up the book thread. While the book is sending an image, the
+ * set isn't swapped: the image only reaches the consumer whole.
+ * As the consumer keeps the state of every level, pollImage() also gives it a full image of the book at any time,
+ * without involving the book thread.
+ */
+public class ConflatingLevel2Listener implements Level2Listener {
+    private static final int INITIAL_LEVELS = 64;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Levels changed since the last swap, keyed by price signed by side (positive bids, negative asks), each level
+     * appearing once with its latest state, in the order the levels first changed.
+     */
+    private static final class PendingSet {
+        private long[] keys = new long[INITIAL_LEVELS];
+        private long[] quantities = new long[INITIAL_LEVELS];
+        private long[] orderCounts = new long[INITIAL_LEVELS];
+        private long[] sequences = new long[INITIAL_LEVELS];
+        // Open addressing table of entry index + 1, 0 for a free slot
+        private int[] table = new int[INITIAL_LEVELS * 2];
+        private int count;
+        // Entries before resetIndex were superseded by an image of the book, begun at resetSequence
+        private int resetIndex;
+        private boolean reset;
+        private long resetSequence;
+        private long lastSequence;
+
+        void put(long key, long quantity, long orderCount, long sequence) {
+            if (count == keys.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int slot = (int) ((key * GOLDEN_RATIO) >>> Long.numberOfLeadingZeros(mask));
+            for (; table[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = table[slot] - 1;
+                if (keys[entry] == key) {
+                    if (entry >= resetIndex) {
+                        set(entry, quantity, orderCount, sequence);
+                        return;
+                    }
+                    // Changed before the image began: the update joins the image as a new entry
+                    table[slot] = append(key, quantity, orderCount, sequence) + 1;
+                    return;
+                }
+            }
+            table[slot] = append(key, quantity, orderCount, sequence) + 1;
+        }
+
+        private int append(long key, long quantity, long orderCount, long sequence) {
+            int entry = count++;
+            keys[entry] = key;
+            set(entry, quantity, orderCount, sequence);
+            return entry;
+        }
+
+        private void set(int entry, long quantity, long orderCount, long sequence) {
+            quantities[entry] = quantity;
+            orderCounts[entry] = orderCount;
+            sequences[entry] = sequence;
+            lastSequence = sequence;
+        }
+
+        /**
+         * Supersedes every entry recorded so far, the image starting now replacing them.
+         */
+        void beginImage(long sequence) {
+            resetIndex = count;
+            reset = true;
+            resetSequence = sequence;
+            lastSequence = sequence;
+        }
+
+        /**
+         * Called by the book thread when the set is full, before recording one more level. Entries superseded by an
+         * image are left out of the table, so that each key has a single live entry.
+         */
+        private void grow() {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            orderCounts = Arrays.copyOf(orderCounts, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            table = new int[capacity * 2];
+            int mask = table.length - 1;
+            for (int entry = resetIndex; entry < count; entry++) {
+                int slot = (int) ((keys[entry] * GOLDEN_RATIO) >>> Long.numberOfLeadingZeros(mask));
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry + 1;
+            }
+        }
+
+        /**
+         * @return The number of levels waiting to be merged
+         */
+        int pending() {
+            return count - resetIndex;
+        }
+
+        /**
+         * Empties the set once merged, on the consumer thread, before it is swapped in again.
+         */
+        void clear() {
+            count = 0;
+            resetIndex = 0;
+            reset = false;
+            Arrays.fill(table, 0);
+        }
+    }
+
+    // Set the book thread records into, and whether it is recording an image into it, guarded by this
+    private PendingSet active = new PendingSet();
+    private boolean imageInProgress;
+
+    // Consumer thread state: the empty set swapped in at the next poll, and the state of every level known
+    private PendingSet spare = new PendingSet();
+    private long[] keys = new long[INITIAL_LEVELS];
+    private long[] quantities = new long[INITIAL_LEVELS];
+    private long[] orderCounts = new long[INITIAL_LEVELS];
+    private long[] sequences = new long[INITIAL_LEVELS];
+    private boolean[] changed = new boolean[INITIAL_LEVELS];
+    private int levelCount;
+    private int liveLevels;
+    // Open addressing table of level index + 1, 0 for a free slot
+    private int[] table = new int[INITIAL_LEVELS * 2];
+    private int[] changedLevels = new int[INITIAL_LEVELS];
+    private int changedCount;
+    private long lastSequence;
+    private long[] imageKeys = new long[INITIAL_LEVELS];
+
+    @Override
+    public synchronized void onLevelUpdate(Side side, long priceTicks, long quantity, long orderCount,
+                                           long sequence) {
+        active.put(side == Side.BID ? priceTicks : -priceTicks, quantity, orderCount, sequence);
+    }
+
+    /**
+     * An image from the book replaces everything known: once merged, every level is emptied, the image then refilling
+     * the non-empty ones, so that the consumer learns of levels that disappeared in between. Polls return nothing
+     * until the image ends, as merging part of it would empty the levels still to come.
+     */
+    @Override
+    public synchronized void onImageBegin(long sequence) {
+        active.beginImage(sequence);
+        imageInProgress = true;
+    }
+
+    @Override
+    public synchronized void onImageEnd(long sequence) {
+        imageInProgress = false;
+    }
+
+    /**
+     * Delivers the latest state of every level changed since the previous poll, in the order they first changed.
+     * Consumer thread only; the consumer is called without the lock held.
+     *
+     * @param consumer Listener receiving the updates
+     * @return The number of updates delivered
+     */
+    public int poll(Level2Listener consumer) {
+        merge();
+        int count = changedCount;
+        for (int i = 0; i < count; i++) {
+            int level = changedLevels[i];
+            changed[level] = false;
+            deliver(consumer, level);
+        }
+        changedCount = 0;
+        if (levelCount - liveLevels > Math.max(INITIAL_LEVELS, liveLevels)) {
+            compact();
+        }
+        return count;
+    }
+
+    /**
+     * Delivers a full image of the levels known to the listener, superseding any update not polled yet.
+     * Consumer thread only; the consumer is called without the lock held.
+     *
+     * @param consumer Listener receiving the image
+     * @return The number of levels in the image
+     */
+    public int pollImage(Level2Listener consumer) {
+        merge();
+        for (int i = 0; i < changedCount; i++) {
+            changed[changedLevels[i]] = false;
+        }
+        changedCount = 0;
+        if (imageKeys.length < liveLevels) {
+            imageKeys = new long[Math.max(liveLevels, imageKeys.length * 2)];
+        }
+        int count = 0;
+        for (int level = 0; level < levelCount; level++) {
+            if (quantities[level] != 0L) {
+                imageKeys[count++] = keys[level];
+            }
+        }
+        // Descending keys: bids from the highest price down, then asks from the lowest price up
+        Arrays.sort(imageKeys, 0, count);
+        consumer.onImageBegin(lastSequence);
+        for (int i = count - 1; i >= 0; i--) {
+            deliver(consumer, levelOf(imageKeys[i]));
+        }
+        consumer.onImageEnd(lastSequence);
+        return count;
+    }
+
+    /**
+     * @return The number of levels changed and not polled yet
+     */
+    public synchronized int pending() {
+        return active.pending();
+    }
+
+    /**
+     * Swaps the pending set for the empty one, then merges it into the levels outside the lock, unless the book is in
+     * the middle of an image. Consumer thread only.
+     */
+    private void merge() {
+        PendingSet pending;
+        synchronized (this) {
+            if (imageInProgress) {
+                return;
+            }
+            pending = active;
+            active = spare;
+        }
+        if (pending.reset) {
+            for (int level = 0; level < levelCount; level++) {
+                if (quantities[level] != 0L) {
+                    update(level, 0L, 0L, pending.resetSequence);
+                }
+            }
+            lastSequence = pending.resetSequence;
+        }
+        for (int entry = pending.resetIndex; entry < pending.count; entry++) {
+            update(levelOf(pending.keys[entry]), pending.quantities[entry], pending.orderCounts[entry],
+                    pending.sequences[entry]);
+        }
+        if (pending.count > 0) {
+            lastSequence = pending.lastSequence;
+        }
+        pending.clear();
+        spare = pending;
+    }
+
+    private void update(int level, long quantity, long orderCount, long sequence) {
+        if (quantities[level] == 0L && quantity != 0L) {
+            liveLevels++;
+        } else if (quantities[level] != 0L && quantity == 0L) {
+            liveLevels--;
+        }
+        quantities[level] = quantity;
+        orderCounts[level] = orderCount;
+        sequences[level] = sequence;
+        if (!changed[level]) {
+            changed[level] = true;
+            changedLevels[changedCount++] = level;
+        }
+    }
+
+    private int levelOf(long key) {
+        int mask = table.length - 1;
+        int shift = Long.numberOfLeadingZeros(mask);
+        for (int slot = (int) ((key * GOLDEN_RATIO) >>> shift); ; slot = (slot + 1) & mask) {
+            int level = table[slot] - 1;
+            if (level < 0) {
+                break;
+            }
+            if (keys[level] == key) {
+                return level;
+            }
+        }
+        if (levelCount == keys.length) {
+            grow();
+        }
+        int level = levelCount++;
+        keys[level] = key;
+        quantities[level] = 0L;
+        orderCounts[level] = 0L;
+        changed[level] = false;
+        insert(level);
+        return level;
+    }
+
+    private void insert(int level) {
+        int mask = table.length - 1;
+        int slot = (int) ((keys[level] * GOLDEN_RATIO) >>> Long.numberOfLeadingZeros(mask));
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = level + 1;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        orderCounts = Arrays.copyOf(orderCounts, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+        changedLevels = Arrays.copyOf(changedLevels, capacity);
+        table = new int[capacity * 2];
+        for (int level = 0; level < levelCount; level++) {
+            insert(level);
+        }
+    }
+
+    /**
+     * Drops the empty levels once they outnumber the others, so that a drifting price doesn't grow the listener
+     * forever. Only called with no level changed.
+     */
+    private void compact() {
+        int kept = 0;
+        for (int level = 0; level < levelCount; level++) {
+            if (quantities[level] != 0L) {
+                keys[kept] = keys[level];
+                quantities[kept] = quantities[level];
+                orderCounts[kept] = orderCounts[level];
+                sequences[kept] = sequences[level];
+                kept++;
+            }
+        }
+        levelCount = kept;
+        Arrays.fill(table, 0);
+        for (int level = 0; level < levelCount; level++) {
+            insert(level);
+        }
+    }
+
+    private void deliver(Level2Listener consumer, int level) {
+        long key = keys[level];
+        consumer.onLevelUpdate(key > 0L ? Side.BID : Side.ASK, Math.abs(key), quantities[level], orderCounts[level],
+                sequences[level]);
+    }
+}
@@ -0,0 +1,569 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consolidated Level 2 view of one instrument traded on several venues, each handled by its own OrderBook.
+ * Every venue book feeds the consolidated book through its own ConflatingLevel2Listener, subscribed by addVenue(), so
+ * a venue's book thread only records its level updates, never waiting for the other venues or for readers.
+ * The consolidating thread, running the book or calling poll(), merges the updates of every venue: each one replaces
+ * that venue's share of the consolidated level at that price, so the merged ladder is maintained incrementally, at the
+ * cost of one level lookup per update, and never rebuilt from the venue books.
+ * Like a BookSide, each side keeps its consolidated levels in an array sorted by tick price with the best price at
+ * the end, and each level holds the totals across venues along with the quantity and order count of every venue.
+ * After each merge the levels changed are published under a sequence lock, as a BookSnapshot is, so readers on any
+ * thread query the published levels without locks, retrying only when a publication overlapped their read.
+ * The book is only queried, through TickLevel2Query, orders going to the venue books.
+ */
+public class ConsolidatedBook implements TickLevel2Query, Runnable, Closeable {
+    private static final Logger logger = LogManager.getLogger(ConsolidatedBook.class);
+    private static final VarHandle LOCK;
+    private static final int INITIAL_LEVELS = 64;
+    private static final long IDLE_PARK_NANOS = 50_000L;
+
+    static {
+        try {
+            LOCK = MethodHandles.lookup().findVarHandle(ConsolidatedBook.class, "lock", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Consolidated price level: the totals across venues, and each venue's share of them.
+     */
+    static final class Level {
+        final long[] venueQuantities;
+        final long[] venueOrderCounts;
+        long priceTicks;
+        long quantity;
+        long orderCount;
+        int venueCount;
+
+        Level(int maxVenues) {
+            venueQuantities = new long[maxVenues];
+            venueOrderCounts = new long[maxVenues];
+        }
+
+        /**
+         * Resets an empty, recycled level to a new price.
+         */
+        Level init(long priceTicks) {
+            this.priceTicks = priceTicks;
+            return this;
+        }
+
+        /**
+         * Replaces a venue's share of the level, keeping the totals up to date.
+         */
+        void set(int venue, long venueQuantity, long venueOrderCount) {
+            if (venueOrderCounts[venue] == 0L && venueOrderCount != 0L) {
+                venueCount++;
+            } else if (venueOrderCounts[venue] != 0L && venueOrderCount == 0L) {
+                venueCount--;
+            }
+            quantity += venueQuantity - venueQuantities[venue];
+            orderCount += venueOrderCount - venueOrderCounts[venue];
+            venueQuantities[venue] = venueQuantity;
+            venueOrderCounts[venue] = venueOrderCount;
+        }
+    }
+
+    /**
+     * Published copy of a side's levels, in the Ladder order, the venue shares of level i starting at i * maxVenues.
+     * Written by the consolidating thread under the sequence lock, read optimistically from any thread.
+     */
+    static final class Published {
+        long[] prices = new long[INITIAL_LEVELS];
+        long[] quantities = new long[INITIAL_LEVELS];
+        long[] orderCounts = new long[INITIAL_LEVELS];
+        long[] venueQuantities;
+        long[] venueOrderCounts;
+        int depth;
+
+        Published(int maxVenues) {
+            venueQuantities = new long[INITIAL_LEVELS * maxVenues];
+            venueOrderCounts = new long[INITIAL_LEVELS * maxVenues];
+        }
+    }
+
+    /**
+     * Consolidated levels of one side, sorted with the best price last. Consolidating thread only.
+     */
+    static final class Ladder {
+        private final Side side;
+        private final int maxVenues;
+        private Level[] levels = new Level[INITIAL_LEVELS];
+        private int depth;
+        private Level[] freeLevels = new Level[INITIAL_LEVELS];
+        private int freeCount;
+        // Lowest index changed since the last publication
+        private int dirtyFrom;
+
+        Ladder(Side side, int maxVenues) {
+            this.side = side;
+            this.maxVenues = maxVenues;
+        }
+
+        /**
+         * Replaces a venue's share of the level at a price, creating the level if it is the first share at that price
+         * and dropping it once no venue is left on it.
+         */
+        void update(int venue, long priceTicks, long quantity, long orderCount) {
+            int index = indexOf(priceTicks);
+            if (index < 0) {
+                if (orderCount == 0L) {
+                    return;
+                }
+                index = -index - 1;
+                Level level = freeCount > 0 ? freeLevels[--freeCount] : new Level(maxVenues);
+                insertLevel(index, level.init(priceTicks));
+            }
+            Level level = levels[index];
+            level.set(venue, quantity, orderCount);
+            if (level.venueCount == 0) {
+                removeLevel(index);
+            }
+            dirtyFrom = Math.min(dirtyFrom, index);
+        }
+
+        /**
+         * Copies the levels changed since the previous publication, from the lowest one changed up to the best price,
+         * the levels below it having kept their index. Called with the sequence lock held.
+         */
+        void publishTo(Published published) {
+            if (published.prices.length < depth) {
+                int capacity = Math.max(depth, published.prices.length * 2);
+                published.prices = new long[capacity];
+                published.quantities = new long[capacity];
+                published.orderCounts = new long[capacity];
+                published.venueQuantities = new long[capacity * maxVenues];
+                published.venueOrderCounts = new long[capacity * maxVenues];
+                dirtyFrom = 0;
+            }
+            for (int i = dirtyFrom; i < depth; i++) {
+                Level level = levels[i];
+                published.prices[i] = level.priceTicks;
+                published.quantities[i] = level.quantity;
+                published.orderCounts[i] = level.orderCount;
+                System.arraycopy(level.venueQuantities, 0, published.venueQuantities, i * maxVenues, maxVenues);
+                System.arraycopy(level.venueOrderCounts, 0, published.venueOrderCounts, i * maxVenues, maxVenues);
+            }
+            published.depth = depth;
+            dirtyFrom = Integer.MAX_VALUE;
+        }
+
+        /**
+         * Binary search of the sorted levels.
+         *
+         * @return The index of the level, or -(insertion point + 1) if there is none at that price
+         */
+        int indexOf(long priceTicks) {
+            long key = side == Side.BID ? priceTicks : -priceTicks;
+            int low = 0;
+            int high = depth - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = side == Side.BID ? levels[mid].priceTicks : -levels[mid].priceTicks;
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void insertLevel(int index, Level level) {
+            if (depth == levels.length) {
+                levels = Arrays.copyOf(levels, depth * 2);
+            }
+            System.arraycopy(levels, index, levels, index + 1, depth - index);
+            levels[index] = level;
+            depth++;
+        }
+
+        private void removeLevel(int index) {
+            if (freeCount == freeLevels.length) {
+                freeLevels = Arrays.copyOf(freeLevels, freeCount * 2);
+            }
+            freeLevels[freeCount++] = levels[index];
+            System.arraycopy(levels, index + 1, levels, index, depth - index - 1);
+            levels[--depth] = null;
+        }
+    }
+
+    /**
+     * One venue book: the listener its book thread records level updates into, and the consumer merging them into
+     * the consolidated ladders on the consolidating thread. An image from the venue needs no special handling, the
+     * listener turning it into updates emptying the levels the venue left.
+     */
+    private final class Venue implements Level2Listener {
+        private final int index;
+        private final String id;
+        private final ConflatingLevel2Listener updates = new ConflatingLevel2Listener();
+        // Consolidating thread state
+        private long sequence;
+
+        Venue(int index, String id) {
+            this.index = index;
+            this.id = id;
+        }
+
+        @Override
+        public void onLevelUpdate(Side side, long priceTicks, long quantity, long orderCount, long sequence) {
+            (side == Side.BID ? bids : asks).update(index, priceTicks, quantity, orderCount);
+            this.sequence = sequence;
+        }
+    }
+
+    private final String id;
+    private final TickSize tickSize;
+    private final int maxVenues;
+    private final Venue[] venues;
+    private volatile int venueCount;
+    private volatile boolean closed;
+    // Consolidating thread state
+    private final Ladder bids;
+    private final Ladder asks;
+    // Published state, guarded by the sequence lock, odd while a publication is in progress
+    private final Published publishedBids;
+    private final Published publishedAsks;
+    private final long[] venueSequences;
+    private volatile long lock;
+
+    /**
+     * @param id        Identifier of the consolidated book, typically the instrument
+     * @param tickSize  Price grid shared by every venue book
+     * @param maxVenues Maximum number of venues, sizing the per-venue shares of each level
+     */
+    public ConsolidatedBook(String id, TickSize tickSize, int maxVenues) {
+        this.id = id;
+        this.tickSize = tickSize;
+        this.maxVenues = maxVenues;
+        this.venues = new Venue[maxVenues];
+        this.venueSequences = new long[maxVenues];
+        this.bids = new Ladder(Side.BID, maxVenues);
+        this.asks = new Ladder(Side.ASK, maxVenues);
+        this.publishedBids = new Published(maxVenues);
+        this.publishedAsks = new Published(maxVenues);
+    }
+
+    /**
+     * Subscribes the consolidated book to a venue book's level updates, starting with a full image of the venue. Must
+     * be called before the consolidating thread starts, and before the venue's book thread starts or from that thread,
+     * as OrderBook.addLevel2Listener() is.
+     *
+     * @param book Venue book, on the same tick size as the consolidated book
+     * @return The index of the venue, from 0 in the order venues were added, for the per-venue queries
+     */
+    public int addVenue(OrderBook book) {
+        if (!tickSize.equals(book.getTickSize())) {
+            throw new IllegalArgumentException("Venue " + book.getId() + " has tick size " + book.getTickSize()
+                    + ", not " + tickSize);
+        }
+        if (venueCount == venues.length) {
+            throw new IllegalStateException("No more than " + venues.length + " venues on " + id);
+        }
+        Venue venue = new Venue(venueCount, book.getId());
+        venues[venue.index] = venue;
+        book.addLevel2Listener(venue.updates);
+        venueCount = venue.index + 1;
+        logger.info("Venue " + venue.id + " added to " + id + " as venue " + venue.index);
+        return venue.index;
+    }
+
+    /**
+     * Merges the venues' level updates until the book is closed, parking briefly whenever there were none.
+     */
+    public void run() {
+        logger.info("Consolidated book " + id + " started...");
+        while (!closed) {
+            if (poll() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        poll();
+        logger.info("Consolidated book " + id + " stopped.");
+    }
+
+    /**
+     * Merges the level updates recorded by every venue since the previous poll, then publishes the levels changed.
+     * Consolidating thread only, for a caller running its own loop rather than run().
+     *
+     * @return The number of level updates merged
+     */
+    public int poll() {
+        int merged = 0;
+        int count = venueCount;
+        for (int i = 0; i < count; i++) {
+            merged += venues[i].updates.poll(venues[i]);
+        }
+        if (merged > 0) {
+            publish();
+        }
+        return merged;
+    }
+
+    private void publish() {
+        LOCK.setOpaque(this, lock + 1L);
+        VarHandle.storeStoreFence();
+        bids.publishTo(publishedBids);
+        asks.publishTo(publishedAsks);
+        for (int i = 0; i < venueCount; i++) {
+            venueSequences[i] = venues[i].sequence;
+        }
+        LOCK.setRelease(this, lock + 1L);
+    }
+
+    private long beginRead() {
+        long stamp;
+        while (((stamp = (long) LOCK.getAcquire(this)) & 1L) != 0L) {
+            Thread.onSpinWait();
+        }
+        return stamp;
+    }
+
+    private boolean validate(long stamp) {
+        VarHandle.acquireFence();
+        return stamp == lock;
+    }
+
+    private Published published(Side side) {
+        return side == Side.BID ? publishedBids : publishedAsks;
+    }
+
+    /**
+     * Binary search of published levels, possibly being rewritten, so bounded by the arrays and only trusted once the
+     * read is validated.
+     *
+     * @return The index of the level, or -1 if there is none at that price
+     */
+    private static int indexOf(Side side, Published published, long priceTicks) {
+        long[] prices = published.prices;
+        long key = side == Side.BID ? priceTicks : -priceTicks;
+        int low = 0;
+        int high = Math.min(published.depth, prices.length) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = side == Side.BID ? prices[mid] : -prices[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static long valueAt(long[] values, int index) {
+        return index >= 0 && index < values.length ? values[index] : 0L;
+    }
+
+    /**
+     * @return The number of orders resting on the price level across all venues
+     */
+    public long getSizeForPriceLevel(Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            long result = valueAt(published.orderCounts, indexOf(side, published, priceTicks));
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The total quantity resting on the price level across all venues
+     */
+    public long getQuantityForPriceLevel(Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            long result = valueAt(published.quantities, indexOf(side, published, priceTicks));
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param venue Index of the venue, as returned by addVenue()
+     * @return The quantity the venue has resting on the price level
+     */
+    public long getVenueQuantity(int venue, Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            int index = indexOf(side, published, priceTicks);
+            long result = index >= 0 ? valueAt(published.venueQuantities, index * maxVenues + venue) : 0L;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param venue Index of the venue, as returned by addVenue()
+     * @return The number of orders the venue has resting on the price level
+     */
+    public long getVenueSizeForPriceLevel(int venue, Side side, long priceTicks) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            int index = indexOf(side, published, priceTicks);
+            long result = index >= 0 ? valueAt(published.venueOrderCounts, index * maxVenues + venue) : 0L;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Fills the quantity of every venue at the best price of a side into the caller's array, without allocating.
+     *
+     * @param venueQuantities Receives the quantity of each venue at the best price, indexed by venue
+     * @return The best price of the side in ticks, or 0 if the side is empty on every venue
+     */
+    public long getTopOfBookByVenue(Side side, long[] venueQuantities) {
+        int count = Math.min(venueQuantities.length, maxVenues);
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            long[] prices = published.prices;
+            long[] shares = published.venueQuantities;
+            int depth = published.depth;
+            long result = 0L;
+            if (depth > 0 && depth <= prices.length && depth * maxVenues <= shares.length) {
+                result = prices[depth - 1];
+                System.arraycopy(shares, (depth - 1) * maxVenues, venueQuantities, 0, count);
+            } else {
+                Arrays.fill(venueQuantities, 0, count, 0L);
+            }
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The number of distinct price levels on the side across all venues
+     */
+    public long getBookDepth(Side side) {
+        while (true) {
+            long stamp = beginRead();
+            long result = published(side).depth;
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The best price of the side across all venues, or 0 if the side is empty on every venue
+     */
+    public BigDecimal getTopOfBook(Side side) {
+        long priceTicks = getTopOfBookTicks(side);
+        return priceTicks != 0L ? tickSize.toPrice(priceTicks) : BigDecimal.ZERO;
+    }
+
+    /**
+     * @return The best price of the side across all venues in ticks, or 0 if the side is empty on every venue
+     */
+    public long getTopOfBookTicks(Side side) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            long result = valueAt(published.prices, published.depth - 1);
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Fills the best consolidated price levels of a side into the caller's arrays, without allocating.
+     *
+     * @param pricesTicks Receives the level prices in ticks, best first; its length is the number of levels requested
+     * @param quantities  Receives the total quantity of each level across all venues
+     * @return The number of levels filled, the entries past it being zeroed
+     */
+    public int getDepth(Side side, long[] pricesTicks, long[] quantities) {
+        while (true) {
+            long stamp = beginRead();
+            Published published = published(side);
+            long[] prices = published.prices;
+            long[] levelQuantities = published.quantities;
+            int depth = Math.min(published.depth, Math.min(prices.length, levelQuantities.length));
+            int levelCount = Math.min(Math.min(pricesTicks.length, quantities.length), depth);
+            for (int i = 0; i < levelCount; i++) {
+                pricesTicks[i] = prices[depth - 1 - i];
+                quantities[i] = levelQuantities[depth - 1 - i];
+            }
+            if (validate(stamp)) {
+                Arrays.fill(pricesTicks, levelCount, pricesTicks.length, 0L);
+                Arrays.fill(quantities, levelCount, quantities.length, 0L);
+                return levelCount;
+            }
+        }
+    }
+
+    /**
+     * @param venue Index of the venue, as returned by addVenue()
+     * @return The event sequence of the venue book as of its last update published
+     */
+    public long getVenueSequence(int venue) {
+        while (true) {
+            long stamp = beginRead();
+            long result = venueSequences[venue];
+            if (validate(stamp)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param venue Index of the venue, as returned by addVenue()
+     * @return Identifier of the venue book
+     */
+    public String getVenueId(int venue) {
+        return venues[venue].id;
+    }
+
+    /**
+     * @return The number of venues added
+     */
+    public int getVenueCount() {
+        return venueCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public TickSize getTickSize() {
+        return tickSize;
+    }
+
+    /**
+     * Stops the consolidating thread, once it has merged the updates recorded so far.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,196 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Recorded feed in CSV form, one message per line: type,side,price,quantity,orderId, e.g. "New,BID,9.40,100,1" or
+ * "Cancel,,,,1". Fields a message type doesn't use may be left empty. An optional header line starting with "type"
+ * is skipped.
+ * The file is memory-mapped and parsed in place, without building a String per line; decimal prices are converted
+ * to ticks of the feed's TickSize, a price off the tick grid being read as 0 ticks, which the book rejects.
+ * A CSV feed must fit in a single mapping (2 GB); larger feeds should be converted to a BinaryFeed in parts.
+ */
+public class CsvFeed implements FeedSource {
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+            10_000_000L, 100_000_000L, 1_000_000_000L};
+
+    private final TickSize tickSize;
+    // Scale of the tick size if it is a power of ten (0.01, 0.001...), -1 otherwise
+    private final int decimalTickScale;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private int line;
+    // Set by parseLong: number of digits after the decimal point, and whether the field was empty
+    private int scale;
+    private boolean empty;
+
+    public CsvFeed(Path path, TickSize tickSize) throws IOException {
+        this.tickSize = tickSize;
+        BigDecimal tick = tickSize.getTickSize();
+        this.decimalTickScale = tick.unscaledValue().equals(BigInteger.ONE) ? tick.scale() : -1;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("CSV feed too large to map, convert it in parts: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        if (buffer.limit() > 1 && (buffer.get(0) == 't' || buffer.get(0) == 'T')
+                && (buffer.get(1) == 'y' || buffer.get(1) == 'Y')) {
+            skipLine();
+        }
+    }
+
+    @Override
+    public boolean next(OrderMessage msg) throws IOException {
+        while (position < buffer.limit() && (buffer.get(position) == '\n' || buffer.get(position) == '\r')) {
+            position++;
+        }
+        if (position >= buffer.limit()) {
+            return false;
+        }
+        line++;
+        MessageType type = parseType();
+        Side side = parseSide();
+        long unscaled = parseLong();
+        long priceTicks = empty ? 0L : toTicks(unscaled, scale);
+        long quantity = parseLong();
+        long orderId = parseLong();
+        skipLine();
+        msg.set(type, side, priceTicks, quantity, orderId);
+        return true;
+    }
+
+    private MessageType parseType() throws IOException {
+        byte first = buffer.get(position);
+        MessageType type = switch (first) {
+            case 'N', 'n' -> MessageType.New;
+            case 'A', 'a' -> MessageType.Amend;
+            case 'C', 'c' -> buffer.get(position + 1) == 'a' || buffer.get(position + 1) == 'A'
+                    ? MessageType.Cancel : MessageType.Close;
+            case 'T', 't' -> MessageType.Trade;
+            default -> throw new IOException("Unknown message type on line " + line);
+        };
+        skipField();
+        return type;
+    }
+
+    private Side parseSide() {
+        byte first = buffer.get(position);
+        Side side = first == 'B' || first == 'b' ? Side.BID : first == 'A' || first == 'a' ? Side.ASK : null;
+        skipField();
+        return side;
+    }
+
+    /**
+     * Parses a decimal field into an unscaled long, setting scale and empty.
+     */
+    private long parseLong() throws IOException {
+        long value = 0L;
+        boolean negative = false;
+        scale = -1;
+        empty = true;
+        while (position < buffer.limit()) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                value = value * 10L + (b - '0');
+                empty = false;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.') {
+                scale = 0;
+            } else if (b == '-') {
+                negative = true;
+            } else if (b == ',') {
+                position++;
+                break;
+            } else if (b == '\n' || b == '\r') {
+                break;
+            } else if (b != ' ') {
+                throw new IOException("Unexpected character '" + (char) b + "' on line " + line);
+            }
+            position++;
+        }
+        scale = Math.max(scale, 0);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Converts a decimal price to ticks, in integer arithmetic when the tick size is a power of ten.
+     */
+    private long toTicks(long unscaled, int scale) {
+        int shift = decimalTickScale - scale;
+        if (decimalTickScale >= 0 && shift >= 0 && shift < POWERS_OF_TEN.length) {
+            return unscaled * POWERS_OF_TEN[shift];
+        }
+        try {
+            return tickSize.toTicks(BigDecimal.valueOf(unscaled, scale));
+        } catch (ArithmeticException e) {
+            return 0L;
+        }
+    }
+
+    private void skipField() {
+        while (position < buffer.limit()) {
+            byte b = buffer.get(position);
+            if (b == '\n' || b == '\r') {
+                return;
+            }
+            position++;
+            if (b == ',') {
+                return;
+            }
+        }
+    }
+
+    private void skipLine() {
+        while (position < buffer.limit() && buffer.get(position) != '\n') {
+            position++;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Writes every remaining message of a feed to a new CSV feed file, with decimal prices.
+     *
+     * @return The number of messages written
+     */
+    public static long write(Path path, FeedSource source, TickSize tickSize) throws IOException {
+        OrderMessage msg = new OrderMessage();
+        long written = 0L;
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("type,side,price,quantity,orderId");
+            writer.newLine();
+            while (source.next(msg)) {
+                Order order = msg.getOrderData();
+                writer.write(msg.getMsgType().name());
+                writer.write(',');
+                writer.write(order.getSide() != null ? order.getSide().name() : "");
+                writer.write(',');
+                writer.write(order.getPriceTicks() != 0L ? tickSize.toPrice(order.getPriceTicks()).toPlainString() : "");
+                writer.write(',');
+                writer.write(Long.toString(order.getQuantity()));
+                writer.write(',');
+                writer.write(Long.toString(order.getOrderId()));
+                writer.newLine();
+                written++;
+            }
+        }
+        return written;
+    }
+}
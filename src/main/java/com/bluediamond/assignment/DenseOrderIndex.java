@@ -0,0 +1,70 @@
+package com.bluediamond.assignment;
+
+import java.util.Arrays;
+
+/**
+ * OrderIndex for venues issuing sequential order ids: the order id is used directly as the array slot, so a lookup
+ * is a single array read. The array grows with the highest id seen, up to a configured limit; ids outside of
+ * [0, maxDenseId) are kept in a HashOrderIndex instead.
+ */
+public class DenseOrderIndex implements OrderIndex {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final int maxDenseId;
+    private final HashOrderIndex overflow = new HashOrderIndex();
+    private Order[] orders;
+    private int size;
+
+    /**
+     * @param maxDenseId Upper bound (exclusive) of the order ids stored in the dense array
+     */
+    public DenseOrderIndex(int maxDenseId) {
+        this.maxDenseId = maxDenseId;
+        this.orders = new Order[Math.min(DEFAULT_CAPACITY, maxDenseId)];
+    }
+
+    private boolean isDense(long orderId) {
+        return orderId >= 0L && orderId < maxDenseId;
+    }
+
+    public Order get(long orderId) {
+        if (!isDense(orderId)) {
+            return overflow.get(orderId);
+        }
+        return orderId < orders.length ? orders[(int) orderId] : null;
+    }
+
+    public Order putIfAbsent(long orderId, Order order) {
+        if (!isDense(orderId)) {
+            return overflow.putIfAbsent(orderId, order);
+        }
+        if (orderId >= orders.length) {
+            orders = Arrays.copyOf(orders, (int) Math.min(maxDenseId, Math.max(orderId + 1, 2L * orders.length)));
+        }
+        Order existing = orders[(int) orderId];
+        if (existing == null) {
+            orders[(int) orderId] = order;
+            size++;
+        }
+        return existing;
+    }
+
+    public Order remove(long orderId) {
+        if (!isDense(orderId)) {
+            return overflow.remove(orderId);
+        }
+        if (orderId >= orders.length) {
+            return null;
+        }
+        Order removed = orders[(int) orderId];
+        if (removed != null) {
+            orders[(int) orderId] = null;
+            size--;
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size + overflow.size();
+    }
+}
@@ -0,0 +1,226 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of the events accepted by an OrderBook, written to memory-mapped segment files.
+ * Every event is stored as a fixed-size binary record stamped with a sequence number, starting from 1. Appending a
+ * record is a handful of stores into the mapped segment, with no system call and no allocation: the operating system
+ * writes the pages back in its own time, and flush() forces them to disk when the caller needs durability.
+ * A segment holds a fixed number of records and is named after the sequence of its first record; once full, the
+ * journal rolls over to a new segment, which is the only time it touches the file system.
+ * The sequence of a record is written last, with release semantics, so a JournalReader tailing the segments from
+ * another thread or process never sees a partially written record. Reopening an existing journal carries on after
+ * its last record.
+ * A journal has a single writer: the thread applying events to its book.
+ * <p>
+ * Segment layout: a 64 byte header (magic, format version, record size, records per segment, first sequence),
+ * followed by the records. Record layout, little-endian: sequence (8 bytes), order id (8), price in ticks (8),
+ * quantity (8), message type ordinal (1), side (1: 0 none, 1 BID, 2 ASK), padding to 40 bytes.
+ */
+public class EventJournal implements Closeable {
+    static final int MAGIC = 0x424A524E;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+    static final int SEQUENCE_OFFSET = 0;
+    static final int ORDER_ID_OFFSET = 8;
+    static final int PRICE_OFFSET = 16;
+    static final int QUANTITY_OFFSET = 24;
+    static final int TYPE_OFFSET = 32;
+    static final int SIDE_OFFSET = 33;
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private MappedByteBuffer segment;
+    private int position;
+    private long nextSequence;
+
+    /**
+     * Opens the journal in a directory with segments of a million records (40 MB).
+     */
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and carries on after the last record of its latest
+     * segment if there is one.
+     *
+     * @param directory      Directory of the journal's segments, dedicated to a single book
+     * @param segmentRecords Number of records per segment file, for new segments
+     */
+    public EventJournal(Path directory, int segmentRecords) throws IOException {
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("Segment records must be positive: " + segmentRecords);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentRecords = segmentRecords;
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            nextSequence = 1L;
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, channel.size());
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        checkHeader(segment, last);
+        int capacity = capacityOf(segment);
+        while (position < capacity && sequenceAt(segment, position) != 0L) {
+            position++;
+        }
+        nextSequence = firstSequenceOf(segment) + position;
+    }
+
+    /**
+     * Appends an event to the journal.
+     *
+     * @param msgType    Type of the event
+     * @param side       Side of the order, or null if the event doesn't carry one
+     * @param priceTicks Price of the order in ticks, or 0 if the event doesn't carry one
+     * @param quantity   Quantity of the event
+     * @param orderId    Order the event applies to
+     * @return The sequence number of the event
+     */
+    public long append(MessageType msgType, Side side, long priceTicks, long quantity, long orderId) {
+        if (segment == null || position == capacityOf(segment)) {
+            roll();
+        }
+        int offset = HEADER_SIZE + position * RECORD_SIZE;
+        segment.putLong(offset + ORDER_ID_OFFSET, orderId);
+        segment.putLong(offset + PRICE_OFFSET, priceTicks);
+        segment.putLong(offset + QUANTITY_OFFSET, quantity);
+        segment.put(offset + TYPE_OFFSET, (byte) msgType.ordinal());
+        segment.put(offset + SIDE_OFFSET, side == null ? 0 : (byte) (side.ordinal() + 1));
+        long sequence = nextSequence++;
+        LONGS.setRelease(segment, offset + SEQUENCE_OFFSET, sequence);
+        position++;
+        return sequence;
+    }
+
+    /**
+     * Maps a new segment starting at the next sequence.
+     */
+    private void roll() {
+        Path path = directory.resolve(segmentName(nextSequence));
+        long size = HEADER_SIZE + (long) segmentRecords * RECORD_SIZE;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment " + path, e);
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(4, FORMAT_VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putInt(12, segmentRecords);
+        segment.putLong(16, nextSequence);
+        // The magic number goes in last, so readers only open fully initialised segments
+        VarHandle.storeStoreFence();
+        segment.putInt(0, MAGIC);
+        position = 0;
+    }
+
+    /**
+     * Forces the records appended so far to disk. This is a system call, to be made off the hot path.
+     */
+    public void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * @return The sequence number the next appended event will get
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        segment = null;
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%020d%s", firstSequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return The segment files of a journal directory, in sequence order
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static void checkHeader(MappedByteBuffer segment, Path path) throws IOException {
+        if (segment.capacity() < HEADER_SIZE || segment.getInt(0) != MAGIC) {
+            throw new IOException("Not a journal segment: " + path);
+        }
+        if (segment.getInt(4) != FORMAT_VERSION || segment.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Unsupported journal format " + segment.getInt(4) + ": " + path);
+        }
+    }
+
+    static int capacityOf(MappedByteBuffer segment) {
+        return segment.getInt(12);
+    }
+
+    static long firstSequenceOf(MappedByteBuffer segment) {
+        return segment.getLong(16);
+    }
+
+    /**
+     * @return The sequence of the record at a position of the segment, or 0 if it hasn't been written yet
+     */
+    static long sequenceAt(MappedByteBuffer segment, int position) {
+        return (long) LONGS.getAcquire(segment, HEADER_SIZE + position * RECORD_SIZE + SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Copies the record at a position of the segment into a message, once its sequence has been read.
+     */
+    static void readRecord(MappedByteBuffer segment, int position, OrderMessage msg) {
+        int offset = HEADER_SIZE + position * RECORD_SIZE;
+        byte side = segment.get(offset + SIDE_OFFSET);
+        msg.set(MESSAGE_TYPES[segment.get(offset + TYPE_OFFSET)],
+                side == 0 ? null : side == 1 ? Side.BID : Side.ASK,
+                segment.getLong(offset + PRICE_OFFSET),
+                segment.getLong(offset + QUANTITY_OFFSET),
+                segment.getLong(offset + ORDER_ID_OFFSET));
+    }
+}
@@ -0,0 +1,212 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low overhead diagnostic log of an OrderBook's events and rejections, replacing the book's per event text logging
+ * once set on the book.
+ * The book thread only copies a few primitive fields into a record of a preallocated ring, without formatting or
+ * allocating anything; a background thread running the log drains the records and formats them into the
+ * "com.bluediamond.assignment.EventLog" logger, which log4j2.xml routes to an asynchronous appender. If the ring is
+ * full, the book never waits: the record is dropped and counted.
+ * Rejections are rate limited per reason: beyond warningsPerSecond in a one second window, further warnings of that
+ * reason are only counted, and the next warning logged reports how many similar ones were suppressed.
+ * <p>
+ * Each record is RECORD_SIZE longs: code (MessageType ordinal for events, WARNING_CODE plus Reason ordinal for
+ * rejections), side ordinal or -1, price in ticks, quantity, order id, event sequence of the book, System.nanoTime()
+ * of the record, and the number of warnings suppressed before it.
+ */
+public class EventLog implements Runnable, Closeable {
+    private static final Logger logger = LogManager.getLogger(EventLog.class);
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final Reason[] REASONS = Reason.values();
+    private static final Side[] SIDES = Side.values();
+    static final int RECORD_SIZE = 8;
+    private static final int WARNING_CODE = 16;
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final long IDLE_PARK_NANOS = 100_000L;
+
+    /**
+     * Why the book rejected a message.
+     */
+    public enum Reason {
+        INVALID_PRICE("Invalid price"),
+        INVALID_QUANTITY("Invalid quantity"),
+        INVALID_AMENDMENT("Invalid price and/or quantity amendment"),
+        DUPLICATE_ORDER("Order already exists"),
+        ORDER_NOT_FOUND("Order not found"),
+        NOT_ENOUGH_VOLUME("Not enough volume left");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final String bookId;
+    private final long[] records;
+    private final int mask;
+    private final int warningsPerSecond;
+    private final Sequence published = new Sequence(-1L);
+    private final Sequence consumed = new Sequence(-1L);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    // Book thread state
+    private long nextSequence;
+    private long consumedCache = -1L;
+    private final long[] windowStart = new long[REASONS.length];
+    private final int[] windowCount = new int[REASONS.length];
+    private final long[] suppressed = new long[REASONS.length];
+    // Drainer thread state
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * @param bookId            Identifier of the book, for the log lines
+     * @param capacity          Number of records of the ring, a power of two
+     * @param warningsPerSecond Number of warnings logged per reason and second, the others being counted only
+     */
+    public EventLog(String bookId, int capacity, int warningsPerSecond) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.bookId = bookId;
+        this.records = new long[capacity * RECORD_SIZE];
+        this.mask = capacity - 1;
+        this.warningsPerSecond = warningsPerSecond;
+    }
+
+    /**
+     * Records an event applied to the book. Book thread only.
+     *
+     * @param sequence Event sequence of the book after the event
+     */
+    public void event(MessageType type, Side side, long priceTicks, long quantity, long orderId, long sequence) {
+        append(type.ordinal(), side, priceTicks, quantity, orderId, sequence, System.nanoTime(), 0L);
+    }
+
+    /**
+     * Records a rejected message, unless warnings of that reason are over their rate. Book thread only.
+     */
+    public void warn(Reason reason, long orderId, long priceTicks, long quantity) {
+        int index = reason.ordinal();
+        long now = System.nanoTime();
+        if (now - windowStart[index] >= WINDOW_NANOS) {
+            windowStart[index] = now;
+            windowCount[index] = 0;
+        }
+        if (windowCount[index] >= warningsPerSecond) {
+            suppressed[index]++;
+            return;
+        }
+        if (append(WARNING_CODE + index, null, priceTicks, quantity, orderId, 0L, now, suppressed[index])) {
+            windowCount[index]++;
+            suppressed[index] = 0L;
+        }
+    }
+
+    /**
+     * @return False if the ring was full and the record dropped
+     */
+    private boolean append(long code, Side side, long priceTicks, long quantity, long orderId, long sequence,
+                           long nanos, long suppressedCount) {
+        long sequenceNumber = nextSequence;
+        long wrapPoint = sequenceNumber - (mask + 1);
+        if (wrapPoint > consumedCache && wrapPoint > (consumedCache = consumed.get())) {
+            dropped.lazySet(dropped.get() + 1L);
+            return false;
+        }
+        int offset = ((int) sequenceNumber & mask) * RECORD_SIZE;
+        records[offset] = code;
+        records[offset + 1] = side != null ? side.ordinal() : -1L;
+        records[offset + 2] = priceTicks;
+        records[offset + 3] = quantity;
+        records[offset + 4] = orderId;
+        records[offset + 5] = sequence;
+        records[offset + 6] = nanos;
+        records[offset + 7] = suppressedCount;
+        nextSequence = sequenceNumber + 1L;
+        published.set(sequenceNumber);
+        return true;
+    }
+
+    /**
+     * Drains the ring until the log is closed, parking briefly whenever it is empty.
+     */
+    public void run() {
+        while (true) {
+            boolean closing = closed;
+            if (drain() == 0) {
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Formats the records published so far into the logger. Drainer thread only.
+     *
+     * @return The number of records drained
+     */
+    int drain() {
+        long available = published.get();
+        long first = consumed.get() + 1L;
+        for (long sequence = first; sequence <= available; sequence++) {
+            format((int) sequence & mask);
+        }
+        consumed.set(available);
+        return (int) (available - first + 1L);
+    }
+
+    private void format(int index) {
+        int offset = index * RECORD_SIZE;
+        int code = (int) records[offset];
+        line.setLength(0);
+        line.append(bookId).append(' ');
+        if (code >= WARNING_CODE) {
+            line.append(REASONS[code - WARNING_CODE].getDescription())
+                    .append(": order ").append(records[offset + 4])
+                    .append(", ").append(records[offset + 2]).append(" ticks x ").append(records[offset + 3]);
+            if (records[offset + 7] > 0L) {
+                line.append(" (").append(records[offset + 7]).append(" similar suppressed)");
+            }
+            logger.warn(line.toString());
+        } else if (logger.isInfoEnabled()) {
+            line.append('#').append(records[offset + 5]).append(' ').append(MESSAGE_TYPES[code]);
+            if (records[offset + 1] >= 0L) {
+                line.append(' ').append(SIDES[(int) records[offset + 1]]);
+            }
+            line.append(" order ").append(records[offset + 4])
+                    .append(", ").append(records[offset + 2]).append(" ticks x ").append(records[offset + 3]);
+            logger.info(line.toString());
+        }
+    }
+
+    /**
+     * @return The number of records dropped because the ring was full, readable from any thread
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops the drainer thread once it has drained the records published so far.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
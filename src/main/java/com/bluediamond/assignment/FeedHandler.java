@@ -0,0 +1,480 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking network ingress: receives packets of order messages over UDP datagrams, unicast or multicast, and TCP
+ * streams, all multiplexed on one Selector, decodes them in place and dispatches every message to the book of its
+ * instrument id.
+ * A book may be driven directly, on the handler's thread, which then is the book thread, or through an
+ * OrderBookManager, in which case the handler thread is the manager's feed thread.
+ * Packets are written by a FeedPacketWriter: every message carries a sequence number, and each feed checks them.
+ * Packets older than expected are duplicates and dropped; a packet newer than expected means messages were lost, and
+ * the GapListener is told before the packet is applied, so that it can recover the missing messages, e.g. from a
+ * snapshot and a retransmission, and reposition the feed.
+ * Malformed input never stops the handler: a packet that can't be framed, or whose messages are from another schema,
+ * is counted and dropped from the first unreadable message on, the feed then expecting the sequence of that message,
+ * so that the next packet reports the dropped messages as a gap.
+ * The handler counts packets, messages, gaps and malformed packets, and records the time taken to decode and dispatch
+ * each packet.
+ */
+public class FeedHandler implements Runnable, Closeable {
+    private static final Logger logger = LogManager.getLogger(FeedHandler.class);
+    private static final int RECEIVE_BUFFER_SIZE = 1 << 16;
+    private static final long SELECT_TIMEOUT_MILLIS = 100L;
+
+    /**
+     * Recovery hook, called from the handler thread.
+     */
+    public interface GapListener {
+        /**
+         * Called when messages of a feed were lost, before the packet following them is applied. The listener may
+         * recover the missing messages and call Feed.resetSequence() to skip, or replay, part of the packet.
+         *
+         * @param feed             Feed the messages were lost on
+         * @param expectedSequence Sequence of the first message missing
+         * @param receivedSequence Sequence of the first message of the packet received
+         */
+        void onGap(Feed feed, long expectedSequence, long receivedSequence);
+    }
+
+    /**
+     * A UDP or TCP source of packets, with its own sequence numbers.
+     */
+    public final class Feed {
+        private final String name;
+        private final DatagramChannel datagram;
+        private final SocketChannel stream;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        private long expectedSequence = 1L;
+
+        private Feed(String name, DatagramChannel datagram, SocketChannel stream) {
+            this.name = name;
+            this.datagram = datagram;
+            this.stream = stream;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The sequence of the next message expected
+         */
+        public long getExpectedSequence() {
+            return expectedSequence;
+        }
+
+        /**
+         * @param expectedSequence Sequence of the next message to apply, e.g. once recovered up to it
+         */
+        public void resetSequence(long expectedSequence) {
+            this.expectedSequence = expectedSequence;
+        }
+
+        /**
+         * @return The local address of the feed's channel
+         */
+        public SocketAddress getLocalAddress() throws IOException {
+            return datagram != null ? datagram.getLocalAddress() : stream.getLocalAddress();
+        }
+
+        private void close() throws IOException {
+            if (datagram != null) {
+                datagram.close();
+            } else {
+                stream.close();
+            }
+        }
+    }
+
+    private final Selector selector;
+    private final OrderMessageDecoder decoder = new OrderMessageDecoder();
+    private Feed[] feeds = new Feed[0];
+    private OrderBook[] books = new OrderBook[0];
+    private OrderBookManager[] managers = new OrderBookManager[0];
+    private String[] symbols = new String[0];
+    private GapListener gapListener = (feed, expected, received) ->
+            logger.warn("Gap on feed " + feed.getName() + ": expected " + expected + ", received " + received);
+    private volatile boolean closed;
+
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+
+    public FeedHandler() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Routes the messages of an instrument to a book driven by the handler thread.
+     */
+    public FeedHandler register(int instrumentId, OrderBook book) {
+        ensureInstrument(instrumentId);
+        books[instrumentId] = book;
+        managers[instrumentId] = null;
+        return this;
+    }
+
+    /**
+     * Routes the messages of an instrument to the book of a symbol in an OrderBookManager.
+     */
+    public FeedHandler register(int instrumentId, OrderBookManager manager, String symbol) {
+        ensureInstrument(instrumentId);
+        books[instrumentId] = null;
+        managers[instrumentId] = manager;
+        symbols[instrumentId] = symbol;
+        return this;
+    }
+
+    private void ensureInstrument(int instrumentId) {
+        if (instrumentId < 0) {
+            throw new IllegalArgumentException("Invalid instrument id: " + instrumentId);
+        }
+        if (instrumentId >= books.length) {
+            int length = Math.max(instrumentId + 1, books.length * 2);
+            books = Arrays.copyOf(books, length);
+            managers = Arrays.copyOf(managers, length);
+            symbols = Arrays.copyOf(symbols, length);
+        }
+    }
+
+    public FeedHandler setGapListener(GapListener gapListener) {
+        this.gapListener = gapListener;
+        return this;
+    }
+
+    /**
+     * Receives unicast datagrams.
+     *
+     * @param bindAddress Local address to bind, port 0 for any free port
+     */
+    public Feed openUdp(String name, InetSocketAddress bindAddress) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 22);
+        channel.bind(bindAddress);
+        return register(new Feed(name, channel, null), channel, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Receives multicast datagrams sent to a group.
+     *
+     * @param port             Port the group is published on
+     * @param group            Multicast group address
+     * @param networkInterface Interface to join the group on
+     */
+    public Feed openMulticast(String name, int port, InetAddress group, NetworkInterface networkInterface)
+            throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 22);
+        channel.bind(new InetSocketAddress(port));
+        channel.join(group, networkInterface);
+        return register(new Feed(name, channel, null), channel, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Connects to a publisher streaming packets over TCP.
+     */
+    public Feed connectTcp(String name, InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return register(new Feed(name, null, channel), channel, SelectionKey.OP_READ);
+    }
+
+    private Feed register(Feed feed, SelectableChannel channel, int ops) throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, ops, feed);
+        feeds = Arrays.copyOf(feeds, feeds.length + 1);
+        feeds[feeds.length - 1] = feed;
+        return feed;
+    }
+
+    /**
+     * Receives and applies packets until the handler is closed.
+     */
+    public void run() {
+        logger.info("Feed handler started...");
+        try {
+            while (!closed) {
+                if (selector.select(SELECT_TIMEOUT_MILLIS) > 0) {
+                    processSelected();
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                logger.error("Feed handler failed.", e);
+            }
+        }
+        logger.info("Feed handler stopped.");
+    }
+
+    /**
+     * Receives and applies whatever packets are ready without blocking, for callers running their own loop.
+     *
+     * @return The number of packets applied
+     */
+    public int poll() throws IOException {
+        long before = packets.get();
+        if (selector.selectNow() > 0) {
+            processSelected();
+        }
+        return (int) (packets.get() - before);
+    }
+
+    private void processSelected() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (key.isValid() && key.isReadable()) {
+                Feed feed = (Feed) key.attachment();
+                if (feed.datagram != null) {
+                    receiveDatagrams(feed);
+                } else {
+                    receiveStream(feed, key);
+                }
+            }
+        }
+    }
+
+    private void receiveDatagrams(Feed feed) throws IOException {
+        ByteBuffer buffer = feed.buffer;
+        while (true) {
+            buffer.clear();
+            if (feed.datagram.receive(buffer) == null) {
+                return;
+            }
+            int length = buffer.position();
+            if (length < FeedPacketWriter.HEADER_LENGTH || FeedPacketWriter.lengthOf(buffer, 0) != length) {
+                malformed.lazySet(malformed.get() + 1L);
+                logger.warn("Malformed datagram of " + length + " bytes on feed " + feed.name);
+                continue;
+            }
+            onPacket(feed, buffer, 0, length);
+        }
+    }
+
+    /**
+     * Applies every complete packet of the stream, keeping a trailing partial packet for the next read.
+     */
+    private void receiveStream(Feed feed, SelectionKey key) throws IOException {
+        ByteBuffer buffer = feed.buffer;
+        int read = feed.stream.read(buffer);
+        if (read < 0) {
+            logger.warn("Feed " + feed.name + " disconnected");
+            key.cancel();
+            feed.close();
+            return;
+        }
+        int position = 0;
+        int end = buffer.position();
+        while (end - position >= FeedPacketWriter.HEADER_LENGTH) {
+            int length = FeedPacketWriter.lengthOf(buffer, position);
+            if (length < FeedPacketWriter.HEADER_LENGTH || length > buffer.capacity()) {
+                malformed.lazySet(malformed.get() + 1L);
+                logger.error("Malformed packet of " + length + " bytes on feed " + feed.name + ", disconnecting");
+                key.cancel();
+                feed.close();
+                return;
+            }
+            if (end - position < length) {
+                break;
+            }
+            onPacket(feed, buffer, position, length);
+            position += length;
+        }
+        buffer.limit(end).position(position);
+        buffer.compact();
+    }
+
+    private void onPacket(Feed feed, ByteBuffer buffer, int packet, int length) {
+        long start = System.nanoTime();
+        long sequence = FeedPacketWriter.sequenceOf(buffer, packet);
+        int count = FeedPacketWriter.countOf(buffer, packet);
+        packets.lazySet(packets.get() + 1L);
+        if (sequence + count <= feed.expectedSequence) {
+            duplicates.lazySet(duplicates.get() + 1L);
+            return;
+        }
+        if (sequence > feed.expectedSequence) {
+            gaps.lazySet(gaps.get() + 1L);
+            gapListener.onGap(feed, feed.expectedSequence, sequence);
+        }
+        // Messages of the packet the feed already has, after an overlap or a recovery, are skipped
+        long skip = feed.expectedSequence - sequence;
+        long applied = 0L;
+        int decoded = 0;
+        decoder.wrap(buffer, packet + FeedPacketWriter.HEADER_LENGTH, length - FeedPacketWriter.HEADER_LENGTH);
+        while (decoded < count && decoder.next()) {
+            if (decoded >= skip) {
+                dispatch(decoder);
+                applied++;
+            }
+            decoded++;
+        }
+        if (decoder.isMalformed()) {
+            // The rest of the packet is dropped, and reported as a gap by the next packet
+            malformed.lazySet(malformed.get() + 1L);
+            logger.warn("Malformed message at offset " + decoder.getPosition() + " on feed " + feed.name + ", "
+                    + (count - decoded) + " message(s) dropped");
+            feed.expectedSequence = Math.max(feed.expectedSequence, sequence + decoded);
+        } else {
+            feed.expectedSequence = Math.max(feed.expectedSequence, sequence + count);
+        }
+        messages.lazySet(messages.get() + applied);
+        decodeLatency.record(System.nanoTime() - start);
+    }
+
+    private void dispatch(OrderMessageDecoder msg) {
+        int instrumentId = msg.getInstrumentId();
+        if (instrumentId >= 0 && instrumentId < books.length) {
+            OrderBook book = books[instrumentId];
+            if (book != null) {
+                book.process(msg);
+                return;
+            }
+            OrderBookManager manager = managers[instrumentId];
+            if (manager != null) {
+                MessageType type = msg.getMsgType();
+                manager.submit(symbols[instrumentId], type, msg.getSide(), msg.getPriceTicks(), msg.getQuantity(),
+                        msg.getOrderId());
+                return;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("No book for instrument: {}", instrumentId);
+        }
+    }
+
+    /**
+     * @return The packets, messages and gaps received so far, and the time taken to decode and dispatch packets
+     */
+    public Statistics getStatistics() {
+        return new Statistics(packets.get(), messages.get(), gaps.get(), duplicates.get(), malformed.get(),
+                System.nanoTime() - startNanos, decodeLatency.snapshot());
+    }
+
+    /**
+     * @return Histogram of the time taken to decode and dispatch each packet
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * Stops the handler loop and closes every feed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        for (Feed feed : feeds) {
+            feed.close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Counters of a FeedHandler since it was created.
+     */
+    public static final class Statistics {
+        private final long packets;
+        private final long messages;
+        private final long gaps;
+        private final long duplicates;
+        private final long malformed;
+        private final long elapsedNanos;
+        private final LatencyHistogram.Snapshot decodeLatency;
+
+        Statistics(long packets, long messages, long gaps, long duplicates, long malformed, long elapsedNanos,
+                   LatencyHistogram.Snapshot decodeLatency) {
+            this.packets = packets;
+            this.messages = messages;
+            this.gaps = gaps;
+            this.duplicates = duplicates;
+            this.malformed = malformed;
+            this.elapsedNanos = elapsedNanos;
+            this.decodeLatency = decodeLatency;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getGaps() {
+            return gaps;
+        }
+
+        /**
+         * @return The number of packets dropped as already received
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return The number of packets dropped, in whole or in part, as unreadable
+         */
+        public long getMalformed() {
+            return malformed;
+        }
+
+        public double getPacketsPerSecond() {
+            return elapsedNanos > 0L ? packets * 1e9 / elapsedNanos : 0.0;
+        }
+
+        public double getMessagesPerSecond() {
+            return elapsedNanos > 0L ? messages * 1e9 / elapsedNanos : 0.0;
+        }
+
+        /**
+         * @return The time taken to decode and dispatch each packet
+         */
+        public LatencyHistogram.Snapshot getDecodeLatency() {
+            return decodeLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "packets=" + packets +
+                    ", messages=" + messages +
+                    ", gaps=" + gaps +
+                    ", duplicates=" + duplicates +
+                    ", malformed=" + malformed +
+                    ", packetsPerSecond=" + Math.round(getPacketsPerSecond()) +
+                    ", decodeLatency=" + decodeLatency +
+                    '}';
+        }
+    }
+}
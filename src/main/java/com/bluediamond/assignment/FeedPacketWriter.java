@@ -0,0 +1,80 @@
+package com.bluediamond.assignment;
+
+import java.nio.ByteBuffer;
+
+import static com.bluediamond.assignment.WireFormat.INTS;
+import static com.bluediamond.assignment.WireFormat.LONGS;
+import static com.bluediamond.assignment.WireFormat.SHORTS;
+
+/**
+ * Writes the packets a FeedHandler receives: a 16 byte packet header followed by a batch of messages in the
+ * WireFormat layout. The same packet is sent as one UDP datagram, or as one frame of a TCP stream, where the packet
+ * length in its header delimits it.
+ * <p>
+ * Packet header, little-endian: sequence number of the first message (8 bytes), message count (2), padding (2),
+ * packet length including the header (4). Every message of a feed carries the next sequence number, from 1, so that
+ * receivers can detect lost or duplicated packets.
+ */
+public final class FeedPacketWriter {
+    public static final int HEADER_LENGTH = 16;
+    static final int SEQUENCE_OFFSET = 0;
+    static final int COUNT_OFFSET = 8;
+    static final int LENGTH_OFFSET = 12;
+
+    private final OrderMessageEncoder encoder = new OrderMessageEncoder();
+    private ByteBuffer buffer;
+    private int start;
+    private long nextSequence = 1L;
+
+    /**
+     * Starts a packet carrying the next messages of the feed.
+     *
+     * @param buffer Buffer to write the packet to
+     * @param offset Offset of the packet in the buffer
+     * @return The encoder to write the messages of the packet with
+     */
+    public OrderMessageEncoder begin(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.start = offset;
+        return encoder.wrap(buffer, offset + HEADER_LENGTH);
+    }
+
+    /**
+     * Completes the packet with the messages written since begin(), numbering them from the feed's next sequence.
+     *
+     * @param messageCount Number of messages written
+     * @return The length of the packet
+     */
+    public int finish(int messageCount) {
+        int length = HEADER_LENGTH + encoder.getEncodedLength();
+        LONGS.set(buffer, start + SEQUENCE_OFFSET, nextSequence);
+        SHORTS.set(buffer, start + COUNT_OFFSET, (short) messageCount);
+        SHORTS.set(buffer, start + COUNT_OFFSET + 2, (short) 0);
+        INTS.set(buffer, start + LENGTH_OFFSET, length);
+        nextSequence += messageCount;
+        return length;
+    }
+
+    /**
+     * @return The sequence number of the next message of the feed
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public void setNextSequence(long nextSequence) {
+        this.nextSequence = nextSequence;
+    }
+
+    static long sequenceOf(ByteBuffer buffer, int packet) {
+        return (long) LONGS.get(buffer, packet + SEQUENCE_OFFSET);
+    }
+
+    static int countOf(ByteBuffer buffer, int packet) {
+        return Short.toUnsignedInt((short) SHORTS.get(buffer, packet + COUNT_OFFSET));
+    }
+
+    static int lengthOf(ByteBuffer buffer, int packet) {
+        return (int) INTS.get(buffer, packet + LENGTH_OFFSET);
+    }
+}
@@ -0,0 +1,130 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays recorded feeds through a book as fast as it can apply them, for throughput measurements and backtests.
+ * Messages are read from a memory-mapped CsvFeed or BinaryFeed and applied by calling the book's TickLevel2View
+ * methods directly on the calling thread, bypassing any ingress queue.
+ * <p>
+ * Usage:
+ * <pre>
+ * FeedReplay replay &lt;feed.csv|feed.bin&gt; [tickSize]
+ * FeedReplay convert &lt;in.csv|in.bin&gt; &lt;out.csv|out.bin&gt; [tickSize]
+ * </pre>
+ */
+public class FeedReplay {
+
+    /**
+     * Opens a recorded feed, as CSV if its name ends with .csv and as binary otherwise.
+     */
+    public static FeedSource open(Path path, TickSize tickSize) throws IOException {
+        return path.getFileName().toString().endsWith(".csv") ? new CsvFeed(path, tickSize) : new BinaryFeed(path);
+    }
+
+    /**
+     * Applies every message of a feed to a book, stopping early on a Close message.
+     *
+     * @return The replay throughput
+     */
+    public static Report replay(FeedSource source, TickLevel2View book) throws IOException {
+        OrderMessage msg = new OrderMessage();
+        long messages = 0L;
+        long start = System.nanoTime();
+        while (source.next(msg)) {
+            Order order = msg.getOrderData();
+            switch (msg.getMsgType()) {
+                case New -> book.onNewOrder(order.getSide(), order.getPriceTicks(), order.getQuantity(),
+                        order.getOrderId());
+                case Amend -> book.onReplaceOrder(order.getPriceTicks(), order.getQuantity(), order.getOrderId());
+                case Cancel -> book.onCancelOrder(order.getOrderId());
+                case Trade -> book.onTrade(order.getQuantity(), order.getOrderId());
+                case Close -> {
+                    return new Report(messages, System.nanoTime() - start);
+                }
+            }
+            messages++;
+        }
+        return new Report(messages, System.nanoTime() - start);
+    }
+
+    /**
+     * Converts a feed between its CSV and binary forms, according to the file names.
+     *
+     * @return The number of messages converted
+     */
+    public static long convert(Path in, Path out, TickSize tickSize) throws IOException {
+        try (FeedSource source = open(in, tickSize)) {
+            return out.getFileName().toString().endsWith(".csv")
+                    ? CsvFeed.write(out, source, tickSize)
+                    : BinaryFeed.write(out, source);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("replay")) {
+            TickSize tickSize = args.length > 2 ? new TickSize(new BigDecimal(args[2])) : TickSize.DEFAULT;
+            // Per event logging would dominate the replay
+            Configurator.setLevel("com.bluediamond.assignment", Level.WARN);
+            OrderBook book = new OrderBook("REPLAY", tickSize, new HashOrderIndex());
+            Report report;
+            try (FeedSource source = open(Paths.get(args[1]), tickSize)) {
+                report = replay(source, book);
+            }
+            System.out.println(report);
+            for (Side side : Side.values()) {
+                System.out.printf("%s: top %s, %d levels, %d orders%n", side, book.getTopOfBook(side),
+                        book.getBookDepth(side), (side == Side.BID ? book.buys : book.sells).size());
+            }
+        } else if (args.length >= 3 && args[0].equals("convert")) {
+            TickSize tickSize = args.length > 3 ? new TickSize(new BigDecimal(args[3])) : TickSize.DEFAULT;
+            long converted = convert(Paths.get(args[1]), Paths.get(args[2]), tickSize);
+            System.out.printf("Converted %,d messages%n", converted);
+        } else {
+            System.err.println("Usage: FeedReplay replay <feed.csv|feed.bin> [tickSize]");
+            System.err.println("       FeedReplay convert <in.csv|in.bin> <out.csv|out.bin> [tickSize]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Outcome of a replay.
+     */
+    public static final class Report {
+        private final long messages;
+        private final long elapsedNanos;
+
+        Report(long messages, long elapsedNanos) {
+            this.messages = messages;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The number of messages applied
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getMessagesPerSecond() {
+            return elapsedNanos > 0L ? messages * 1e9 / elapsedNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Replayed %,d messages in %,d ms: %,.0f messages/s", messages,
+                    elapsedNanos / 1_000_000L, getMessagesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.bluediamond.assignment;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Recorded market data feed, read one message at a time into a recycled OrderMessage.
+ */
+public interface FeedSource extends Closeable {
+    /**
+     * Reads the next message of the feed, with its price in ticks.
+     *
+     * @param msg Message to overwrite
+     * @return False once the end of the feed is reached
+     */
+    boolean next(OrderMessage msg) throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+/**
+ * Receives the fills of an OrderBook in matching mode, from the book thread, as an incoming order is matched.
+ */
+public interface FillListener {
+    /**
+     * @param aggressorOrderId Id of the incoming order
+     * @param restingOrderId   Id of the resting order it traded with
+     * @param aggressorSide    Side of the incoming order
+     * @param priceTicks       Price of the fill in ticks, the resting order's price
+     * @param quantity         Quantity filled
+     * @param sequence         Event sequence of the book after the fill, that of the Trade applied to the resting order
+     */
+    void onFill(long aggressorOrderId, long restingOrderId, Side aggressorSide, long priceTicks, long quantity,
+                long sequence);
+}
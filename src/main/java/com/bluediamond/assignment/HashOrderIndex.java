@@ -0,0 +1,121 @@
+package com.bluediamond.assignment;
+
+/**
+ * Open addressing OrderIndex: order ids and orders are stored in two parallel arrays, probed linearly from a
+ * Fibonacci hash of the id. There are no boxed keys or entry nodes, so the index costs two array slots per order.
+ * Removal shifts the following entries of the probe run back instead of leaving tombstones, which keeps lookups short
+ * under the constant add/cancel churn of an order book.
+ */
+public class HashOrderIndex implements OrderIndex {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Order[] values;
+    private int mask;
+    private int shift;
+    private int resizeThreshold;
+    private int size;
+
+    public HashOrderIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedOrders Number of orders the index should hold without resizing
+     */
+    public HashOrderIndex(int expectedOrders) {
+        allocate(Integer.highestOneBit(Math.max(2, (int) (expectedOrders / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Order[capacity];
+        mask = capacity - 1;
+        shift = Long.numberOfLeadingZeros(mask);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slotOf(long orderId) {
+        return (int) ((orderId * GOLDEN_RATIO) >>> shift);
+    }
+
+    public Order get(long orderId) {
+        for (int slot = slotOf(orderId); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == orderId) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    public Order putIfAbsent(long orderId, Order order) {
+        int slot = slotOf(orderId);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == orderId) {
+                return values[slot];
+            }
+        }
+        keys[slot] = orderId;
+        values[slot] = order;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return null;
+    }
+
+    public Order remove(long orderId) {
+        for (int slot = slotOf(orderId); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == orderId) {
+                Order removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes the gap left at the freed slot by moving back any later entry of the probe run that can't be reached
+     * from its home slot otherwise.
+     */
+    private void shiftBack(int freeSlot) {
+        int slot = freeSlot;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = slotOf(keys[slot]);
+            // The entry may move to the free slot unless its home lies cyclically in (freeSlot, slot]
+            if (((slot - home) & mask) >= ((slot - freeSlot) & mask)) {
+                keys[freeSlot] = keys[slot];
+                values[freeSlot] = values[slot];
+                freeSlot = slot;
+            }
+        }
+        values[freeSlot] = null;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Order[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,141 @@
+package com.bluediamond.assignment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads the records of an EventJournal in sequence order, from another thread or process while the journal is still
+ * being written. read() returns false once it has caught up with the writer, and picks up new records when called
+ * again, following the journal as it rolls over to new segments.
+ */
+public class JournalReader implements Closeable {
+    private final Path directory;
+    private MappedByteBuffer segment;
+    private int position;
+    private long nextSequence;
+
+    /**
+     * @param directory Directory of the journal's segments
+     */
+    public JournalReader(Path directory) throws IOException {
+        this(directory, 1L);
+    }
+
+    /**
+     * @param directory    Directory of the journal's segments
+     * @param fromSequence Sequence of the first record to read
+     */
+    public JournalReader(Path directory, long fromSequence) throws IOException {
+        this.directory = directory;
+        this.nextSequence = Math.max(fromSequence, 1L);
+        List<Path> segments = EventJournal.listSegments(directory);
+        // Start from the latest segment beginning at or before the requested sequence
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            long firstSequence = firstSequenceOf(segments.get(i));
+            if (firstSequence <= nextSequence) {
+                if (map(segments.get(i))) {
+                    nextSequence = firstSequence + position;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the next record into a message.
+     *
+     * @param msg Message to overwrite with the record
+     * @return True if a record was read, false if the reader has caught up with the writer
+     */
+    public boolean read(OrderMessage msg) throws IOException {
+        if (segment == null || position == EventJournal.capacityOf(segment)) {
+            if (!map(directory.resolve(EventJournal.segmentName(nextSequence)))) {
+                return false;
+            }
+        }
+        if (EventJournal.sequenceAt(segment, position) == 0L) {
+            return false;
+        }
+        EventJournal.readRecord(segment, position, msg);
+        position++;
+        nextSequence++;
+        return true;
+    }
+
+    /**
+     * Maps a segment if it exists and its header has been written.
+     *
+     * @return True if the segment is now the current one
+     */
+    private boolean map(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < EventJournal.HEADER_SIZE) {
+                return false;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != EventJournal.MAGIC) {
+            return false;
+        }
+        VarHandle.loadLoadFence();
+        EventJournal.checkHeader(mapped, path);
+        segment = mapped;
+        position = (int) Math.min(nextSequence - EventJournal.firstSequenceOf(mapped), EventJournal.capacityOf(mapped));
+        return true;
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - EventJournal.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Finds how far the writer has got in the current segment, by binary search over its records: records are written
+     * in sequence, so the written ones form a prefix of the segment. Records written to later segments are only seen
+     * once the reader has reached them. Reader thread only.
+     *
+     * @return The sequence of the last record written to the current segment, at least getNextSequence() - 1
+     */
+    public long getWrittenSequence() {
+        if (segment == null || position == EventJournal.capacityOf(segment)
+                || EventJournal.sequenceAt(segment, position) == 0L) {
+            return nextSequence - 1L;
+        }
+        int low = position;
+        int high = EventJournal.capacityOf(segment) - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (EventJournal.sequenceAt(segment, mid) != 0L) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return EventJournal.sequenceAt(segment, low);
+    }
+
+    /**
+     * @return The sequence number of the next record to read
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+    }
+}
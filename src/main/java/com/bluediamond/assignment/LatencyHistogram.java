@@ -0,0 +1,194 @@
+package com.bluediamond.assignment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-bucketed histogram of nanosecond latencies, in the style of an HdrHistogram: every power of two is split into
+ * 32 linear sub-buckets, so that any recorded value is reported within about 3% of its true value, from 1 ns up to
+ * about 36 minutes, in a fixed array of counts.
+ * Recording is a couple of bit operations and an ordered store, without allocation or locking, and must only be done
+ * by a single thread, the book thread. Any other thread may take snapshots concurrently: cumulative ones, or interval
+ * ones covering what was recorded since the previous interval snapshot. reset() doesn't touch the counts the writer
+ * updates, it only moves the baseline snapshots are taken against.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1L;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    // Reader state, guarded by this
+    private long[] resetCounts = new long[BUCKETS];
+    private long resetSum;
+    private long[] intervalCounts = new long[BUCKETS];
+    private long intervalSum;
+
+    /**
+     * Records a latency. Single writer only.
+     *
+     * @param nanos Latency in nanoseconds; negative values count as 0 and values beyond the range as the maximum
+     */
+    public void record(long nanos) {
+        long value = nanos < 0L ? 0L : Math.min(nanos, MAX_VALUE);
+        int index = bucketOf(value);
+        counts.lazySet(index, counts.get(index) + 1L);
+        sum.lazySet(sum.get() + value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return The highest value counted in a bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long mantissa = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((mantissa + 1L) << shift) - 1L;
+    }
+
+    /**
+     * @return The latencies recorded since the last reset
+     */
+    public synchronized Snapshot snapshot() {
+        long[] current = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            current[i] = counts.get(i) - resetCounts[i];
+        }
+        return new Snapshot(current, sum.get() - resetSum);
+    }
+
+    /**
+     * @return The latencies recorded since the previous interval snapshot or reset
+     */
+    public synchronized Snapshot intervalSnapshot() {
+        long[] interval = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            interval[i] = count - intervalCounts[i];
+            intervalCounts[i] = count;
+        }
+        long total = sum.get();
+        Snapshot snapshot = new Snapshot(interval, total - intervalSum);
+        intervalSum = total;
+        return snapshot;
+    }
+
+    /**
+     * Starts both cumulative and interval snapshots afresh.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            resetCounts[i] = counts.get(i);
+        }
+        resetSum = sum.get();
+        intervalCounts = resetCounts.clone();
+        intervalSum = resetSum;
+    }
+
+    /**
+     * Immutable copy of a histogram's counts. Its getters make it an open type, so that it can be published as is
+     * through JMX.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0L;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @return The number of latencies recorded
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The mean latency in nanoseconds, or 0 if none was recorded
+         */
+        public double getMean() {
+            return count > 0L ? (double) sum / count : 0.0;
+        }
+
+        /**
+         * @param percentile Percentile requested, between 0 and 100
+         * @return The latency in nanoseconds at or under which that percentage of the latencies fall
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0L) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return getMax();
+        }
+
+        public long getP50() {
+            return getValueAtPercentile(50.0);
+        }
+
+        public long getP90() {
+            return getValueAtPercentile(90.0);
+        }
+
+        public long getP99() {
+            return getValueAtPercentile(99.0);
+        }
+
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        /**
+         * @return The highest latency recorded in nanoseconds, to the precision of its bucket
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0L) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0L;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + count +
+                    ", mean=" + Math.round(getMean()) +
+                    ", p50=" + getP50() +
+                    ", p99=" + getP99() +
+                    ", p999=" + getP999() +
+                    ", max=" + getMax() +
+                    '}';
+        }
+    }
+}
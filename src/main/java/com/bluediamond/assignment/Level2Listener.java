@@ -0,0 +1,35 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+/**
+ * Receives the Level 2 market data of an OrderBook: an update whenever the aggregate quantity or order count of a
+ * price level changes, and full images of the book, e.g. for a listener joining late.
+ * The book calls its listeners from the book thread, while applying events, so a listener must return quickly; a
+ * slow consumer should subscribe through a ConflatingLevel2Listener instead.
+ */
+public interface Level2Listener {
+    /**
+     * @param side       Side of the price level
+     * @param priceTicks Price of the level, in ticks
+     * @param quantity   Aggregate quantity now resting at the level, 0 if the level is gone
+     * @param orderCount Number of orders now resting at the level, 0 if the level is gone
+     * @param sequence   Event sequence of the book once the change was applied
+     */
+    void onLevelUpdate(Side side, long priceTicks, long quantity, long orderCount, long sequence);
+
+    /**
+     * Starts a full image of the book: an update follows for every non-empty level, from the best price down on each
+     * side, and any level left out of the image is empty.
+     *
+     * @param sequence Event sequence of the book the image was taken at
+     */
+    default void onImageBegin(long sequence) {
+    }
+
+    /**
+     * @param sequence Event sequence of the book the image was taken at
+     */
+    default void onImageEnd(long sequence) {
+    }
+}
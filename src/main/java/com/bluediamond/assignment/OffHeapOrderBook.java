@@ -0,0 +1,174 @@
+package com.bluediamond.assignment;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * OrderBook storage mode for very deep books: resting orders are kept in off-heap, fixed-width OrderSlots addressed
+ * by index, and indexed by order id in a SlotIndex of primitive arrays, instead of as pooled Order objects in an
+ * OrderIndex. Slots of cancelled and filled orders are reused through a free list.
+ * Price levels, their totals and everything built on them (queries, snapshots, Level2Listeners, journaling, matching
+ * and checkpoint restores) behave exactly as on an OrderBook; only the orders are stored differently. The number of
+ * heap objects therefore grows with the number of price levels, never with the number of orders, and neither does
+ * the work of the garbage collector.
+ * The book only overrides the storage hooks of OrderBook, its validation, matching, journaling and logging being
+ * those of the base book; the current order of the hooks is a slot.
+ */
+public class OffHeapOrderBook extends OrderBook {
+    private final OrderSlots slots;
+    private final SlotIndex slotIndex;
+    private int currentSlot = OrderSlots.NONE;
+
+    /**
+     * @param expectedOrders Number of resting orders to reserve slots and index entries for up front
+     */
+    public OffHeapOrderBook(String id, BlockingQueue<OrderMessage> queue, TickSize tickSize, int expectedOrders) {
+        this(id, queue, null, tickSize, expectedOrders);
+    }
+
+    /**
+     * @param ring           Preallocated ring of messages, published by a single producer thread
+     * @param expectedOrders Number of resting orders to reserve slots and index entries for up front
+     */
+    public OffHeapOrderBook(String id, RingBuffer<OrderMessage> ring, TickSize tickSize, int expectedOrders) {
+        this(id, null, ring, tickSize, expectedOrders);
+    }
+
+    /**
+     * Creates a book without an ingress of its own, driven by calling its Level2View methods or process() from a
+     * single thread.
+     *
+     * @param expectedOrders Number of resting orders to reserve slots and index entries for up front
+     */
+    public OffHeapOrderBook(String id, TickSize tickSize, int expectedOrders) {
+        this(id, null, null, tickSize, expectedOrders);
+    }
+
+    private OffHeapOrderBook(String id, BlockingQueue<OrderMessage> queue, RingBuffer<OrderMessage> ring,
+                             TickSize tickSize, int expectedOrders) {
+        super(id, queue, ring, tickSize, null);
+        this.slots = new OrderSlots(expectedOrders);
+        this.slotIndex = new SlotIndex(expectedOrders);
+    }
+
+    @Override
+    public int getOrderCount() {
+        return slots.size();
+    }
+
+    /**
+     * @return The off-heap memory reserved for the book's orders, in bytes
+     */
+    public long getReservedBytes() {
+        return slots.reservedBytes();
+    }
+
+    /**
+     * @return The slot of a resting order, or OrderSlots.NONE if it isn't on the book
+     */
+    int slotOf(long orderId) {
+        return slotIndex.get(orderId);
+    }
+
+    OrderSlots getSlots() {
+        return slots;
+    }
+
+    @Override
+    protected boolean findOrder(long orderId) {
+        currentSlot = slotIndex.get(orderId);
+        return currentSlot != OrderSlots.NONE;
+    }
+
+    @Override
+    protected boolean insertOrder(Side side, long priceTicks, long quantity, long orderId) {
+        int slot = slots.acquire();
+        if (slotIndex.putIfAbsent(orderId, slot) != OrderSlots.NONE) {
+            slots.release(slot);
+            return false;
+        }
+        slots.set(slot, orderId, side, priceTicks, quantity, nextTimestamp());
+        getBookSide(side).add(slots, slot);
+        currentSlot = slot;
+        return true;
+    }
+
+    @Override
+    protected boolean removeOrder(long orderId) {
+        currentSlot = slotIndex.remove(orderId);
+        if (currentSlot == OrderSlots.NONE) {
+            return false;
+        }
+        getBookSide(slots.getSide(currentSlot)).remove(slots, currentSlot);
+        return true;
+    }
+
+    @Override
+    protected void releaseOrder() {
+        slots.release(currentSlot);
+    }
+
+    @Override
+    protected void adjustOrder(long quantity) {
+        getBookSide(slots.getSide(currentSlot)).adjustQuantity(slots.getPriceTicks(currentSlot),
+                quantity - slots.getQuantity(currentSlot));
+        slots.setQuantity(currentSlot, quantity);
+    }
+
+    @Override
+    protected void requeueOrder(long quantity) {
+        slots.setTimestamp(currentSlot, nextTimestamp());
+        getBookSide(slots.getSide(currentSlot)).requeue(slots, currentSlot, quantity);
+    }
+
+    @Override
+    protected void moveOrder(long priceTicks, long quantity) {
+        BookSide bookSide = getBookSide(slots.getSide(currentSlot));
+        bookSide.remove(slots, currentSlot);
+        slots.setPriceTicks(currentSlot, priceTicks);
+        slots.setQuantity(currentSlot, quantity);
+        slots.setTimestamp(currentSlot, nextTimestamp());
+        bookSide.add(slots, currentSlot);
+    }
+
+    @Override
+    protected void headOrder(PriceLevel level) {
+        currentSlot = level.getHeadSlot();
+    }
+
+    @Override
+    protected boolean nextOrder() {
+        currentSlot = slots.getNext(currentSlot);
+        return currentSlot != OrderSlots.NONE;
+    }
+
+    @Override
+    protected long currentOrderId() {
+        return slots.getOrderId(currentSlot);
+    }
+
+    @Override
+    protected Side currentSide() {
+        return slots.getSide(currentSlot);
+    }
+
+    @Override
+    protected long currentPriceTicks() {
+        return slots.getPriceTicks(currentSlot);
+    }
+
+    @Override
+    protected long currentQuantity() {
+        return slots.getQuantity(currentSlot);
+    }
+
+    @Override
+    protected String describeOrder() {
+        return "Order{" +
+                "orderId=" + slots.getOrderId(currentSlot) +
+                ", side=" + slots.getSide(currentSlot) +
+                ", priceTicks=" + slots.getPriceTicks(currentSlot) +
+                ", quantity=" + slots.getQuantity(currentSlot) +
+                ", timestamp=" + slots.getTimestamp(currentSlot) +
+                '}';
+    }
+}
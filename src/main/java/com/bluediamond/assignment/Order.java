@@ -3,10 +3,13 @@ package com.bluediamond.assignment;
 import com.bluediamond.assignment.Level2View.Side;
 
 import java.math.BigDecimal;
-import java.util.Date;
 
 /**
  * Order Class populating the OrderBook implementation.
+ * Orders sent to the book may carry either a decimal price or a fixed-point tick price. Orders resting on the book
+ * always hold a tick price, and take their decimal price from the PriceLevel they rest on.
+ * Orders are mutable so that they can be recycled: the OrderBook draws its resting orders from an OrderPool and
+ * returns them once cancelled or filled, and feed handlers may reuse message orders through set().
  * Implements Comparable for easier sorting depending on Side value.
  */
 public class Order implements Comparable<Order> {
@@ -14,10 +17,14 @@ public class Order implements Comparable<Order> {
     private long orderId;
     private Side side;
     private BigDecimal price;
+    private long priceTicks;
     private long quantity;
-    private Date timestamp;
+    private long timestamp;
+    private PriceLevel level;
+    private Order prev;
+    private Order next;
 
-    private Order() {
+    Order() {
     }
 
     public Order(long orderId, Side side, BigDecimal price, long quantity) {
@@ -25,24 +32,43 @@ public class Order implements Comparable<Order> {
         this.side = side;
         this.price = price;
         this.quantity = quantity;
-        this.timestamp = new Date();
+    }
+
+    public Order(long orderId, Side side, long priceTicks, long quantity) {
+        set(orderId, side, priceTicks, quantity);
+    }
+
+    /**
+     * Overwrites the order data in place, clearing any decimal price and timestamp.
+     *
+     * @return This order
+     */
+    public Order set(long orderId, Side side, long priceTicks, long quantity) {
+        this.orderId = orderId;
+        this.side = side;
+        this.price = null;
+        this.priceTicks = priceTicks;
+        this.quantity = quantity;
+        this.timestamp = 0L;
+        return this;
     }
 
     /**
      * The custom ordering is done at timestamp level for equally priced orders, and at price level after that.
+     * Prices are compared in ticks, so the ordering only applies to orders resting on the book.
      *
      * @param other the object to be compared.
      * @return Negative value if this object should be sorted after the other object, positive value if this
      * object should be sorted before the other object.
      */
     public int compareTo(Order other) {
-        if (this.getPrice().equals(other.getPrice())) {
-            return this.getTimestamp().compareTo(other.getTimestamp());
+        if (this.getPriceTicks() == other.getPriceTicks()) {
+            return Long.compare(this.getTimestamp(), other.getTimestamp());
         } else {
             if (getSide().equals(Side.BID)) {
-                return -1 * this.getPrice().compareTo(other.getPrice());
+                return -1 * Long.compare(this.getPriceTicks(), other.getPriceTicks());
             } else {
-                return this.getPrice().compareTo(other.getPrice());
+                return Long.compare(this.getPriceTicks(), other.getPriceTicks());
             }
         }
     }
@@ -62,23 +88,76 @@ public class Order implements Comparable<Order> {
         return side;
     }
 
+    /**
+     * @return The decimal price of the order, taken from its price level while resting on the book, or null for an
+     * order sent with a tick price only
+     */
     public BigDecimal getPrice() {
-        return price;
+        return level != null ? level.getPrice() : price;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
     }
 
     public long getQuantity() {
         return quantity;
     }
 
-    public Date getTimestamp() {
+    /**
+     * @return Monotonic nanosecond sequence stamped by the OrderBook when the order joined its price level queue
+     */
+    public long getTimestamp() {
         return timestamp;
     }
 
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public Order setPrice(BigDecimal price) {
         this.price = price;
         return this;
     }
 
+    public Order setPriceTicks(long priceTicks) {
+        this.priceTicks = priceTicks;
+        return this;
+    }
+
+    /**
+     * @return The price level the order rests on, or null if the order isn't resting on a book
+     */
+    PriceLevel getLevel() {
+        return level;
+    }
+
+    void setLevel(PriceLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * @return The order ahead of this one on its price level, or null if it is first in the queue
+     */
+    Order getPrev() {
+        return prev;
+    }
+
+    void setPrev(Order prev) {
+        this.prev = prev;
+    }
+
+    /**
+     * @return The order behind this one on its price level, or null if it is last in the queue
+     */
+    Order getNext() {
+        return next;
+    }
+
+    void setNext(Order next) {
+        this.next = next;
+    }
+
     public Order setQuantity(long quantity) {
         this.quantity = quantity;
         return this;
@@ -92,10 +171,11 @@ public class Order implements Comparable<Order> {
         Order order = (Order) o;
 
         if (getOrderId() != order.getOrderId()) return false;
+        if (getPriceTicks() != order.getPriceTicks()) return false;
         if (getQuantity() != order.getQuantity()) return false;
         if (getSide() != order.getSide()) return false;
         if (getPrice() != null ? !getPrice().equals(order.getPrice()) : order.getPrice() != null) return false;
-        return getTimestamp() != null ? getTimestamp().equals(order.getTimestamp()) : order.getTimestamp() == null;
+        return getTimestamp() == order.getTimestamp();
     }
 
     @Override
@@ -103,8 +183,9 @@ public class Order implements Comparable<Order> {
         int result = (int) (getOrderId() ^ (getOrderId() >>> 32));
         result = 31 * result + (getSide() != null ? getSide().hashCode() : 0);
         result = 31 * result + (getPrice() != null ? getPrice().hashCode() : 0);
+        result = 31 * result + (int) (getPriceTicks() ^ (getPriceTicks() >>> 32));
         result = 31 * result + (int) (getQuantity() ^ (getQuantity() >>> 32));
-        result = 31 * result + (getTimestamp() != null ? getTimestamp().hashCode() : 0);
+        result = 31 * result + (int) (getTimestamp() ^ (getTimestamp() >>> 32));
         return result;
     }
 
@@ -113,7 +194,8 @@ public class Order implements Comparable<Order> {
         return "Order{" +
                 "orderId=" + orderId +
                 ", side=" + side +
-                ", price=" + price +
+                ", price=" + getPrice() +
+                ", priceTicks=" + priceTicks +
                 ", quantity=" + quantity +
                 ", timestamp=" + timestamp +
                 '}';
@@ -1,34 +1,102 @@
 package com.bluediamond.assignment;
 
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
 import java.math.BigDecimal;
-import java.util.*;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 /**
  * This is the main order book process which implements Level2View interfaces, as well as Runnable.
- * It uses a BlockingQueue to handle incoming message requests in a thread safe way.
- * A map of all orders on the book is stored for faster response time on certain functions.
- * Two separate ordered list of Order objects maintain the ASK and BID orders to also enable faster response time.
+ * It uses a BlockingQueue to handle incoming message requests in a thread safe way, or alternatively a preallocated
+ * RingBuffer, consumed in batches without locks, when wake-up latency matters.
+ * An OrderIndex of all orders on the book, keyed by primitive order id, is stored for faster response time on
+ * certain functions.
+ * Two separate BookSide objects maintain the ASK and BID orders as sorted price levels, each holding its orders in
+ * time priority along with running quantity and order count totals, so that neither inserting an order nor querying
+ * a price level has to walk or re-sort the whole side.
+ * Prices are stored as fixed-point ticks of the book's TickSize. The TickLevel2View methods work on ticks directly,
+ * while the Level2View methods convert their BigDecimal prices and delegate to them. Once warmed up, the tick price
+ * path doesn't allocate.
+ * The book itself is single-threaded; snapshots, metrics, listeners, journaling and matching are opt-in, each
+ * described where it is enabled.
  */
-public class OrderBook implements Level2View, Runnable {
+public class OrderBook implements Level2View, TickLevel2View, Runnable {
 
     String id;
-    List<Order> buys;
-    List<Order> sells;
+    TickSize tickSize;
+    BookSide buys;
+    BookSide sells;
     BlockingQueue<OrderMessage> queue;
-    Map<Long, Order> orderMap = new HashMap<>();
+    RingBuffer<OrderMessage> ring;
+    // Heap storage of the resting orders, only used through the storage hooks, and the order they work on
+    OrderIndex orderMap;
+    OrderPool orderPool = new OrderPool(0);
+    private Order currentOrder;
+    private long lastTimestamp;
+    long eventSequence;
+    private BookSnapshot snapshot;
+    EventJournal journal;
+    private BookMetrics metrics;
+    private Level2Listener[] level2Listeners = new Level2Listener[0];
+    boolean matching;
+    FillListener fillListener;
+    EventLog eventLog;
     private static Logger logger = LogManager.getLogger(OrderBook.class);
+    private static final long CHECKSUM_SEED = 0xCBF29CE484222325L;
+    private static final long CHECKSUM_PRIME = 0x100000001B3L;
+    // Messages applied from the queue at most between two snapshot publications, as the queue may never run dry
+    static final int SNAPSHOT_BATCH = 256;
 
     public OrderBook(String id, BlockingQueue<OrderMessage> queue) {
+        this(id, queue, TickSize.DEFAULT);
+    }
+
+    public OrderBook(String id, BlockingQueue<OrderMessage> queue, TickSize tickSize) {
+        this(id, queue, tickSize, new HashOrderIndex());
+    }
+
+    /**
+     * @param orderIndex Index for the book's orders, e.g. a DenseOrderIndex for venues with sequential order ids
+     */
+    public OrderBook(String id, BlockingQueue<OrderMessage> queue, TickSize tickSize, OrderIndex orderIndex) {
+        this(id, queue, null, tickSize, orderIndex);
+    }
+
+    public OrderBook(String id, RingBuffer<OrderMessage> ring) {
+        this(id, ring, TickSize.DEFAULT, new HashOrderIndex());
+    }
+
+    /**
+     * @param ring Preallocated ring of messages, published by a single producer thread
+     */
+    public OrderBook(String id, RingBuffer<OrderMessage> ring, TickSize tickSize, OrderIndex orderIndex) {
+        this(id, null, ring, tickSize, orderIndex);
+    }
+
+    /**
+     * Creates a book without an ingress of its own, driven by calling its Level2View methods or process() from a
+     * single thread, e.g. a BookWorker of an OrderBookManager.
+     */
+    public OrderBook(String id, TickSize tickSize, OrderIndex orderIndex) {
+        this(id, null, null, tickSize, orderIndex);
+    }
+
+    /**
+     * @param orderIndex Index for the book's orders, or null for a subclass overriding every storage hook to keep its
+     *                   orders elsewhere
+     */
+    OrderBook(String id, BlockingQueue<OrderMessage> queue, RingBuffer<OrderMessage> ring, TickSize tickSize,
+              OrderIndex orderIndex) {
         this.id = id;
         this.queue = queue;
-        buys = new LinkedList<>();
-        sells = new LinkedList<>();
+        this.ring = ring;
+        this.tickSize = tickSize;
+        this.orderMap = orderIndex;
+        buys = new BookSide(Side.BID, tickSize);
+        sells = new BookSide(Side.ASK, tickSize);
     }
 
     /**
@@ -38,21 +106,57 @@ public class OrderBook implements Level2View, Runnable {
      */
     public void run() {
         logger.info("Order Book " + id + " started...");
+        if (ring != null) {
+            runRing();
+            return;
+        }
+        long clock = 0L;
+        int unpublished = 0;
         while (true) {
             try {
-                OrderMessage msg = queue.take();
-                Order order = msg.getOrderData();
-                switch (msg.getMsgType()) {
-                    case New -> onNewOrder(order.getSide(), order.getPrice(), order.getQuantity(), order.getOrderId());
-                    case Cancel -> onCancelOrder(order.getOrderId());
-                    case Amend -> onReplaceOrder(order.getPrice(), order.getQuantity(), order.getOrderId());
-                    case Trade -> onTrade(order.getQuantity(), order.getOrderId());
-                    case Close -> {
-                        logger.info("Order Book " + id + " Closing...");
+                OrderMessage msg = queue.poll();
+                if (msg == null) {
+                    publishSnapshot();
+                    unpublished = 0;
+                    msg = queue.take();
+                    clock = 0L;
+                }
+                clock = dispatch(msg, clock);
+                if (msg.getMsgType() == MessageType.Close) {
+                    publishSnapshot();
+                    return;
+                }
+                if (++unpublished == SNAPSHOT_BATCH) {
+                    publishSnapshot();
+                    unpublished = 0;
+                }
+            } catch (InterruptedException e) {
+                logger.error("Order book was interrupted unexpectedly.", e);
+            }
+        }
+    }
+
+    /**
+     * Ring buffer variant of the main loop: waits for published messages through the ring's WaitStrategy, then
+     * applies everything available as one batch before releasing those entries back to the producer.
+     */
+    private void runRing() {
+        long nextSequence = 0L;
+        while (true) {
+            try {
+                long available = ring.waitFor(nextSequence);
+                long clock = 0L;
+                for (; nextSequence <= available; nextSequence++) {
+                    OrderMessage msg = ring.get(nextSequence);
+                    clock = dispatch(msg, clock);
+                    if (msg.getMsgType() == MessageType.Close) {
+                        ring.release(nextSequence);
+                        publishSnapshot();
                         return;
                     }
-                    default -> logger.error("Unexpected value: " + msg.getMsgType());
                 }
+                ring.release(available);
+                publishSnapshot();
             } catch (InterruptedException e) {
                 logger.error("Order book was interrupted unexpectedly.", e);
             }
@@ -60,20 +164,390 @@ public class OrderBook implements Level2View, Runnable {
     }
 
     /**
-     * @param side Enum describing which side the request is for
-     * @return The list of orders corresponding to the side requested
+     * Applies a single message to the book, calling the Level2View method matching its type.
+     * The message isn't retained, so the caller may recycle it once this returns.
+     *
+     * @param msg Message to apply
+     * @return False if the message closes the book, true otherwise
      */
-    private List<Order> getOrderList(Side side) {
-        return side == Side.BID ? buys : sells;
+    public boolean process(OrderMessage msg) {
+        dispatch(msg, 0L);
+        return msg.getMsgType() != MessageType.Close;
     }
 
     /**
-     * Helper function to filter stream based on object propriety
+     * Applies the current message of a decoder straight from its buffer, without building an OrderMessage.
+     *
+     * @param msg Decoder positioned on a message, which may be moved to the next one once this returns
+     * @return False if the message closes the book, true otherwise
      */
-    private static <T> Predicate<T> distinctByKey(
-            Function<? super T, ?> keyExtractor) {
-        Map<Object, Boolean> seen = new ConcurrentHashMap<>();
-        return t -> seen.putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
+    public boolean process(OrderMessageDecoder msg) {
+        dispatch(msg, 0L);
+        return msg.getMsgType() != MessageType.Close;
+    }
+
+    /**
+     * Applies a message, recording its latencies if metrics are enabled. Within a batch, the time a message finished
+     * being applied is when the next one started, so callers chain the returned clock from one message to the next
+     * and the book reads the clock once per message.
+     *
+     * @param msg   Message to apply
+     * @param clock System.nanoTime() the message started being applied, or 0 if it must be read
+     * @return System.nanoTime() the message finished being applied, or 0 if metrics aren't enabled
+     */
+    long dispatch(OrderMessage msg, long clock) {
+        if (metrics == null) {
+            apply(msg);
+            return 0L;
+        }
+        long start = clock != 0L ? clock : System.nanoTime();
+        apply(msg);
+        long end = System.nanoTime();
+        metrics.record(msg, start, end);
+        return end;
+    }
+
+    /**
+     * Decoder variant of dispatch(OrderMessage, long), applying the message straight from the decoder's buffer.
+     * Wire messages carry no producer stamp, so only their processing latency is recorded.
+     */
+    long dispatch(OrderMessageDecoder msg, long clock) {
+        if (metrics == null) {
+            apply(msg);
+            return 0L;
+        }
+        long start = clock != 0L ? clock : System.nanoTime();
+        apply(msg);
+        long end = System.nanoTime();
+        metrics.record(msg.getMsgType(), 0L, start, end);
+        return end;
+    }
+
+    private void apply(OrderMessage msg) {
+        Order order = msg.getOrderData();
+        switch (msg.getMsgType()) {
+            case New -> onNewOrder(order.getSide(), priceTicksOf(order), order.getQuantity(), order.getOrderId());
+            case Cancel -> onCancelOrder(order.getOrderId());
+            case Amend -> onReplaceOrder(priceTicksOf(order), order.getQuantity(), order.getOrderId());
+            case Trade -> onTrade(order.getQuantity(), order.getOrderId());
+            case Close -> logger.info("Order Book " + id + " Closing...");
+            default -> logger.error("Unexpected value: " + msg.getMsgType());
+        }
+    }
+
+    private void apply(OrderMessageDecoder msg) {
+        switch (msg.getMsgType()) {
+            case New -> onNewOrder(msg.getSide(), msg.getPriceTicks(), msg.getQuantity(), msg.getOrderId());
+            case Cancel -> onCancelOrder(msg.getOrderId());
+            case Amend -> onReplaceOrder(msg.getPriceTicks(), msg.getQuantity(), msg.getOrderId());
+            case Trade -> onTrade(msg.getQuantity(), msg.getOrderId());
+            case Close -> logger.info("Order Book " + id + " Closing...");
+            default -> logger.error("Unexpected value: " + msg.getMsgType());
+        }
+    }
+
+    /**
+     * Creates the book's BookSnapshot, if it doesn't have one yet. Must be called before the book thread starts, or
+     * from the book thread.
+     * Other threads query the book through its snapshot without locks. The book thread refreshes it whenever it runs
+     * out of messages to apply, and at least every SNAPSHOT_BATCH messages under sustained load.
+     *
+     * @return The snapshot, safe to query from any thread
+     */
+    public BookSnapshot enableSnapshot() {
+        if (snapshot == null) {
+            snapshot = new BookSnapshot(tickSize, 64);
+            buys.trackChanges();
+            sells.trackChanges();
+            publishSnapshot();
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return The book's snapshot, or null if it wasn't enabled
+     */
+    public BookSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Copies the price levels changed since the previous publication into the snapshot, if there is one.
+     * Called from the book thread, once it has applied the messages available; only then do readers see them.
+     */
+    public void publishSnapshot() {
+        if (snapshot == null || snapshot.publishedVersion() == eventSequence) {
+            return;
+        }
+        snapshot.beginWrite();
+        buys.publishTo(snapshot.bids);
+        sells.publishTo(snapshot.asks);
+        snapshot.endWrite(eventSequence);
+    }
+
+    /**
+     * Creates the book's BookMetrics, if it doesn't have one yet. Must be called before the book thread starts, or
+     * from the book thread.
+     * The book then records, per message type, how long messages waited in its ingress and how long they took to apply.
+     *
+     * @return The metrics, safe to read from any thread
+     */
+    public BookMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new BookMetrics(id);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return The book's metrics, or null if they weren't enabled
+     */
+    public BookMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Subscribes a listener to the price level updates of the book, starting with a full image of the book. Must be
+     * called before the book thread starts, or from the book thread.
+     *
+     * @param listener Listener called from the book thread
+     */
+    public void addLevel2Listener(Level2Listener listener) {
+        level2Listeners = Arrays.copyOf(level2Listeners, level2Listeners.length + 1);
+        level2Listeners[level2Listeners.length - 1] = listener;
+        publishImage(listener);
+    }
+
+    /**
+     * Must be called before the book thread starts, or from the book thread.
+     *
+     * @return False if the listener wasn't subscribed
+     */
+    public boolean removeLevel2Listener(Level2Listener listener) {
+        for (int i = 0; i < level2Listeners.length; i++) {
+            if (level2Listeners[i] == listener) {
+                Level2Listener[] remaining = new Level2Listener[level2Listeners.length - 1];
+                System.arraycopy(level2Listeners, 0, remaining, 0, i);
+                System.arraycopy(level2Listeners, i + 1, remaining, i, remaining.length - i);
+                level2Listeners = remaining;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a full image of the book to a listener: every price level, from the best price down on each side.
+     * Must be called from the book thread.
+     */
+    public void publishImage(Level2Listener listener) {
+        listener.onImageBegin(eventSequence);
+        publishImage(buys, listener);
+        publishImage(sells, listener);
+        listener.onImageEnd(eventSequence);
+    }
+
+    private void publishImage(BookSide bookSide, Level2Listener listener) {
+        for (int i = bookSide.getDepth() - 1; i >= 0; i--) {
+            PriceLevel level = bookSide.getLevelAt(i);
+            listener.onLevelUpdate(bookSide.getSide(), level.getPriceTicks(), level.getQuantity(),
+                    level.getOrderCount(), eventSequence);
+        }
+    }
+
+    /**
+     * Sends the new state of a price level changed by the current event to the listeners, if there are any.
+     */
+    void levelChanged(Side side, long priceTicks) {
+        if (level2Listeners.length == 0) {
+            return;
+        }
+        PriceLevel level = getBookSide(side).getLevel(priceTicks);
+        long quantity = level != null ? level.getQuantity() : 0L;
+        long orderCount = level != null ? level.getOrderCount() : 0L;
+        for (Level2Listener listener : level2Listeners) {
+            listener.onLevelUpdate(side, priceTicks, quantity, orderCount, eventSequence);
+        }
+    }
+
+    /**
+     * Fingerprint of the resting orders, to check that two books hold the same orders in the same price-time priority,
+     * e.g. a BookReplica and its primary at the same event sequence. Every order's id, side, price and quantity is
+     * hashed in priority order; timestamps, which differ between books, are left out. Must be called from the book
+     * thread.
+     *
+     * @return The checksum of the book
+     */
+    public long checksum() {
+        return checksum(sells, checksum(buys, CHECKSUM_SEED));
+    }
+
+    /**
+     * @return The hash extended with the orders of a side, best price level first and each level in time priority
+     */
+    private long checksum(BookSide bookSide, long hash) {
+        for (int i = bookSide.getDepth() - 1; i >= 0; i--) {
+            headOrder(bookSide.getLevelAt(i));
+            do {
+                hash = checksum(hash, currentOrderId(), bookSide.getSide(), currentPriceTicks(), currentQuantity());
+            } while (nextOrder());
+        }
+        return hash;
+    }
+
+    static long checksum(long hash, long orderId, Side side, long priceTicks, long quantity) {
+        hash = (hash ^ orderId) * CHECKSUM_PRIME;
+        hash = (hash ^ side.ordinal()) * CHECKSUM_PRIME;
+        hash = (hash ^ priceTicks) * CHECKSUM_PRIME;
+        return (hash ^ quantity) * CHECKSUM_PRIME;
+    }
+
+    /**
+     * In matching mode, the book matches incoming orders itself: a new order crossing the spread sweeps the opposite
+     * side in price-time priority, each fill being applied and journaled as a Trade on the resting order and reported
+     * to the FillListener, and any remainder rests on the book as a New order.
+     *
+     * @param matching True for the book to match crossing orders itself, false for trades to be reported by onTrade
+     * @return This book
+     */
+    public OrderBook setMatching(boolean matching) {
+        this.matching = matching;
+        return this;
+    }
+
+    public boolean isMatching() {
+        return matching;
+    }
+
+    /**
+     * @param fillListener Listener told of every fill in matching mode, called from the book thread; null for none
+     * @return This book
+     */
+    public OrderBook setFillListener(FillListener fillListener) {
+        this.fillListener = fillListener;
+        return this;
+    }
+
+    /**
+     * Given an EventLog, the book records its events and rejections as binary records for a background thread to log,
+     * instead of formatting text log lines on the book thread.
+     *
+     * @param eventLog Log to record events and rejections to from the book thread, instead of the text logs; null to
+     *                 go back to the text logs
+     * @return This book
+     */
+    public OrderBook setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+        return this;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Records a rejected message in the event log, if the book has one.
+     *
+     * @return True if the rejection must be logged as text instead
+     */
+    boolean textLogged(EventLog.Reason reason, long orderId, long priceTicks, long quantity) {
+        if (eventLog == null) {
+            return true;
+        }
+        eventLog.warn(reason, orderId, priceTicks, quantity);
+        return false;
+    }
+
+    /**
+     * Given an EventJournal, the book appends every event it accepts to it, rejected messages being left out. A
+     * BookReplica tails the journal to keep a follower book in step, checksum() proving that both hold the same orders.
+     * Journal sequences and event sequences are one and the same, which the checkpoints, the replicas and their
+     * verifications rely on: the journal must carry on right after the book's last event, a new journal being attached
+     * before the first event and a reopened one to the book restored from it.
+     *
+     * @param journal Journal to append the accepted events to, written from the book thread; null to stop journaling
+     * @return This book
+     * @throws IllegalArgumentException If the journal's next sequence doesn't follow the book's event sequence
+     */
+    public OrderBook setJournal(EventJournal journal) {
+        if (journal != null && journal.getNextSequence() != eventSequence + 1L) {
+            throw new IllegalArgumentException("Journal continues at sequence " + journal.getNextSequence()
+                    + ", book " + id + " is at event sequence " + eventSequence);
+        }
+        this.journal = journal;
+        return this;
+    }
+
+    public EventJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return The number of events applied to the book so far
+     */
+    public long getEventSequence() {
+        return eventSequence;
+    }
+
+    /**
+     * @param eventSequence Number of events applied to a book restored from a checkpoint
+     */
+    void setEventSequence(long eventSequence) {
+        this.eventSequence = eventSequence;
+    }
+
+    /**
+     * Adds a resting order restored from a checkpoint, without validation, logging or journaling. Orders must be
+     * restored in time priority, as each joins the back of its price level.
+     */
+    void restoreOrder(Side side, long priceTicks, long quantity, long orderId) {
+        insertOrder(side, priceTicks, quantity, orderId);
+    }
+
+    /**
+     * @return A nanosecond timestamp, strictly greater than any previously returned by this book
+     */
+    long nextTimestamp() {
+        long now = System.nanoTime();
+        lastTimestamp = now > lastTimestamp ? now : lastTimestamp + 1L;
+        return lastTimestamp;
+    }
+
+    /**
+     * @param order Order data of an incoming message
+     * @return The tick price of the message, converted from its decimal price if it was sent with one
+     */
+    private long priceTicksOf(Order order) {
+        return order.getPrice() != null ? toTicks(order.getPrice()) : order.getPriceTicks();
+    }
+
+    /**
+     * @param price Decimal price to convert
+     * @return The price in ticks, or 0 (an invalid price) if it isn't on the book's tick grid
+     */
+    private long toTicks(BigDecimal price) {
+        try {
+            return tickSize.toTicks(price);
+        } catch (ArithmeticException e) {
+            logger.warn("Price not on tick grid (" + tickSize.getTickSize() + "): " + price);
+            return 0L;
+        }
+    }
+
+    /**
+     * @param side Enum describing which side the request is for
+     * @return The book side corresponding to the side requested
+     */
+    BookSide getBookSide(Side side) {
+        return side == Side.BID ? buys : sells;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public TickSize getTickSize() {
+        return tickSize;
     }
 
     /**
@@ -85,27 +559,57 @@ public class OrderBook implements Level2View, Runnable {
      * @param orderId  Unique identifier for the order
      */
     public void onNewOrder(Side side, BigDecimal price, long quantity, long orderId) {
-        if (price.compareTo(BigDecimal.ZERO) <= 0) {
-            logger.warn("Invalid price on new order: " + price);
-            logger.debug("Order Id: " + orderId + "; Price: " + price + "; Quantity: " + quantity);
+        onNewOrder(side, toTicks(price), quantity, orderId);
+    }
+
+    /**
+     * Will check the order request is valid. If successful, it will be added to the order book.
+     *
+     * @param side       Enum describing which side the new order is
+     * @param priceTicks Price of the order, in ticks
+     * @param quantity   Quantity of the order
+     * @param orderId    Unique identifier for the order
+     */
+    public void onNewOrder(Side side, long priceTicks, long quantity, long orderId) {
+        if (priceTicks <= 0L) {
+            if (textLogged(EventLog.Reason.INVALID_PRICE, orderId, priceTicks, quantity)) {
+                logger.warn("Invalid price on new order: " + priceTicks + " ticks");
+                logger.debug("Order Id: " + orderId + "; Price: " + priceTicks + " ticks; Quantity: " + quantity);
+            }
             return;
         }
         if (quantity <= 0L) {
-            logger.warn("Invalid quantity on new order: " + quantity);
-            logger.debug("Order Id: " + orderId + "; Price: " + price + "; Quantity: " + quantity);
+            if (textLogged(EventLog.Reason.INVALID_QUANTITY, orderId, priceTicks, quantity)) {
+                logger.warn("Invalid quantity on new order: " + quantity);
+                logger.debug("Order Id: " + orderId + "; Price: " + priceTicks + " ticks; Quantity: " + quantity);
+            }
             return;
         }
-        if (orderMap.containsKey(orderId)) {
-            logger.warn("Order already exists: " + orderId);
-            logger.debug("Order Id: " + orderId + "; Price: " + price + "; Quantity: " + quantity);
+        long restingQuantity = quantity;
+        // An order reusing a resting order's id is left for insertOrder() to reject, without matching it first
+        if (matching && !findOrder(orderId)) {
+            restingQuantity = match(side, priceTicks, quantity, orderId);
+            if (restingQuantity == 0L) {
+                return;
+            }
+        }
+        if (!insertOrder(side, priceTicks, restingQuantity, orderId)) {
+            if (textLogged(EventLog.Reason.DUPLICATE_ORDER, orderId, priceTicks, quantity)) {
+                logger.warn("Order already exists: " + orderId);
+                logger.debug("Order Id: " + orderId + "; Price: " + priceTicks + " ticks; Quantity: " + quantity);
+            }
             return;
         }
-        Order newOrder = new Order(orderId, side, price, quantity);
-        orderMap.put(newOrder.getOrderId(), newOrder);
-        List<Order> orderList = getOrderList(side);
-        orderList.add(newOrder);
-        Collections.sort(orderList);
-        logger.info("New order created: " + newOrder);
+        eventSequence++;
+        if (journal != null) {
+            journal.append(MessageType.New, side, priceTicks, restingQuantity, orderId);
+        }
+        levelChanged(side, priceTicks);
+        if (eventLog != null) {
+            eventLog.event(MessageType.New, side, priceTicks, restingQuantity, orderId, eventSequence);
+        } else if (logger.isInfoEnabled()) {
+            logger.info("New order created: {}", describeOrder());
+        }
     }
 
     /**
@@ -114,12 +618,22 @@ public class OrderBook implements Level2View, Runnable {
      * @param orderId Unique identifier for the order to cancel
      */
     public void onCancelOrder(long orderId) {
-        if (orderMap.containsKey(orderId)) {
-            Order cancelledOrder = orderMap.remove(orderId);
-            List<Order> orderList = getOrderList(cancelledOrder.getSide());
-            orderList.remove(cancelledOrder);
-            logger.info("Order cancelled: " + cancelledOrder);
-        } else {
+        if (removeOrder(orderId)) {
+            Side side = currentSide();
+            long priceTicks = currentPriceTicks();
+            long quantity = currentQuantity();
+            eventSequence++;
+            if (journal != null) {
+                journal.append(MessageType.Cancel, side, priceTicks, quantity, orderId);
+            }
+            levelChanged(side, priceTicks);
+            if (eventLog != null) {
+                eventLog.event(MessageType.Cancel, side, priceTicks, quantity, orderId, eventSequence);
+            } else if (logger.isInfoEnabled()) {
+                logger.info("Order cancelled: {}", describeOrder());
+            }
+            releaseOrder();
+        } else if (textLogged(EventLog.Reason.ORDER_NOT_FOUND, orderId, 0L, 0L)) {
             logger.warn("Order not found: " + orderId);
         }
     }
@@ -132,22 +646,59 @@ public class OrderBook implements Level2View, Runnable {
      * @param orderId  Unique identifier of the amended order
      */
     public void onReplaceOrder(BigDecimal price, long quantity, long orderId) {
-        if (price.compareTo(BigDecimal.ZERO) > 0 && quantity > 0L) {
-            if (orderMap.containsKey(orderId)) {
-                Order amendedOrder = orderMap.get(orderId).setPrice(price).setQuantity(quantity);
-                List<Order> orderList = getOrderList(amendedOrder.getSide());
-                for (Order order : orderList) {
-                    if (order.getOrderId() == orderId) {
-                        order.setPrice(price).setQuantity(quantity);
-                    }
+        onReplaceOrder(toTicks(price), quantity, orderId);
+    }
+
+    /**
+     * Will check the price and/or quantity are amended correctly, and amend the order on the order book if successful.
+     * An amendment down in quantity at the same price keeps the order's place in the queue. An amendment to a new
+     * price moves the order to the back of the new price level, found by binary search, and an amendment up in
+     * quantity sends it to the back of its level: either way the order loses its time priority. The totals of the
+     * levels involved are adjusted by the quantities moved, without walking their orders.
+     *
+     * @param priceTicks Price of the amended order, in ticks
+     * @param quantity   Quantity of the amended order
+     * @param orderId    Unique identifier of the amended order
+     */
+    public void onReplaceOrder(long priceTicks, long quantity, long orderId) {
+        if (priceTicks > 0L && quantity > 0L) {
+            if (findOrder(orderId)) {
+                Side side = currentSide();
+                long previousPriceTicks = currentPriceTicks();
+                if (matching && previousPriceTicks != priceTicks && crosses(side, priceTicks)) {
+                    // The order becomes aggressive at its new price: it is pulled, then matched like a new order
+                    onCancelOrder(orderId);
+                    onNewOrder(side, priceTicks, quantity, orderId);
+                    return;
+                }
+                if (previousPriceTicks == priceTicks && quantity <= currentQuantity()) {
+                    adjustOrder(quantity);
+                } else if (previousPriceTicks == priceTicks) {
+                    requeueOrder(quantity);
+                } else {
+                    moveOrder(priceTicks, quantity);
                 }
-                logger.info("Order amended: " + amendedOrder);
-            } else {
+                eventSequence++;
+                if (journal != null) {
+                    journal.append(MessageType.Amend, side, priceTicks, quantity, orderId);
+                }
+                if (previousPriceTicks != priceTicks) {
+                    levelChanged(side, previousPriceTicks);
+                }
+                levelChanged(side, priceTicks);
+                if (eventLog != null) {
+                    eventLog.event(MessageType.Amend, side, priceTicks, quantity, orderId, eventSequence);
+                } else if (logger.isInfoEnabled()) {
+                    logger.info("Order amended: {}", describeOrder());
+                }
+            } else if (textLogged(EventLog.Reason.ORDER_NOT_FOUND, orderId, priceTicks, quantity)) {
                 logger.warn("Order not found: " + orderId);
             }
         } else {
-            logger.warn("Invalid price and/or quantity amendment: price(" + price + ") quantity(" + quantity + ")");
-            logger.debug("Order Id: " + orderId + "; Price: " + price + "; Quantity: " + quantity);
+            if (textLogged(EventLog.Reason.INVALID_AMENDMENT, orderId, priceTicks, quantity)) {
+                logger.warn("Invalid price and/or quantity amendment: price(" + priceTicks + " ticks) quantity(" + quantity + ")");
+                logger.debug("Order Id: " + orderId + "; Price: " + priceTicks + " ticks; Quantity: " + quantity);
+            }
         }
     }
 
@@ -159,29 +710,220 @@ public class OrderBook implements Level2View, Runnable {
      * @param restingOrderId Order being traded on
      */
     public void onTrade(long quantity, long restingOrderId) {
-        if (orderMap.containsKey(restingOrderId)) {
-            Order tradedOrder = orderMap.get(restingOrderId);
-            if (tradedOrder.getQuantity() < quantity) {
-                logger.warn("Not enough volume left in order " + restingOrderId + "to trade " + quantity);
-                logger.debug("Traded order -> " + tradedOrder);
+        if (findOrder(restingOrderId)) {
+            if (currentQuantity() < quantity) {
+                if (textLogged(EventLog.Reason.NOT_ENOUGH_VOLUME, restingOrderId, 0L, quantity)) {
+                    logger.warn("Not enough volume left in order " + restingOrderId + "to trade " + quantity);
+                    logger.debug("Traded order -> " + describeOrder());
+                }
                 return;
             }
-            List<Order> orderList = getOrderList(tradedOrder.getSide());
-            logger.info(quantity + " traded on order: " + tradedOrder);
-            tradedOrder.fillOrder(quantity);
-            if (tradedOrder.getQuantity() == 0L) {
-                orderList.remove(tradedOrder);
-                orderMap.remove(restingOrderId);
+            trade(quantity);
+        } else if (textLogged(EventLog.Reason.ORDER_NOT_FOUND, restingOrderId, 0L, quantity)) {
+            logger.warn("Order not found: " + restingOrderId);
+        }
+    }
+
+    /**
+     * Trades on the current order, removing it once filled.
+     *
+     * @param quantity Quantity traded, at most the quantity of the current order
+     */
+    private void trade(long quantity) {
+        if (eventLog == null && logger.isInfoEnabled()) {
+            logger.info("{} traded on order: {}", quantity, describeOrder());
+        }
+        long restingOrderId = currentOrderId();
+        Side side = currentSide();
+        long priceTicks = currentPriceTicks();
+        if (journal != null) {
+            journal.append(MessageType.Trade, side, priceTicks, quantity, restingOrderId);
+        }
+        long remaining = currentQuantity() - quantity;
+        adjustOrder(remaining);
+        if (remaining == 0L) {
+            removeOrder(restingOrderId);
+            if (eventLog == null) {
                 logger.info("Order was fully filled, removing from depth");
             }
-        } else {
-            logger.warn("Order not found: " + restingOrderId);
+            releaseOrder();
+        }
+        eventSequence++;
+        levelChanged(side, priceTicks);
+        if (eventLog != null) {
+            eventLog.event(MessageType.Trade, side, priceTicks, quantity, restingOrderId, eventSequence);
+        }
+    }
+
+    /**
+     * Matches an incoming order against the opposite side, best price first and oldest order first within a price,
+     * for as long as the order crosses the spread. Every fill is applied as a trade on the resting order, at the
+     * resting order's price.
+     *
+     * @return The quantity left to rest on the book
+     */
+    private long match(Side side, long priceTicks, long quantity, long orderId) {
+        BookSide opposite = side == Side.BID ? sells : buys;
+        long remaining = quantity;
+        while (remaining > 0L) {
+            PriceLevel bestLevel = opposite.getBestLevel();
+            if (bestLevel == null || !crosses(side, priceTicks, bestLevel.getPriceTicks())) {
+                break;
+            }
+            headOrder(bestLevel);
+            long fillQuantity = Math.min(remaining, currentQuantity());
+            long restingOrderId = currentOrderId();
+            long fillPriceTicks = bestLevel.getPriceTicks();
+            trade(fillQuantity);
+            remaining -= fillQuantity;
+            if (fillListener != null) {
+                fillListener.onFill(orderId, restingOrderId, side, fillPriceTicks, fillQuantity, eventSequence);
+            }
+        }
+        return remaining;
+    }
+
+    // Storage hooks. The flow of the book above works on one resting order at a time, the current order, selected by
+    // findOrder(), insertOrder(), removeOrder(), headOrder() or nextOrder(); the other hooks apply to it. They keep the
+    // orders as pooled Order objects in the OrderIndex; a subclass storing its orders differently overrides every one
+    // of them, as OffHeapOrderBook does.
+
+    /**
+     * @return The number of orders resting on the book
+     */
+    public int getOrderCount() {
+        return orderMap.size();
+    }
+
+    /**
+     * Makes a resting order the current order.
+     *
+     * @return False if no order rests under that id
+     */
+    protected boolean findOrder(long orderId) {
+        currentOrder = orderMap.get(orderId);
+        return currentOrder != null;
+    }
+
+    /**
+     * Adds an order at the back of its price level with a new timestamp, and makes it the current order.
+     *
+     * @return False if an order already rests under that id, the book being left unchanged
+     */
+    protected boolean insertOrder(Side side, long priceTicks, long quantity, long orderId) {
+        Order order = orderPool.acquire().set(orderId, side, priceTicks, quantity);
+        if (orderMap.putIfAbsent(orderId, order) != null) {
+            orderPool.release(order);
+            return false;
         }
+        order.setTimestamp(nextTimestamp());
+        getBookSide(side).add(order);
+        currentOrder = order;
+        return true;
+    }
+
+    /**
+     * Takes a resting order off its price level and out of the index, and makes it the current order: its fields stay
+     * readable until releaseOrder().
+     *
+     * @return False if no order rests under that id
+     */
+    protected boolean removeOrder(long orderId) {
+        currentOrder = orderMap.remove(orderId);
+        if (currentOrder == null) {
+            return false;
+        }
+        getBookSide(currentOrder.getSide()).remove(currentOrder);
+        return true;
+    }
+
+    /**
+     * Frees the current order, once removed, for reuse.
+     */
+    protected void releaseOrder() {
+        orderPool.release(currentOrder);
+    }
+
+    /**
+     * Changes the quantity of the current order and the total of its price level, the order keeping its place.
+     */
+    protected void adjustOrder(long quantity) {
+        getBookSide(currentOrder.getSide()).adjustQuantity(currentOrder, quantity - currentOrder.getQuantity());
+        currentOrder.setQuantity(quantity);
+    }
+
+    /**
+     * Sends the current order to the back of its price level with a new quantity and timestamp.
+     */
+    protected void requeueOrder(long quantity) {
+        currentOrder.setTimestamp(nextTimestamp());
+        getBookSide(currentOrder.getSide()).requeue(currentOrder, quantity);
+    }
+
+    /**
+     * Moves the current order to the back of another price level with a new quantity and timestamp.
+     */
+    protected void moveOrder(long priceTicks, long quantity) {
+        BookSide bookSide = getBookSide(currentOrder.getSide());
+        bookSide.remove(currentOrder);
+        currentOrder.setPriceTicks(priceTicks).setQuantity(quantity).setTimestamp(nextTimestamp());
+        bookSide.add(currentOrder);
+    }
+
+    /**
+     * Makes the oldest order of a price level of the book the current order.
+     */
+    protected void headOrder(PriceLevel level) {
+        currentOrder = level.getHead();
+    }
+
+    /**
+     * Makes the order queued behind the current one on its price level the current order.
+     *
+     * @return False if the current order was the last of its level, no order being current anymore
+     */
+    protected boolean nextOrder() {
+        currentOrder = currentOrder.getNext();
+        return currentOrder != null;
+    }
+
+    protected long currentOrderId() {
+        return currentOrder.getOrderId();
+    }
+
+    protected Side currentSide() {
+        return currentOrder.getSide();
+    }
+
+    protected long currentPriceTicks() {
+        return currentOrder.getPriceTicks();
+    }
+
+    protected long currentQuantity() {
+        return currentOrder.getQuantity();
     }
 
     /**
-     * Will check the price level is correct and that the side of the order book requested isn't empty,
-     * then returns the number of orders requested.
+     * @return A description of the current order for the logs, in the format of Order.toString()
+     */
+    protected String describeOrder() {
+        return currentOrder.toString();
+    }
+
+    /**
+     * @return True if an order of the side at that price would cross the best price of the opposite side
+     */
+    boolean crosses(Side side, long priceTicks) {
+        PriceLevel bestLevel = (side == Side.BID ? sells : buys).getBestLevel();
+        return bestLevel != null && crosses(side, priceTicks, bestLevel.getPriceTicks());
+    }
+
+    static boolean crosses(Side side, long priceTicks, long oppositePriceTicks) {
+        return side == Side.BID ? priceTicks >= oppositePriceTicks : priceTicks <= oppositePriceTicks;
+    }
+
+    /**
+     * Will check the price level is correct, then returns the number of orders resting on the requested price level.
      *
      * @param side  Side of the price level requested
      * @param price Price level of the request
@@ -192,11 +934,24 @@ public class OrderBook implements Level2View, Runnable {
             logger.warn("Invalid price level value on " + side + ": " + price);
             return 0L;
         }
-        List<Order> orderList = getOrderList(side);
-        if (!orderList.isEmpty()) {
-            return orderList.stream().filter(x -> Objects.equals(x.getPrice(), price)).count();
+        return getSizeForPriceLevel(side, toTicks(price));
+    }
+
+    /**
+     * Returns the number of orders resting on the requested price level.
+     *
+     * @param side       Side of the price level requested
+     * @param priceTicks Price level of the request, in ticks
+     * @return The number of orders at requested side and price level
+     */
+    public long getSizeForPriceLevel(Side side, long priceTicks) {
+        PriceLevel level = getBookSide(side).getLevel(priceTicks);
+        if (level != null) {
+            return level.getOrderCount();
         } else {
-            logger.debug("No " + side + " order(s) found at price level: " + price);
+            if (logger.isDebugEnabled()) {
+                logger.debug("No {} order(s) found at price level: {} ticks", side, priceTicks);
+            }
             return 0L;
         }
     }
@@ -206,10 +961,7 @@ public class OrderBook implements Level2View, Runnable {
      * @return The number of price levels on the requested side of the order book
      */
     public long getBookDepth(Side side) {
-        List<Order> orderList = getOrderList(side);
-        return orderList.stream()
-                .filter(distinctByKey(Order::getPrice))
-                .count();
+        return getBookSide(side).getDepth();
     }
 
     /**
@@ -219,12 +971,45 @@ public class OrderBook implements Level2View, Runnable {
      * @return The price level of the side of the order book requested.
      */
     public BigDecimal getTopOfBook(Side side) {
-        List<Order> orderList = getOrderList(side);
-        if (!orderList.isEmpty()) {
-            return orderList.get(0).getPrice();
+        PriceLevel bestLevel = getBookSide(side).getBestLevel();
+        if (bestLevel != null) {
+            return bestLevel.getPrice();
         } else {
-            logger.debug("No orders on book for : " + side);
+            logger.debug("No orders on book for : {}", side);
             return BigDecimal.ZERO;
         }
     }
+
+    /**
+     * @param side Side of the book to request the top price level of
+     * @return The price level of the side of the order book requested in ticks, or 0 if that side is empty
+     */
+    public long getTopOfBookTicks(Side side) {
+        PriceLevel bestLevel = getBookSide(side).getBestLevel();
+        return bestLevel != null ? bestLevel.getPriceTicks() : 0L;
+    }
+
+    /**
+     * Fills the best price levels of a side into the caller's arrays in a single pass, without allocating.
+     *
+     * @param side        Side of the book requested
+     * @param pricesTicks Receives the level prices in ticks, best first; its length is the number of levels requested
+     * @param quantities  Receives the total quantity of each level
+     * @return The number of levels filled, the entries past it being zeroed
+     */
+    public int getDepth(Side side, long[] pricesTicks, long[] quantities) {
+        return getBookSide(side).copyDepth(pricesTicks, quantities);
+    }
+
+    /**
+     * Fills the best price levels of both sides into the caller's arrays, as getDepth(Side, long[], long[]) does,
+     * both sides being taken between the same two events.
+     *
+     * @return The event sequence of the book the ladder was taken at
+     */
+    public long getDepth(long[] bidPricesTicks, long[] bidQuantities, long[] askPricesTicks, long[] askQuantities) {
+        buys.copyDepth(bidPricesTicks, bidQuantities);
+        sells.copyDepth(askPricesTicks, askQuantities);
+        return eventSequence;
+    }
 }
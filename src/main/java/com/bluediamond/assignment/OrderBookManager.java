@@ -0,0 +1,340 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multiplexes many OrderBooks onto a small, fixed pool of single-threaded BookWorkers, instead of running one thread
+ * per book. Each instrument is assigned to a worker by hashing its symbol, and messages submitted for a symbol are
+ * routed to that worker's inbox. Every book is applied by exactly one worker at a time, so it stays single-writer.
+ * The manager tracks the load of every worker and book, and rebalance() moves hot books off overloaded workers.
+ * The routing methods (addBook, submit, rebalance, moveBook, close) must all be called from one feed thread: it is
+ * the single producer of every worker's inbox.
+ */
+public class OrderBookManager {
+    private static final Logger logger = LogManager.getLogger(OrderBookManager.class);
+    private static final int DEFAULT_INBOX_CAPACITY = 1 << 14;
+
+    /**
+     * Routing entry of a book, linking it to the worker it is currently assigned to.
+     */
+    static final class BookHandle {
+        final OrderBook book;
+        // Messages applied to the book, written by its current worker
+        final AtomicLong messages = new AtomicLong();
+        // Producer thread state
+        BookWorker worker;
+        long lastSampledMessages;
+
+        BookHandle(OrderBook book, BookWorker worker) {
+            this.book = book;
+            this.worker = worker;
+        }
+    }
+
+    private final BookWorker[] workers;
+    private final Thread[] threads;
+    private final Map<String, BookHandle> books = new HashMap<>();
+
+    /**
+     * @param workerCount Number of worker threads
+     */
+    public OrderBookManager(int workerCount) {
+        this(workerCount, DEFAULT_INBOX_CAPACITY, new WaitStrategy.Parking(50_000L), Thread::new);
+    }
+
+    /**
+     * @param workerCount   Number of worker threads
+     * @param inboxCapacity Capacity of each worker's inbox, a power of two
+     * @param waitStrategy  How idle workers wait for messages
+     * @param threadFactory Creates the worker threads, e.g. threads pinned to isolated cores by an affinity library
+     */
+    public OrderBookManager(int workerCount, int inboxCapacity, WaitStrategy waitStrategy, ThreadFactory threadFactory) {
+        workers = new BookWorker[workerCount];
+        threads = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new BookWorker(i, inboxCapacity, waitStrategy);
+            threads[i] = threadFactory.newThread(workers[i]);
+            threads[i].setName("book-worker-" + i);
+        }
+    }
+
+    public void start() {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates the book of an instrument, on the worker its symbol hashes to.
+     *
+     * @param symbol   Instrument identifier
+     * @param tickSize Price grid of the instrument
+     * @return The new book, only to be queried from its worker or through thread-safe views
+     */
+    public OrderBook addBook(String symbol, TickSize tickSize) {
+        if (books.containsKey(symbol)) {
+            throw new IllegalArgumentException("Book already exists: " + symbol);
+        }
+        OrderBook book = new OrderBook(symbol, tickSize, new HashOrderIndex());
+        BookWorker worker = workers[workerIndexOf(symbol)];
+        books.put(symbol, new BookHandle(book, worker));
+        worker.bookCount++;
+        return book;
+    }
+
+    /**
+     * Spreads symbols over the workers, mixing the hash so that similar symbols don't cluster.
+     */
+    private int workerIndexOf(String symbol) {
+        int hash = symbol.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), workers.length);
+    }
+
+    /**
+     * Routes an event to the worker of the symbol's book.
+     *
+     * @return False if there is no book for the symbol
+     */
+    public boolean submit(String symbol, MessageType msgType, Side side, long priceTicks, long quantity, long orderId) {
+        BookHandle handle = books.get(symbol);
+        if (handle == null) {
+            logger.warn("No book for symbol: " + symbol);
+            return false;
+        }
+        BookWorker worker = handle.worker;
+        long sequence = worker.claim();
+        BookWorker.Envelope envelope = worker.entry(sequence);
+        envelope.command = BookWorker.Command.DISPATCH;
+        envelope.handle = handle;
+        envelope.message.set(msgType, side, priceTicks, quantity, orderId);
+        stampIfMeasured(handle, envelope.message);
+        worker.publish(sequence);
+        return true;
+    }
+
+    /**
+     * Routes a copy of the message to the worker of the symbol's book; the message may be reused straight away.
+     *
+     * @return False if there is no book for the symbol
+     */
+    public boolean submit(String symbol, OrderMessage msg) {
+        BookHandle handle = books.get(symbol);
+        if (handle == null) {
+            logger.warn("No book for symbol: " + symbol);
+            return false;
+        }
+        BookWorker worker = handle.worker;
+        long sequence = worker.claim();
+        BookWorker.Envelope envelope = worker.entry(sequence);
+        envelope.command = BookWorker.Command.DISPATCH;
+        envelope.handle = handle;
+        envelope.message.set(msg);
+        stampIfMeasured(handle, envelope.message);
+        worker.publish(sequence);
+        return true;
+    }
+
+    /**
+     * Stamps a routed message with the time it was submitted, unless its producer already did, if its book measures
+     * queue wait.
+     */
+    private static void stampIfMeasured(BookHandle handle, OrderMessage message) {
+        if (handle.book.getMetrics() != null && message.getEnqueueNanos() == 0L) {
+            message.stamp();
+        }
+    }
+
+    /**
+     * Moves a book to another worker. Messages already routed to the old worker are applied first; the new worker
+     * applies later messages once the old worker has released the book.
+     *
+     * @param symbol      Instrument identifier
+     * @param workerIndex Index of the worker to move the book to
+     */
+    public void moveBook(String symbol, int workerIndex) {
+        BookHandle handle = books.get(symbol);
+        BookWorker target = workers[workerIndex];
+        if (handle == null || handle.worker == target) {
+            return;
+        }
+        CountDownLatch handoff = new CountDownLatch(1);
+        sendControl(handle.worker, BookWorker.Command.RELEASE, handoff);
+        sendControl(target, BookWorker.Command.ADOPT, handoff);
+        handle.worker.bookCount--;
+        target.bookCount++;
+        handle.worker = target;
+        logger.info("Moved book " + symbol + " to worker " + workerIndex);
+    }
+
+    private void sendControl(BookWorker worker, BookWorker.Command command, CountDownLatch handoff) {
+        long sequence = worker.claim();
+        BookWorker.Envelope envelope = worker.entry(sequence);
+        envelope.command = command;
+        envelope.handoff = handoff;
+        worker.publish(sequence);
+    }
+
+    /**
+     * Compares the messages applied by every worker since the previous call, and moves one book from the busiest to
+     * the idlest worker if that narrows the gap between them. The book moved is the one whose load comes closest to
+     * evening out the two workers.
+     *
+     * @return The symbol of the book moved, or null if the load is already balanced
+     */
+    public String rebalance() {
+        long[] workerLoad = new long[workers.length];
+        Map<BookHandle, Long> bookLoad = new HashMap<>();
+        for (BookHandle handle : books.values()) {
+            long messages = handle.messages.get();
+            long load = messages - handle.lastSampledMessages;
+            handle.lastSampledMessages = messages;
+            bookLoad.put(handle, load);
+            workerLoad[handle.worker.getIndex()] += load;
+        }
+        int busiest = 0;
+        int idlest = 0;
+        for (int i = 1; i < workers.length; i++) {
+            busiest = workerLoad[i] > workerLoad[busiest] ? i : busiest;
+            idlest = workerLoad[i] < workerLoad[idlest] ? i : idlest;
+        }
+        long gap = workerLoad[busiest] - workerLoad[idlest];
+        String candidate = null;
+        long bestRemainingGap = gap;
+        for (Map.Entry<String, BookHandle> entry : books.entrySet()) {
+            BookHandle handle = entry.getValue();
+            if (handle.worker.getIndex() != busiest) {
+                continue;
+            }
+            long remainingGap = Math.abs(gap - 2L * bookLoad.get(handle));
+            if (remainingGap < bestRemainingGap) {
+                bestRemainingGap = remainingGap;
+                candidate = entry.getKey();
+            }
+        }
+        if (candidate != null) {
+            moveBook(candidate, idlest);
+        }
+        return candidate;
+    }
+
+    /**
+     * @return A snapshot of the load of every worker
+     */
+    public List<WorkerMetrics> getWorkerMetrics() {
+        List<WorkerMetrics> metrics = new ArrayList<>(workers.length);
+        for (BookWorker worker : workers) {
+            metrics.add(new WorkerMetrics(worker.getIndex(), worker.bookCount, worker.getMessages(),
+                    worker.getBusyNanos(), worker.getBacklog()));
+        }
+        return metrics;
+    }
+
+    /**
+     * @param symbol Instrument identifier
+     * @return The index of the worker the symbol's book is assigned to, or -1 if there is no such book
+     */
+    public int getWorkerIndex(String symbol) {
+        BookHandle handle = books.get(symbol);
+        return handle != null ? handle.worker.getIndex() : -1;
+    }
+
+    /**
+     * @param symbol Instrument identifier
+     * @return The number of messages applied to the symbol's book so far
+     */
+    public long getBookMessages(String symbol) {
+        BookHandle handle = books.get(symbol);
+        return handle != null ? handle.messages.get() : 0L;
+    }
+
+    public OrderBook getBook(String symbol) {
+        BookHandle handle = books.get(symbol);
+        return handle != null ? handle.book : null;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Stops every worker once it has applied the messages already routed to it, and waits for them to finish.
+     */
+    public void close() throws InterruptedException {
+        for (BookWorker worker : workers) {
+            sendControl(worker, BookWorker.Command.STOP, null);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Load of a single worker at the time of the snapshot.
+     */
+    public static final class WorkerMetrics {
+        private final int workerIndex;
+        private final int books;
+        private final long messages;
+        private final long busyNanos;
+        private final long backlog;
+
+        WorkerMetrics(int workerIndex, int books, long messages, long busyNanos, long backlog) {
+            this.workerIndex = workerIndex;
+            this.books = books;
+            this.messages = messages;
+            this.busyNanos = busyNanos;
+            this.backlog = backlog;
+        }
+
+        public int getWorkerIndex() {
+            return workerIndex;
+        }
+
+        public int getBooks() {
+            return books;
+        }
+
+        /**
+         * @return The number of messages applied by the worker since it started
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return The time the worker spent applying messages since it started
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        /**
+         * @return The number of messages waiting in the worker's inbox
+         */
+        public long getBacklog() {
+            return backlog;
+        }
+
+        @Override
+        public String toString() {
+            return "WorkerMetrics{" +
+                    "workerIndex=" + workerIndex +
+                    ", books=" + books +
+                    ", messages=" + messages +
+                    ", busyNanos=" + busyNanos +
+                    ", backlog=" + backlog +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.bluediamond.assignment;
+
+/**
+ * Index of the orders resting on an OrderBook, keyed by primitive order id so that lookups never box the id.
+ * Every operation resolves the id in a single probe sequence.
+ */
+public interface OrderIndex {
+
+    /**
+     * @param orderId Unique identifier of the order
+     * @return The order, or null if no order with that id is indexed
+     */
+    Order get(long orderId);
+
+    /**
+     * Indexes the order unless its id is already taken.
+     *
+     * @param orderId Unique identifier of the order
+     * @param order   Order to index
+     * @return The order already indexed under that id, or null if the new order was indexed
+     */
+    Order putIfAbsent(long orderId, Order order);
+
+    /**
+     * @param orderId Unique identifier of the order
+     * @return The removed order, or null if no order with that id was indexed
+     */
+    Order remove(long orderId);
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -1,8 +1,15 @@
 package com.bluediamond.assignment;
 
+import com.bluediamond.assignment.Level2View.Side;
+
 /**
  * OrderMessage class used to send requests to the OrderBook.
  * Describes a MessageType Enum to describe the request, and contains an Order object to interact with OrderBook.
+ * Messages can be recycled: a message created with the no-argument constructor owns its Order, and set() overwrites
+ * both in place, so a feed handler can publish events without allocating. The OrderBook copies the order data it
+ * keeps, so a message may be reused as soon as the book has processed it.
+ * A producer may stamp() a message as it hands it over, so that a book with BookMetrics enabled can measure how long
+ * it waited to be applied.
  */
 public class OrderMessage {
     /**
@@ -17,15 +24,59 @@ public class OrderMessage {
         New, Amend, Cancel, Trade, Close
     }
 
-    private final MessageType msgType;
+    private MessageType msgType;
 
     private Order orderData;
 
+    private long enqueueNanos;
+
+    /**
+     * Creates a recyclable message, to be filled in through set().
+     */
+    public OrderMessage() {
+        this.orderData = new Order();
+    }
+
     public OrderMessage(MessageType msgType, Order orderData) {
         this.msgType = msgType;
         this.orderData = orderData;
     }
 
+    /**
+     * Overwrites the message and its order data in place.
+     *
+     * @return This message
+     */
+    public OrderMessage set(MessageType msgType, Side side, long priceTicks, long quantity, long orderId) {
+        this.msgType = msgType;
+        this.orderData.set(orderId, side, priceTicks, quantity);
+        this.enqueueNanos = 0L;
+        return this;
+    }
+
+    /**
+     * Records the time the message is handed over to the book, to be called by the producer just before publishing.
+     *
+     * @return This message
+     */
+    public OrderMessage stamp() {
+        this.enqueueNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Overwrites the message and its order data in place with a copy of another message, including any decimal price.
+     *
+     * @return This message
+     */
+    public OrderMessage set(OrderMessage other) {
+        Order order = other.getOrderData();
+        set(other.getMsgType(), order.getSide(), order.getPriceTicks(), order.getQuantity(), order.getOrderId());
+        this.orderData.setPrice(order.getPrice());
+        this.enqueueNanos = other.enqueueNanos;
+        return this;
+    }
+
     public MessageType getMsgType() {
         return msgType;
     }
@@ -33,4 +84,15 @@ public class OrderMessage {
     public Order getOrderData() {
         return orderData;
     }
+
+    /**
+     * @return The System.nanoTime() the message was stamped with, or 0 if it wasn't
+     */
+    public long getEnqueueNanos() {
+        return enqueueNanos;
+    }
+
+    public void setEnqueueNanos(long enqueueNanos) {
+        this.enqueueNanos = enqueueNanos;
+    }
 }
@@ -0,0 +1,153 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.nio.ByteBuffer;
+
+import static com.bluediamond.assignment.WireFormat.INTS;
+import static com.bluediamond.assignment.WireFormat.LONGS;
+import static com.bluediamond.assignment.WireFormat.SHORTS;
+
+/**
+ * Flyweight reading a batch of order messages in the WireFormat layout in place, without copying them into
+ * OrderMessage objects: next() moves from one message to the next, and the getters read the fields of the current
+ * message straight from the buffer. An OrderBook applies the current message with process(OrderMessageDecoder).
+ * A batch may end with a partial message, e.g. when it was read from a socket: next() stops before it, and
+ * getPosition() tells where it starts, so that the caller can complete it with the following bytes.
+ */
+public final class OrderMessageDecoder {
+    private ByteBuffer buffer;
+    private int limit;
+    private int position;
+    private int body;
+    private int templateId;
+    private int blockLength;
+    private MessageType type;
+    private boolean malformed;
+
+    /**
+     * @param buffer Buffer holding the batch
+     * @param offset Offset of the first message
+     * @param length Length of the batch in bytes
+     * @return This decoder, positioned before the first message
+     */
+    public OrderMessageDecoder wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+        this.body = -1;
+        this.type = null;
+        this.malformed = false;
+        return this;
+    }
+
+    /**
+     * Moves to the next complete message of the batch, skipping messages of template ids unknown to this schema
+     * version.
+     *
+     * @return False if there is no complete message left, or if the next message is from another schema, in which case
+     * isMalformed() turns true and the decoder stays on that message
+     */
+    public boolean next() {
+        while (position + WireFormat.HEADER_LENGTH <= limit) {
+            int schemaId = Short.toUnsignedInt((short) SHORTS.get(buffer, position + WireFormat.SCHEMA_ID_OFFSET));
+            if (schemaId != WireFormat.SCHEMA_ID) {
+                malformed = true;
+                break;
+            }
+            int length = Short.toUnsignedInt((short) SHORTS.get(buffer, position + WireFormat.BLOCK_LENGTH_OFFSET));
+            if (position + WireFormat.HEADER_LENGTH + length > limit) {
+                break;
+            }
+            int id = Short.toUnsignedInt((short) SHORTS.get(buffer, position + WireFormat.TEMPLATE_ID_OFFSET));
+            MessageType messageType = WireFormat.typeOf(id);
+            body = position + WireFormat.HEADER_LENGTH;
+            position = body + length;
+            if (messageType != null && length >= WireFormat.blockLengthOf(messageType)) {
+                templateId = id;
+                blockLength = length;
+                type = messageType;
+                return true;
+            }
+        }
+        body = -1;
+        type = null;
+        return false;
+    }
+
+    /**
+     * @return True if next() stopped on a message from another schema, the rest of the batch being unreadable
+     */
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return The offset following the last complete message read, where any partial or malformed message starts
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public MessageType getMsgType() {
+        return type;
+    }
+
+    public int getTemplateId() {
+        return templateId;
+    }
+
+    /**
+     * @return The length of the current message, header included
+     */
+    public int getEncodedLength() {
+        return WireFormat.HEADER_LENGTH + blockLength;
+    }
+
+    public int getInstrumentId() {
+        return (int) INTS.get(buffer, body + WireFormat.INSTRUMENT_ID_OFFSET);
+    }
+
+    /**
+     * @return The side of a New message, null for other types
+     */
+    public Side getSide() {
+        return type == MessageType.New ? WireFormat.sideOf(buffer.get(body + WireFormat.SIDE_OFFSET)) : null;
+    }
+
+    /**
+     * @return The order id, or the resting order id of a Trade, 0 for Close
+     */
+    public long getOrderId() {
+        return type != MessageType.Close ? (long) LONGS.get(buffer, body + WireFormat.ORDER_ID_OFFSET) : 0L;
+    }
+
+    /**
+     * @return The price in ticks of a New or Amend message, 0 for other types
+     */
+    public long getPriceTicks() {
+        return type == MessageType.New || type == MessageType.Amend
+                ? (long) LONGS.get(buffer, body + WireFormat.PRICE_OFFSET) : 0L;
+    }
+
+    /**
+     * @return The quantity of a New, Amend or Trade message, 0 for other types
+     */
+    public long getQuantity() {
+        return switch (type) {
+            case New, Amend -> (long) LONGS.get(buffer, body + WireFormat.NEW_QUANTITY_OFFSET);
+            case Trade -> (long) LONGS.get(buffer, body + WireFormat.TRADE_QUANTITY_OFFSET);
+            default -> 0L;
+        };
+    }
+
+    /**
+     * Copies the current message into an OrderMessage, for consumers that need one.
+     *
+     * @return The message passed in
+     */
+    public OrderMessage decodeInto(OrderMessage msg) {
+        return msg.set(type, getSide(), getPriceTicks(), getQuantity(), getOrderId());
+    }
+}
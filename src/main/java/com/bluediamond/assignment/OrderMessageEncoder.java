@@ -0,0 +1,127 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static com.bluediamond.assignment.WireFormat.INTS;
+import static com.bluediamond.assignment.WireFormat.LONGS;
+import static com.bluediamond.assignment.WireFormat.SHORTS;
+
+/**
+ * Flyweight writing order messages in the WireFormat layout, back to back into a ByteBuffer, from the offset it was
+ * wrapped at. Fields are written in place with absolute accesses, so neither the buffer's position nor its byte
+ * order are used, and encoding doesn't allocate. An encoder may be wrapped around one buffer after another.
+ */
+public final class OrderMessageEncoder {
+    private ByteBuffer buffer;
+    private int offset;
+    private int position;
+
+    /**
+     * @param buffer Buffer to write to, up to its limit
+     * @param offset Offset of the first message
+     * @return This encoder
+     */
+    public OrderMessageEncoder wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.position = offset;
+        return this;
+    }
+
+    /**
+     * @return The offset the next message will be written at
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The number of bytes written since the encoder was wrapped
+     */
+    public int getEncodedLength() {
+        return position - offset;
+    }
+
+    /**
+     * @return True if a message of that type still fits before the buffer's limit
+     */
+    public boolean hasRoom(MessageType type) {
+        return position + WireFormat.encodedLengthOf(type) <= buffer.limit();
+    }
+
+    public OrderMessageEncoder newOrder(int instrumentId, Side side, long priceTicks, long quantity, long orderId) {
+        int body = header(MessageType.New, instrumentId);
+        buffer.put(body + WireFormat.SIDE_OFFSET, WireFormat.sideCode(side));
+        LONGS.set(buffer, body + WireFormat.ORDER_ID_OFFSET, orderId);
+        LONGS.set(buffer, body + WireFormat.PRICE_OFFSET, priceTicks);
+        LONGS.set(buffer, body + WireFormat.NEW_QUANTITY_OFFSET, quantity);
+        return this;
+    }
+
+    public OrderMessageEncoder amend(int instrumentId, long priceTicks, long quantity, long orderId) {
+        int body = header(MessageType.Amend, instrumentId);
+        LONGS.set(buffer, body + WireFormat.ORDER_ID_OFFSET, orderId);
+        LONGS.set(buffer, body + WireFormat.PRICE_OFFSET, priceTicks);
+        LONGS.set(buffer, body + WireFormat.NEW_QUANTITY_OFFSET, quantity);
+        return this;
+    }
+
+    public OrderMessageEncoder cancel(int instrumentId, long orderId) {
+        int body = header(MessageType.Cancel, instrumentId);
+        LONGS.set(buffer, body + WireFormat.ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public OrderMessageEncoder trade(int instrumentId, long quantity, long restingOrderId) {
+        int body = header(MessageType.Trade, instrumentId);
+        LONGS.set(buffer, body + WireFormat.ORDER_ID_OFFSET, restingOrderId);
+        LONGS.set(buffer, body + WireFormat.TRADE_QUANTITY_OFFSET, quantity);
+        return this;
+    }
+
+    public OrderMessageEncoder close(int instrumentId) {
+        header(MessageType.Close, instrumentId);
+        return this;
+    }
+
+    /**
+     * Encodes an OrderMessage of any type, its price in ticks.
+     */
+    public OrderMessageEncoder encode(int instrumentId, OrderMessage msg) {
+        Order order = msg.getOrderData();
+        return switch (msg.getMsgType()) {
+            case New -> newOrder(instrumentId, order.getSide(), order.getPriceTicks(), order.getQuantity(),
+                    order.getOrderId());
+            case Amend -> amend(instrumentId, order.getPriceTicks(), order.getQuantity(), order.getOrderId());
+            case Cancel -> cancel(instrumentId, order.getOrderId());
+            case Trade -> trade(instrumentId, order.getQuantity(), order.getOrderId());
+            case Close -> close(instrumentId);
+        };
+    }
+
+    /**
+     * Writes the header and the instrument id of a message, zeroing its padding, and moves past it.
+     *
+     * @return The offset of the message body
+     */
+    private int header(MessageType type, int instrumentId) {
+        int blockLength = WireFormat.blockLengthOf(type);
+        int start = position;
+        int body = start + WireFormat.HEADER_LENGTH;
+        if (body + blockLength > buffer.limit()) {
+            throw new BufferOverflowException();
+        }
+        SHORTS.set(buffer, start + WireFormat.BLOCK_LENGTH_OFFSET, (short) blockLength);
+        SHORTS.set(buffer, start + WireFormat.TEMPLATE_ID_OFFSET, (short) WireFormat.templateIdOf(type));
+        SHORTS.set(buffer, start + WireFormat.SCHEMA_ID_OFFSET, (short) WireFormat.SCHEMA_ID);
+        SHORTS.set(buffer, start + WireFormat.VERSION_OFFSET, (short) WireFormat.SCHEMA_VERSION);
+        INTS.set(buffer, body + WireFormat.INSTRUMENT_ID_OFFSET, instrumentId);
+        INTS.set(buffer, body + WireFormat.SIDE_OFFSET, 0);
+        position = body + blockLength;
+        return body;
+    }
+}
@@ -0,0 +1,46 @@
+package com.bluediamond.assignment;
+
+/**
+ * Free list of recycled Order objects, so that the OrderBook doesn't allocate an Order for every new resting order.
+ * Free orders are chained through their own next link. Only the book thread may use the pool.
+ */
+class OrderPool {
+    private Order free;
+    private int size;
+
+    /**
+     * @param preallocated Number of orders created up front
+     */
+    OrderPool(int preallocated) {
+        for (int i = 0; i < preallocated; i++) {
+            release(new Order());
+        }
+    }
+
+    /**
+     * @return A free order, or a new one if the pool is empty
+     */
+    Order acquire() {
+        Order order = free;
+        if (order == null) {
+            return new Order();
+        }
+        free = order.getNext();
+        order.setNext(null);
+        size--;
+        return order;
+    }
+
+    /**
+     * @param order Order no longer referenced by the book
+     */
+    void release(Order order) {
+        order.setNext(free);
+        free = order;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+}
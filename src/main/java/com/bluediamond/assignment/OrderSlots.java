@@ -0,0 +1,166 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Off-heap storage of resting orders for the OffHeapOrderBook: every order is a fixed-width slot in a direct buffer,
+ * addressed by its int index, instead of an object on the heap. Buffers are allocated in chunks of up to a million
+ * slots as the book grows, and freed slots are chained into a free list through their next field and reused first, so
+ * a book at its working size doesn't allocate. The garbage collector only sees the chunk buffers, however many orders
+ * they hold. Only the book thread may use the slots.
+ * <p>
+ * Slot layout, in native byte order: order id (8 bytes), price in ticks (8), quantity (8), timestamp (8), previous
+ * and next order of the price level (4 each), side (4: 0 BID, 1 ASK), then 4 bytes of padding to keep the slots
+ * 8 byte aligned.
+ */
+final class OrderSlots {
+    static final int NONE = -1;
+    static final int SLOT_SIZE = 48;
+    private static final int ORDER_ID_OFFSET = 0;
+    private static final int PRICE_OFFSET = 8;
+    private static final int QUANTITY_OFFSET = 16;
+    private static final int TIMESTAMP_OFFSET = 24;
+    private static final int PREV_OFFSET = 32;
+    private static final int NEXT_OFFSET = 36;
+    private static final int SIDE_OFFSET = 40;
+    private static final int MAX_CHUNK_SLOTS = 1 << 20;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int chunkSlots;
+    private final int chunkShift;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int allocated;
+    private int freeHead = NONE;
+    private int size;
+
+    /**
+     * @param expectedOrders Number of orders to allocate slots for up front
+     */
+    OrderSlots(int expectedOrders) {
+        this.chunkSlots = Math.max(1024, Math.min(MAX_CHUNK_SLOTS, Integer.highestOneBit(expectedOrders - 1) << 1));
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSlots);
+        while ((long) chunks.length * chunkSlots < expectedOrders) {
+            addChunk();
+        }
+    }
+
+    private void addChunk() {
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = ByteBuffer.allocateDirect(chunkSlots * SLOT_SIZE);
+    }
+
+    /**
+     * @return A free slot, reused from the free list if possible
+     */
+    int acquire() {
+        int slot = freeHead;
+        if (slot != NONE) {
+            freeHead = getNext(slot);
+        } else {
+            if (allocated == chunks.length * chunkSlots) {
+                addChunk();
+            }
+            slot = allocated++;
+        }
+        size++;
+        return slot;
+    }
+
+    void release(int slot) {
+        setNext(slot, freeHead);
+        freeHead = slot;
+        size--;
+    }
+
+    /**
+     * @return The number of slots in use
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The off-heap memory reserved for slots, in bytes
+     */
+    long reservedBytes() {
+        return (long) chunks.length * chunkSlots * SLOT_SIZE;
+    }
+
+    private ByteBuffer chunkOf(int slot) {
+        return chunks[slot >>> chunkShift];
+    }
+
+    private int offsetOf(int slot) {
+        return (slot & (chunkSlots - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * Fills in a slot for a new order, not yet linked to any level.
+     */
+    void set(int slot, long orderId, Side side, long priceTicks, long quantity, long timestamp) {
+        ByteBuffer chunk = chunkOf(slot);
+        int offset = offsetOf(slot);
+        LONGS.set(chunk, offset + ORDER_ID_OFFSET, orderId);
+        LONGS.set(chunk, offset + PRICE_OFFSET, priceTicks);
+        LONGS.set(chunk, offset + QUANTITY_OFFSET, quantity);
+        LONGS.set(chunk, offset + TIMESTAMP_OFFSET, timestamp);
+        INTS.set(chunk, offset + PREV_OFFSET, NONE);
+        INTS.set(chunk, offset + NEXT_OFFSET, NONE);
+        INTS.set(chunk, offset + SIDE_OFFSET, side.ordinal());
+    }
+
+    long getOrderId(int slot) {
+        return (long) LONGS.get(chunkOf(slot), offsetOf(slot) + ORDER_ID_OFFSET);
+    }
+
+    long getPriceTicks(int slot) {
+        return (long) LONGS.get(chunkOf(slot), offsetOf(slot) + PRICE_OFFSET);
+    }
+
+    void setPriceTicks(int slot, long priceTicks) {
+        LONGS.set(chunkOf(slot), offsetOf(slot) + PRICE_OFFSET, priceTicks);
+    }
+
+    long getQuantity(int slot) {
+        return (long) LONGS.get(chunkOf(slot), offsetOf(slot) + QUANTITY_OFFSET);
+    }
+
+    void setQuantity(int slot, long quantity) {
+        LONGS.set(chunkOf(slot), offsetOf(slot) + QUANTITY_OFFSET, quantity);
+    }
+
+    long getTimestamp(int slot) {
+        return (long) LONGS.get(chunkOf(slot), offsetOf(slot) + TIMESTAMP_OFFSET);
+    }
+
+    void setTimestamp(int slot, long timestamp) {
+        LONGS.set(chunkOf(slot), offsetOf(slot) + TIMESTAMP_OFFSET, timestamp);
+    }
+
+    int getPrev(int slot) {
+        return (int) INTS.get(chunkOf(slot), offsetOf(slot) + PREV_OFFSET);
+    }
+
+    void setPrev(int slot, int prev) {
+        INTS.set(chunkOf(slot), offsetOf(slot) + PREV_OFFSET, prev);
+    }
+
+    int getNext(int slot) {
+        return (int) INTS.get(chunkOf(slot), offsetOf(slot) + NEXT_OFFSET);
+    }
+
+    void setNext(int slot, int next) {
+        INTS.set(chunkOf(slot), offsetOf(slot) + NEXT_OFFSET, next);
+    }
+
+    Side getSide(int slot) {
+        return (int) INTS.get(chunkOf(slot), offsetOf(slot) + SIDE_OFFSET) == 0 ? Side.BID : Side.ASK;
+    }
+}
@@ -0,0 +1,180 @@
+package com.bluediamond.assignment;
+
+import java.math.BigDecimal;
+
+/**
+ * A single price level on one side of the OrderBook.
+ * Holds the resting orders at this price in time priority (FIFO), and keeps running totals of the resting quantity
+ * and number of orders, updated incrementally whenever an order is added, amended, traded or cancelled.
+ * The FIFO is intrusive: each Order links to its neighbours on the level, so an order found through the book's
+ * OrderIndex is unlinked in constant time without searching the level. Levels of an OffHeapOrderBook queue slots of
+ * its OrderSlots instead, linked the same way through the slots' previous and next fields.
+ * Levels are recycled by their BookSide once empty, through init().
+ */
+public class PriceLevel {
+    private final TickSize tickSize;
+    private long priceTicks;
+    private Order head;
+    private Order tail;
+    private int headSlot = OrderSlots.NONE;
+    private int tailSlot = OrderSlots.NONE;
+    private BigDecimal price;
+    private long quantity;
+    private long orderCount;
+
+    public PriceLevel(long priceTicks, TickSize tickSize) {
+        this.priceTicks = priceTicks;
+        this.tickSize = tickSize;
+    }
+
+    /**
+     * Resets an empty, recycled level to a new price.
+     *
+     * @return This level
+     */
+    PriceLevel init(long priceTicks) {
+        this.priceTicks = priceTicks;
+        this.price = null;
+        this.head = null;
+        this.tail = null;
+        this.headSlot = OrderSlots.NONE;
+        this.tailSlot = OrderSlots.NONE;
+        this.quantity = 0L;
+        this.orderCount = 0L;
+        return this;
+    }
+
+    /**
+     * @param order Order joining the back of the price level queue
+     */
+    void addOrder(Order order) {
+        order.setLevel(this);
+        order.setPrev(tail);
+        order.setNext(null);
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.setNext(order);
+        }
+        tail = order;
+        this.quantity += order.getQuantity();
+        this.orderCount++;
+    }
+
+    /**
+     * @param order Order leaving the price level, with its remaining quantity
+     */
+    void removeOrder(Order order) {
+        Order prev = order.getPrev();
+        Order next = order.getNext();
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.setNext(next);
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.setPrev(prev);
+        }
+        order.setPrev(null);
+        order.setNext(null);
+        order.setLevel(null);
+        this.quantity -= order.getQuantity();
+        this.orderCount--;
+    }
+
+    /**
+     * @param slot Slot of an order joining the back of the price level queue
+     */
+    void addSlot(OrderSlots slots, int slot) {
+        slots.setPrev(slot, tailSlot);
+        slots.setNext(slot, OrderSlots.NONE);
+        if (tailSlot == OrderSlots.NONE) {
+            headSlot = slot;
+        } else {
+            slots.setNext(tailSlot, slot);
+        }
+        tailSlot = slot;
+        this.quantity += slots.getQuantity(slot);
+        this.orderCount++;
+    }
+
+    /**
+     * @param slot Slot of an order leaving the price level, with its remaining quantity
+     */
+    void removeSlot(OrderSlots slots, int slot) {
+        int prev = slots.getPrev(slot);
+        int next = slots.getNext(slot);
+        if (prev == OrderSlots.NONE) {
+            headSlot = next;
+        } else {
+            slots.setNext(prev, next);
+        }
+        if (next == OrderSlots.NONE) {
+            tailSlot = prev;
+        } else {
+            slots.setPrev(next, prev);
+        }
+        slots.setPrev(slot, OrderSlots.NONE);
+        slots.setNext(slot, OrderSlots.NONE);
+        this.quantity -= slots.getQuantity(slot);
+        this.orderCount--;
+    }
+
+    /**
+     * @param delta Quantity change of an order resting on this price level (negative on trades)
+     */
+    void adjustQuantity(long delta) {
+        this.quantity += delta;
+    }
+
+    public boolean isEmpty() {
+        return orderCount == 0L;
+    }
+
+    /**
+     * @return The decimal price of the level, only converted from ticks the first time it is requested
+     */
+    public BigDecimal getPrice() {
+        if (price == null) {
+            price = tickSize.toPrice(priceTicks);
+        }
+        return price;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * @return The oldest order resting on this price level, the others following through Order.getNext()
+     */
+    Order getHead() {
+        return head;
+    }
+
+    /**
+     * @return The slot of the oldest order resting on this level of an OffHeapOrderBook, or OrderSlots.NONE
+     */
+    int getHeadSlot() {
+        return headSlot;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceLevel{" +
+                "priceTicks=" + priceTicks +
+                ", quantity=" + quantity +
+                ", orderCount=" + orderCount +
+                '}';
+    }
+}
@@ -0,0 +1,115 @@
+package com.bluediamond.assignment;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated single-producer/single-consumer ring of reusable entries, used as a lock-free alternative to a
+ * BlockingQueue for feeding an OrderBook.
+ * The producer claims the next sequence, fills the entry in place and publishes it; the consumer waits for published
+ * sequences through its WaitStrategy, processes everything available as one batch, then releases the batch so the
+ * producer may overwrite those entries. Hand-offs are ordered writes of the two sequences, with no locks or signals.
+ *
+ * <pre>
+ *     long sequence = ring.next();
+ *     ring.get(sequence).set(MessageType.New, Side.BID, 940L, 10L, 1L);
+ *     ring.publish(sequence);
+ * </pre>
+ *
+ * @param <E> Type of the entries, e.g. OrderMessage
+ */
+public class RingBuffer<E> {
+    private final Object[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Sequence published = new Sequence(-1L);
+    private final Sequence consumed = new Sequence(-1L);
+    // Producer-local state
+    private long nextSequence = 0L;
+    private long consumedCache = -1L;
+
+    /**
+     * @param capacity     Number of entries, must be a power of two
+     * @param factory      Creates the preallocated entries
+     * @param waitStrategy How the consumer waits for new entries
+     */
+    public RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+        }
+    }
+
+    /**
+     * Claims the next entry for the producer, waiting for the consumer if the ring is full.
+     *
+     * @return Sequence of the claimed entry
+     */
+    public long next() {
+        long sequence = nextSequence;
+        long wrapPoint = sequence - entries.length;
+        if (wrapPoint > consumedCache) {
+            while (wrapPoint > (consumedCache = consumed.get())) {
+                LockSupport.parkNanos(1L);
+            }
+        }
+        nextSequence = sequence + 1L;
+        return sequence;
+    }
+
+    /**
+     * @param sequence Sequence of the entry claimed through next()
+     * @return The preallocated entry for that sequence
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Makes the entry, and every entry claimed before it, visible to the consumer.
+     *
+     * @param sequence Sequence of the entry claimed through next()
+     */
+    public void publish(long sequence) {
+        published.set(sequence);
+    }
+
+    /**
+     * Waits for the entry at the sequence to be published by the producer.
+     *
+     * @param sequence Sequence the consumer needs next
+     * @return The last published sequence, at least the sequence requested, so that everything in between can be
+     * consumed as one batch
+     * @throws InterruptedException if the consumer is interrupted while waiting
+     */
+    public long waitFor(long sequence) throws InterruptedException {
+        long available = published.get();
+        return available >= sequence ? available : waitStrategy.waitFor(sequence, published);
+    }
+
+    /**
+     * Hands the entries up to the sequence back to the producer.
+     *
+     * @param sequence Last sequence processed by the consumer
+     */
+    public void release(long sequence) {
+        consumed.set(sequence);
+    }
+
+    /**
+     * @return The number of published entries the consumer hasn't released yet
+     */
+    public long backlog() {
+        return published.get() - consumed.get();
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+}
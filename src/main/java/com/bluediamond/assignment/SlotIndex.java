@@ -0,0 +1,130 @@
+package com.bluediamond.assignment;
+
+import java.util.Arrays;
+
+/**
+ * Index of the orders resting on an OffHeapOrderBook, mapping primitive order ids to their OrderSlots slot.
+ * It is laid out like a HashOrderIndex, open addressing over two parallel arrays probed linearly from a Fibonacci
+ * hash of the id, but both arrays are primitive: the garbage collector has no references to trace in the index,
+ * however many orders it holds. Empty entries hold OrderSlots.NONE.
+ */
+final class SlotIndex {
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private int[] slots;
+    private int mask;
+    private int shift;
+    private int resizeThreshold;
+    private int size;
+
+    /**
+     * @param expectedOrders Number of orders the index should hold without resizing
+     */
+    SlotIndex(int expectedOrders) {
+        allocate(Integer.highestOneBit(Math.max(2, (int) (expectedOrders / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, OrderSlots.NONE);
+        mask = capacity - 1;
+        shift = Long.numberOfLeadingZeros(mask);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int entryOf(long orderId) {
+        return (int) ((orderId * GOLDEN_RATIO) >>> shift);
+    }
+
+    /**
+     * @return The slot of the order, or OrderSlots.NONE if no order with that id is indexed
+     */
+    int get(long orderId) {
+        for (int entry = entryOf(orderId); slots[entry] != OrderSlots.NONE; entry = (entry + 1) & mask) {
+            if (keys[entry] == orderId) {
+                return slots[entry];
+            }
+        }
+        return OrderSlots.NONE;
+    }
+
+    /**
+     * Indexes the slot unless the order id is already taken.
+     *
+     * @return The slot already indexed under that id, or OrderSlots.NONE if the new slot was indexed
+     */
+    int putIfAbsent(long orderId, int slot) {
+        int entry = entryOf(orderId);
+        for (; slots[entry] != OrderSlots.NONE; entry = (entry + 1) & mask) {
+            if (keys[entry] == orderId) {
+                return slots[entry];
+            }
+        }
+        keys[entry] = orderId;
+        slots[entry] = slot;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return OrderSlots.NONE;
+    }
+
+    /**
+     * @return The slot of the removed order, or OrderSlots.NONE if no order with that id was indexed
+     */
+    int remove(long orderId) {
+        for (int entry = entryOf(orderId); slots[entry] != OrderSlots.NONE; entry = (entry + 1) & mask) {
+            if (keys[entry] == orderId) {
+                int removed = slots[entry];
+                shiftBack(entry);
+                size--;
+                return removed;
+            }
+        }
+        return OrderSlots.NONE;
+    }
+
+    /**
+     * Closes the gap left at the freed entry by moving back any later entry of the probe run that can't be reached
+     * from its home entry otherwise.
+     */
+    private void shiftBack(int freeEntry) {
+        int entry = freeEntry;
+        while (true) {
+            entry = (entry + 1) & mask;
+            if (slots[entry] == OrderSlots.NONE) {
+                break;
+            }
+            int home = entryOf(keys[entry]);
+            // The entry may move to the free entry unless its home lies cyclically in (freeEntry, entry]
+            if (((entry - home) & mask) >= ((entry - freeEntry) & mask)) {
+                keys[freeEntry] = keys[entry];
+                slots[freeEntry] = slots[entry];
+                freeEntry = entry;
+            }
+        }
+        slots[freeEntry] = OrderSlots.NONE;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != OrderSlots.NONE) {
+                int entry = entryOf(oldKeys[i]);
+                while (slots[entry] != OrderSlots.NONE) {
+                    entry = (entry + 1) & mask;
+                }
+                keys[entry] = oldKeys[i];
+                slots[entry] = oldSlots[i];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,22 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+/**
+ * Read-only side of the TickLevel2View interface, for Level 2 views that are queried but not driven by order events,
+ * such as a ConsolidatedBook merging the books of several venues, or the BookSnapshot of a book.
+ */
+public interface TickLevel2Query {
+
+    long getSizeForPriceLevel(Side side, long priceTicks); // number of existing orders on this price level
+
+    long getBookDepth(Side side); // get the number of price levels on the specified side
+
+    long getTopOfBookTicks(Side side); // get highest bid or lowest ask in ticks, resp. 0 if the side is empty
+
+    // fill the best levels of a side, best first, into the caller's arrays, zeroing any entry past the depth of the
+    // side; returns the number of levels filled
+    int getDepth(Side side, long[] pricesTicks, long[] quantities);
+
+    TickSize getTickSize(); // the price grid the tick prices are expressed in
+}
@@ -0,0 +1,19 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+
+/**
+ * Primitive sibling of the Level2View interface, where every price is a fixed-point number of ticks of the book's
+ * TickSize instead of a BigDecimal. Feeds delivering integer tick prices can drive the book through this interface
+ * without converting prices on every message. The queries are those of TickLevel2Query.
+ */
+public interface TickLevel2View extends TickLevel2Query {
+
+    void onNewOrder(Side side, long priceTicks, long quantity, long orderId);
+
+    void onCancelOrder(long orderId);
+
+    void onReplaceOrder(long priceTicks, long quantity, long orderId);
+
+    void onTrade(long quantity, long restingOrderId);
+}
@@ -0,0 +1,73 @@
+package com.bluediamond.assignment;
+
+import java.math.BigDecimal;
+
+/**
+ * Per-instrument price grid used to convert between decimal prices and the fixed-point integer tick prices the
+ * OrderBook stores internally. A price of N ticks is worth N * tickSize, with the scale of the tick size.
+ */
+public final class TickSize {
+    /**
+     * Tick size of 0.01, used by books created without an explicit tick size.
+     */
+    public static final TickSize DEFAULT = new TickSize(new BigDecimal("0.01"));
+
+    private final BigDecimal tickSize;
+
+    public TickSize(BigDecimal tickSize) {
+        if (tickSize.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive: " + tickSize);
+        }
+        this.tickSize = tickSize;
+    }
+
+    /**
+     * @param scale Number of decimal places of the instrument's prices
+     * @return Tick size of one unit in the last decimal place, e.g. 0.001 for a scale of 3
+     */
+    public static TickSize ofScale(int scale) {
+        return new TickSize(BigDecimal.ONE.movePointLeft(scale));
+    }
+
+    /**
+     * @param price Decimal price to convert
+     * @return The price as a whole number of ticks
+     * @throws ArithmeticException if the price is not a multiple of the tick size
+     */
+    public long toTicks(BigDecimal price) {
+        return price.divide(tickSize).longValueExact();
+    }
+
+    /**
+     * @param priceTicks Price as a whole number of ticks
+     * @return The decimal price, with the scale of the tick size
+     */
+    public BigDecimal toPrice(long priceTicks) {
+        return BigDecimal.valueOf(priceTicks).multiply(tickSize);
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public int getScale() {
+        return tickSize.scale();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return tickSize.compareTo(((TickSize) o).tickSize) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return tickSize.stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TickSize{" + tickSize + '}';
+    }
+}
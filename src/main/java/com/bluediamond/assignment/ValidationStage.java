@@ -0,0 +1,167 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.OrderMessage.MessageType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline stage running ahead of an OrderBook thread: it takes batches of wire encoded messages of a feed off an
+ * inbound RingBuffer of WireBatch entries, decodes them in place with an OrderMessageDecoder, performs every check
+ * that doesn't need the book's state, and forwards the messages that pass to the book's own RingBuffer as tick price
+ * commands. Decoding and validation thus run on the stage's thread, the book thread only applying the messages.
+ * Messages for another instrument, with a missing side, a price or a quantity that is not positive are rejected and
+ * logged by the stage, so the book thread never sees them. Checks against the book's state, such as duplicate or
+ * unknown order ids, are left to the book. A batch that isn't made of whole messages of the wire schema is malformed:
+ * its messages up to the first unreadable one are forwarded, and the rest of it is dropped.
+ * The stage is the single consumer of the inbound ring and the single producer of the outbound ring, and runs on its
+ * own thread until it forwards a Close message. Messages take the time their batch was stamped with, so that the
+ * queue wait measured by BookMetrics covers both hand-offs.
+ *
+ * <pre>
+ *     new Thread(new ValidationStage("VOD.L", 7, inbound, bookRing)).start();
+ *     new Thread(new OrderBook("VOD.L", bookRing, tickSize, new HashOrderIndex())).start();
+ * </pre>
+ */
+public class ValidationStage implements Runnable {
+    private static final Logger logger = LogManager.getLogger(ValidationStage.class);
+
+    private final String id;
+    private final int instrumentId;
+    private final RingBuffer<WireBatch> inbound;
+    private final RingBuffer<OrderMessage> outbound;
+    private final OrderMessageDecoder decoder = new OrderMessageDecoder();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    // Stage thread state: counts of the inbound batch being processed
+    private long batchForwarded;
+    private long batchRejected;
+    private long batchMalformed;
+
+    /**
+     * @param id           Identifier of the book, for the logs
+     * @param instrumentId Wire instrument id of the book's messages
+     * @param inbound      Ring of encoded batches, published by a single producer thread
+     * @param outbound     Ring consumed by the book thread
+     */
+    public ValidationStage(String id, int instrumentId, RingBuffer<WireBatch> inbound,
+                           RingBuffer<OrderMessage> outbound) {
+        this.id = id;
+        this.instrumentId = instrumentId;
+        this.inbound = inbound;
+        this.outbound = outbound;
+    }
+
+    /**
+     * Validates the inbound batches as they become available, releasing them back to the producer once forwarded,
+     * until a Close message is forwarded.
+     */
+    public void run() {
+        logger.info("Validation stage " + id + " started...");
+        long nextSequence = 0L;
+        while (true) {
+            try {
+                long available = inbound.waitFor(nextSequence);
+                for (; nextSequence <= available; nextSequence++) {
+                    if (forward(inbound.get(nextSequence))) {
+                        inbound.release(nextSequence);
+                        publishCounts();
+                        logger.info("Validation stage " + id + " stopped.");
+                        return;
+                    }
+                }
+                inbound.release(available);
+                publishCounts();
+            } catch (InterruptedException e) {
+                logger.error("Validation stage was interrupted unexpectedly.", e);
+            }
+        }
+    }
+
+    /**
+     * Decodes a batch, publishing the messages that pass validation to the book.
+     *
+     * @return True if the batch closed the book, any message after the Close being ignored
+     */
+    boolean forward(WireBatch batch) {
+        decoder.wrap(batch.getBuffer(), 0, batch.getLength());
+        while (decoder.next()) {
+            if (!validate(decoder)) {
+                batchRejected++;
+                continue;
+            }
+            long sequence = outbound.next();
+            decoder.decodeInto(outbound.get(sequence)).setEnqueueNanos(batch.getEnqueueNanos());
+            outbound.publish(sequence);
+            batchForwarded++;
+            if (decoder.getMsgType() == MessageType.Close) {
+                return true;
+            }
+        }
+        if (decoder.isMalformed() || decoder.getPosition() != batch.getLength()) {
+            batchMalformed++;
+            logger.warn("Dropped malformed batch of " + id + " from offset " + decoder.getPosition() + " of "
+                    + batch.getLength());
+        }
+        return false;
+    }
+
+    /**
+     * @return False if the current message of the decoder must not reach the book
+     */
+    private boolean validate(OrderMessageDecoder msg) {
+        MessageType type = msg.getMsgType();
+        if (msg.getInstrumentId() != instrumentId) {
+            logger.warn("Message for instrument " + msg.getInstrumentId() + " on the feed of " + id + ": " + type
+                    + " order " + msg.getOrderId());
+            return false;
+        }
+        if (type == MessageType.New || type == MessageType.Amend) {
+            if (msg.getPriceTicks() <= 0L || msg.getQuantity() <= 0L) {
+                logger.warn("Invalid price and/or quantity on " + type + " order " + msg.getOrderId() + ": price("
+                        + msg.getPriceTicks() + " ticks) quantity(" + msg.getQuantity() + ")");
+                return false;
+            }
+            if (type == MessageType.New && msg.getSide() == null) {
+                logger.warn("Missing side on new order: " + msg.getOrderId());
+                return false;
+            }
+        } else if (type == MessageType.Trade && msg.getQuantity() <= 0L) {
+            logger.warn("Invalid quantity traded on order " + msg.getOrderId() + ": " + msg.getQuantity());
+            return false;
+        }
+        return true;
+    }
+
+    private void publishCounts() {
+        forwarded.lazySet(forwarded.get() + batchForwarded);
+        rejected.lazySet(rejected.get() + batchRejected);
+        malformed.lazySet(malformed.get() + batchMalformed);
+        batchForwarded = 0L;
+        batchRejected = 0L;
+        batchMalformed = 0L;
+    }
+
+    /**
+     * @return The number of messages forwarded to the book, readable from any thread
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    /**
+     * @return The number of messages rejected, readable from any thread
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The number of batches partly dropped as malformed, readable from any thread
+     */
+    public long getMalformed() {
+        return malformed.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.bluediamond.assignment;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the consumer of a RingBuffer waits for the producer to publish the next message.
+ * Strategies trade CPU for wake-up latency: BusySpin burns a core to react within nanoseconds, Yielding gives the core
+ * away between checks, and Parking sleeps when idle at the cost of tens of microseconds of latency.
+ * None of them needs a signal from the producer, so publishing stays a single ordered write.
+ */
+public interface WaitStrategy {
+
+    /**
+     * @param sequence  Sequence the consumer needs next
+     * @param published Sequence of the last message published by the producer
+     * @return The last published sequence, which is at least the sequence requested
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    long waitFor(long sequence, Sequence published) throws InterruptedException;
+
+    /**
+     * Spins on the published sequence: lowest latency, a whole core per consumer.
+     */
+    class BusySpin implements WaitStrategy {
+        public long waitFor(long sequence, Sequence published) throws InterruptedException {
+            long available;
+            while ((available = published.get()) < sequence) {
+                checkInterrupted();
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+    }
+
+    /**
+     * Spins briefly, then yields the core between checks of the published sequence.
+     */
+    class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        public long waitFor(long sequence, Sequence published) throws InterruptedException {
+            long available;
+            int counter = SPIN_TRIES;
+            while ((available = published.get()) < sequence) {
+                checkInterrupted();
+                if (counter > 0) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+    }
+
+    /**
+     * Spins, then yields, then parks for a fixed period between checks of the published sequence.
+     */
+    class Parking implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+        private static final int YIELD_TRIES = 100;
+        private final long parkNanos;
+
+        public Parking(long parkNanos) {
+            this.parkNanos = parkNanos;
+        }
+
+        public long waitFor(long sequence, Sequence published) throws InterruptedException {
+            long available;
+            int counter = SPIN_TRIES + YIELD_TRIES;
+            while ((available = published.get()) < sequence) {
+                checkInterrupted();
+                if (counter > YIELD_TRIES) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else if (counter > 0) {
+                    counter--;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(parkNanos);
+                }
+            }
+            return available;
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bluediamond.assignment;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entry of a RingBuffer carrying a batch of order messages in the WireFormat layout, such as the messages of a feed
+ * packet, from the thread receiving them to a ValidationStage. The buffer is allocated once with the entry: the
+ * producer encodes or copies the batch into it from offset 0 and sets its length before publishing, so handing a
+ * batch over doesn't allocate.
+ */
+public final class WireBatch {
+    private final ByteBuffer buffer;
+    private int length;
+    private long enqueueNanos;
+
+    /**
+     * @param capacity Largest batch the entry holds, in bytes
+     */
+    public WireBatch(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Copies a batch into the entry, e.g. the messages of a packet straight from the receive buffer.
+     *
+     * @return This entry
+     */
+    public WireBatch set(ByteBuffer source, int offset, int length) {
+        buffer.put(0, source, offset, length);
+        this.length = length;
+        this.enqueueNanos = 0L;
+        return this;
+    }
+
+    /**
+     * @return The entry's buffer, for the producer to encode a batch into from offset 0
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The length of the batch in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param length Length of the batch encoded into the buffer, in bytes
+     * @return This entry
+     */
+    public WireBatch setLength(int length) {
+        this.length = length;
+        this.enqueueNanos = 0L;
+        return this;
+    }
+
+    /**
+     * Records the time the batch is handed over, to be called by the producer just before publishing. Every message
+     * of the batch is forwarded to the book with that time, as if stamped by OrderMessage.stamp().
+     *
+     * @return This entry
+     */
+    public WireBatch stamp() {
+        this.enqueueNanos = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * @return The System.nanoTime() the batch was stamped with, or 0 if it wasn't
+     */
+    public long getEnqueueNanos() {
+        return enqueueNanos;
+    }
+}
@@ -0,0 +1,92 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import com.bluediamond.assignment.OrderMessage.MessageType;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed binary layout of order messages on the wire, in the style of Simple Binary Encoding: every message is an 8
+ * byte header followed by a fixed-size body for its type, all little-endian, and messages of a batch sit back to back
+ * in one buffer. OrderMessageEncoder writes and OrderMessageDecoder reads them in place, as flyweights.
+ * <p>
+ * Header: block length (2 bytes, size of the body), template id (2, the message type), schema id (2), schema version
+ * (2). Bodies, by template id:
+ * <ul>
+ *     <li>1 New: instrument id (4), side (1: 1 BID, 2 ASK), padding (3), order id (8), price in ticks (8),
+ *     quantity (8)</li>
+ *     <li>2 Amend: instrument id (4), padding (4), order id (8), price in ticks (8), quantity (8)</li>
+ *     <li>3 Cancel: instrument id (4), padding (4), order id (8)</li>
+ *     <li>4 Trade: instrument id (4), padding (4), resting order id (8), quantity (8)</li>
+ *     <li>5 Close: instrument id (4), padding (4)</li>
+ * </ul>
+ * As the header carries the body length, a decoder skips messages of template ids it doesn't know, so that newer
+ * producers may add message types.
+ */
+public final class WireFormat {
+    public static final int SCHEMA_ID = 0x4244;
+    public static final int SCHEMA_VERSION = 1;
+    public static final int HEADER_LENGTH = 8;
+
+    static final int BLOCK_LENGTH_OFFSET = 0;
+    static final int TEMPLATE_ID_OFFSET = 2;
+    static final int SCHEMA_ID_OFFSET = 4;
+    static final int VERSION_OFFSET = 6;
+
+    // Body field offsets, shared by every message type that has the field
+    static final int INSTRUMENT_ID_OFFSET = 0;
+    static final int SIDE_OFFSET = 4;
+    static final int ORDER_ID_OFFSET = 8;
+    static final int PRICE_OFFSET = 16;
+    static final int NEW_QUANTITY_OFFSET = 24;
+    static final int TRADE_QUANTITY_OFFSET = 16;
+
+    static final VarHandle SHORTS = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    // Body length per message type ordinal
+    private static final int[] BLOCK_LENGTHS = {32, 32, 16, 24, 8};
+
+    private WireFormat() {
+    }
+
+    /**
+     * @return The template id of a message type
+     */
+    public static int templateIdOf(MessageType type) {
+        return type.ordinal() + 1;
+    }
+
+    /**
+     * @return The message type of a template id, or null if it isn't one of this schema version
+     */
+    public static MessageType typeOf(int templateId) {
+        return templateId >= 1 && templateId <= MESSAGE_TYPES.length ? MESSAGE_TYPES[templateId - 1] : null;
+    }
+
+    /**
+     * @return The body length of a message type
+     */
+    public static int blockLengthOf(MessageType type) {
+        return BLOCK_LENGTHS[type.ordinal()];
+    }
+
+    /**
+     * @return The encoded length of a message type, header included
+     */
+    public static int encodedLengthOf(MessageType type) {
+        return HEADER_LENGTH + BLOCK_LENGTHS[type.ordinal()];
+    }
+
+    static byte sideCode(Side side) {
+        return side == null ? 0 : side == Side.BID ? (byte) 1 : (byte) 2;
+    }
+
+    static Side sideOf(byte code) {
+        return code == 1 ? Side.BID : code == 2 ? Side.ASK : null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class BookCheckpointerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Level previousLevel;
+    private Path journalDirectory;
+    private Path checkpointDirectory;
+
+    @Before
+    public void setUp() {
+        // Per order logging would slow the random event streams down
+        previousLevel = LogManager.getLogger(OrderBook.class).getLevel();
+        Configurator.setLevel("com.bluediamond.assignment", Level.WARN);
+        journalDirectory = folder.getRoot().toPath().resolve("journal");
+        checkpointDirectory = folder.getRoot().toPath().resolve("checkpoints");
+    }
+
+    @After
+    public void tearDown() {
+        Configurator.setLevel("com.bluediamond.assignment", previousLevel);
+    }
+
+    @Test
+    public void restoreFromCheckpointAndJournalTail() throws IOException {
+        // Setup, a journaled book with a checkpointer following it
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        book.setJournal(journal);
+        Random random = new Random(11L);
+        try (BookCheckpointer checkpointer = new BookCheckpointer("VOD.L", TickSize.DEFAULT, journalDirectory,
+                checkpointDirectory)) {
+            applyRandomEvents(book, random, 1L, 3_000);
+            Assert.assertEquals(book.getEventSequence(), checkpointer.checkpoint());
+            applyRandomEvents(book, random, 3_001L, 2_000);
+            Assert.assertEquals(book.getEventSequence(), checkpointer.checkpoint());
+            applyRandomEvents(book, random, 5_001L, 500);
+        }
+        journal.close();
+        Assert.assertEquals(2, BookCheckpointer.listCheckpoints(checkpointDirectory).size());
+
+        // The restored book matches the live one, down to time priority
+        OrderBook restored = BookCheckpointer.restore(new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()),
+                journalDirectory, checkpointDirectory);
+        assertSameBook(book, restored);
+        Assert.assertEquals(book.getEventSequence(), restored.getEventSequence());
+
+        // The journal carries on where it left off
+        journal = new EventJournal(journalDirectory, 1_000);
+        Assert.assertEquals(restored.getEventSequence() + 1L, journal.getNextSequence());
+        journal.close();
+    }
+
+    @Test
+    public void restoreWithoutCheckpoint() throws IOException {
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(journalDirectory, 100);
+        book.setJournal(journal);
+        applyRandomEvents(book, new Random(7L), 1L, 1_000);
+        journal.close();
+
+        OrderBook restored = BookCheckpointer.restore(new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()),
+                journalDirectory, checkpointDirectory);
+        assertSameBook(book, restored);
+    }
+
+    /**
+     * Adds orders and randomly amends, trades or cancels some of the resting ones.
+     */
+    private void applyRandomEvents(OrderBook book, Random random, long firstOrderId, int orders) {
+        for (long orderId = firstOrderId; orderId < firstOrderId + orders; orderId++) {
+            boolean bid = random.nextBoolean();
+            book.onNewOrder(bid ? BID : ASK, bid ? 900L + random.nextInt(50) : 960L + random.nextInt(50),
+                    1L + random.nextInt(100), orderId);
+            long target = firstOrderId + random.nextInt((int) (orderId - firstOrderId + 1L));
+            switch (random.nextInt(4)) {
+                case 0 -> book.onCancelOrder(target);
+                case 1 -> book.onTrade(1L, target);
+                case 2 -> book.onReplaceOrder(900L + random.nextInt(110), 1L + random.nextInt(100), target);
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void assertSameBook(OrderBook expected, OrderBook actual) {
+        Assert.assertEquals(describe(expected.buys), describe(actual.buys));
+        Assert.assertEquals(describe(expected.sells), describe(actual.sells));
+        Assert.assertEquals(expected.orderMap.size(), actual.orderMap.size());
+        Assert.assertEquals(expected.getTopOfBookTicks(BID), actual.getTopOfBookTicks(BID));
+        Assert.assertEquals(expected.getTopOfBookTicks(ASK), actual.getTopOfBookTicks(ASK));
+    }
+
+    private List<String> describe(BookSide side) {
+        List<String> orders = new ArrayList<>();
+        for (Order order : side) {
+            orders.add(order.getOrderId() + "@" + order.getPriceTicks() + "x" + order.getQuantity());
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,115 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Close;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class BookMetricsTest {
+
+    @Test
+    public void histogramKeepsPrecision() {
+        // Every value falls in a bucket whose upper bound is within 1/32 of it
+        for (long value = 0L; value < 1_000_000L; value += value / 7 + 1) {
+            long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue(highest - value <= value / 32);
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE >>> 22));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1L; value <= 1000L; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5L);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1002L, snapshot.getCount());
+        Assert.assertEquals(0L, snapshot.getValueAtPercentile(0.0));
+        Assert.assertEquals(500L, snapshot.getP50(), 500L / 32);
+        Assert.assertEquals(990L, snapshot.getP99(), 990L / 32);
+        Assert.assertTrue(snapshot.getMax() > 1L << 40);
+    }
+
+    @Test
+    public void intervalSnapshotsAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10L);
+        histogram.record(20L);
+        Assert.assertEquals(2L, histogram.intervalSnapshot().getCount());
+
+        histogram.record(30L);
+        LatencyHistogram.Snapshot interval = histogram.intervalSnapshot();
+        Assert.assertEquals(1L, interval.getCount());
+        Assert.assertEquals(30.0, interval.getMean(), 0.0);
+        Assert.assertEquals(3L, histogram.snapshot().getCount());
+        Assert.assertEquals(20.0, histogram.snapshot().getMean(), 0.0);
+
+        histogram.reset();
+        Assert.assertEquals(0L, histogram.snapshot().getCount());
+        Assert.assertEquals(0L, histogram.intervalSnapshot().getCount());
+        Assert.assertEquals(0L, histogram.snapshot().getP99());
+        histogram.record(40L);
+        Assert.assertEquals(1L, histogram.snapshot().getCount());
+        Assert.assertEquals(40L, histogram.intervalSnapshot().getMax());
+    }
+
+    @Test
+    public void bookRecordsLatenciesPerMessageType() throws Exception {
+        // Setup
+        RingBuffer<OrderMessage> ring = new RingBuffer<>(64, OrderMessage::new, new WaitStrategy.Yielding());
+        OrderBook book = new OrderBook("VOD.L", ring, TickSize.DEFAULT, new HashOrderIndex());
+        BookMetrics metrics = book.enableMetrics();
+        Thread thread = new Thread(book);
+        thread.start();
+
+        // Stamped messages are measured from their enqueue time, unstamped ones only for processing
+        publish(ring, new OrderMessage().set(New, BID, 940L, 100L, 1L).stamp());
+        publish(ring, new OrderMessage().set(New, ASK, 950L, 100L, 2L).stamp());
+        publish(ring, new OrderMessage().set(Trade, null, 0L, 10L, 1L));
+        publish(ring, new OrderMessage().set(Cancel, null, 0L, 0L, 2L).stamp());
+        publish(ring, new OrderMessage().set(Close, null, 0L, 0L, 0L));
+        thread.join();
+
+        Assert.assertEquals(2L, metrics.getQueueWait(New).snapshot().getCount());
+        Assert.assertEquals(2L, metrics.getProcessing(New).snapshot().getCount());
+        Assert.assertEquals(0L, metrics.getQueueWait(Trade).snapshot().getCount());
+        Assert.assertEquals(1L, metrics.getProcessing(Trade).snapshot().getCount());
+        Assert.assertEquals(1L, metrics.getQueueWait(Cancel).snapshot().getCount());
+        Assert.assertEquals(1L, metrics.intervalProcessing().get(Cancel).getCount());
+        Assert.assertEquals(0L, metrics.intervalProcessing().get(Cancel).getCount());
+
+        // Exposed through JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.getObjectName();
+        metrics.register();
+        try {
+            TabularData processing = (TabularData) server.getAttribute(name, "Processing");
+            CompositeData entry = processing.get(new Object[]{"New"});
+            Assert.assertEquals(2L, ((CompositeData) entry.get("value")).get("count"));
+
+            server.invoke(name, "reset", null, null);
+            Assert.assertEquals(0L, metrics.getProcessing(New).snapshot().getCount());
+        } finally {
+            metrics.unregister();
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    private static void publish(RingBuffer<OrderMessage> ring, OrderMessage msg) {
+        long sequence = ring.next();
+        ring.get(sequence).set(msg);
+        ring.publish(sequence);
+    }
+}
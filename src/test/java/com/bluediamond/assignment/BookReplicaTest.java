@@ -0,0 +1,201 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class BookReplicaTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Level previousLevel;
+    private Path journalDirectory;
+    private Path checkpointDirectory;
+
+    @Before
+    public void setUp() {
+        // Per order logging would slow the random event streams down
+        previousLevel = LogManager.getLogger(OrderBook.class).getLevel();
+        Configurator.setLevel("com.bluediamond.assignment", Level.WARN);
+        journalDirectory = folder.getRoot().toPath().resolve("journal");
+        checkpointDirectory = folder.getRoot().toPath().resolve("checkpoints");
+    }
+
+    @After
+    public void tearDown() {
+        Configurator.setLevel("com.bluediamond.assignment", previousLevel);
+    }
+
+    @Test
+    public void followerStaysInSyncWithMatchingPrimary() throws IOException, InterruptedException {
+        // Setup, a matching primary journaling across small segments, and an off-heap follower on its own thread
+        OrderBook primary = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setMatching(true);
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        primary.setJournal(journal);
+        BookReplica replica = new BookReplica(new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 1_000), journalDirectory,
+                null);
+        Thread follower = new Thread(replica);
+        follower.start();
+
+        // Random crossing events, with the primary's checksum posted after every batch
+        Random random = new Random(5L);
+        for (int batch = 0; batch < 20; batch++) {
+            applyRandomEvents(primary, random, batch * 250L + 1L, 250);
+            replica.verifyAt(primary.getEventSequence(), primary.checksum());
+        }
+        awaitSequence(replica, primary.getEventSequence());
+        awaitVerifications(replica, 20L);
+        replica.close();
+        follower.join(10_000L);
+        journal.close();
+
+        // Every posted checksum was compared, and matched
+        Assert.assertFalse(follower.isAlive());
+        Assert.assertEquals(0L, replica.getMismatches());
+        Assert.assertEquals(20L, replica.getVerified() + replica.getMissedVerifications());
+        Assert.assertTrue(replica.getVerified() > 0L);
+        BookSnapshot snapshot = replica.getSnapshot();
+        Assert.assertEquals(primary.getTopOfBookTicks(BID), snapshot.getTopOfBookTicks(BID));
+        Assert.assertEquals(primary.getTopOfBookTicks(ASK), snapshot.getTopOfBookTicks(ASK));
+        Assert.assertEquals(primary.getBookDepth(BID), snapshot.getBookDepth(BID));
+        Assert.assertEquals(primary.getBookDepth(ASK), snapshot.getBookDepth(ASK));
+    }
+
+    @Test
+    public void divergingChecksumIsCounted() throws IOException {
+        // Setup, a follower polled from the test thread
+        OrderBook primary = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        primary.setJournal(journal);
+        BookReplica replica = new BookReplica(new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()),
+                journalDirectory, null);
+        applyRandomEvents(primary, new Random(3L), 1L, 500);
+
+        // A checksum posted for a sequence already applied is missed, a wrong one is a mismatch
+        replica.verifyAt(primary.getEventSequence(), primary.checksum() + 1L);
+        Assert.assertTrue(replica.poll() > 0);
+        Assert.assertEquals(primary.getEventSequence(), replica.getAppliedSequence());
+        Assert.assertEquals(0L, replica.getLag());
+        Assert.assertEquals(1L, replica.getMismatches());
+        primary.onNewOrder(BID, 800L, 10L, 1_000L);
+        replica.verifyAt(primary.getEventSequence() - 1L, primary.checksum());
+        replica.verifyAt(primary.getEventSequence(), primary.checksum());
+        Assert.assertEquals(1, replica.poll());
+        Assert.assertEquals(1L, replica.getMismatches());
+        Assert.assertEquals(1L, replica.getVerified());
+        Assert.assertEquals(1L, replica.getMissedVerifications());
+        replica.close();
+        journal.close();
+    }
+
+    @Test
+    public void promotedFollowerCarriesOnTheJournal() throws IOException, InterruptedException {
+        // Setup, a follower restored from the primary's checkpoint
+        OrderBook primary = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        primary.setJournal(journal);
+        Random random = new Random(9L);
+        applyRandomEvents(primary, random, 1L, 2_000);
+        try (BookCheckpointer checkpointer = new BookCheckpointer("VOD.L", TickSize.DEFAULT, journalDirectory,
+                checkpointDirectory)) {
+            checkpointer.checkpoint();
+        }
+        BookReplica replica = new BookReplica(new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()),
+                journalDirectory, checkpointDirectory);
+        Thread follower = new Thread(replica);
+        follower.start();
+        applyRandomEvents(primary, random, 2_001L, 1_000);
+
+        // The primary fails, the follower takes over with its state
+        journal.close();
+        OrderBook promoted = replica.promote();
+        follower.join(10_000L);
+        Assert.assertFalse(follower.isAlive());
+        Assert.assertEquals(primary.getEventSequence(), promoted.getEventSequence());
+        Assert.assertEquals(primary.checksum(), promoted.checksum());
+
+        // The new primary journals on from the old one's last sequence
+        journal = new EventJournal(journalDirectory, 1_000);
+        promoted.setJournal(journal);
+        promoted.onNewOrder(BID, 800L, 10L, 10_000L);
+        Assert.assertEquals(primary.getEventSequence() + 1L, promoted.getEventSequence());
+        Assert.assertEquals(primary.getEventSequence() + 2L, journal.getNextSequence());
+        journal.close();
+        replica.close();
+    }
+
+    @Test
+    public void promotedBeforeItsThreadStarts() throws IOException, InterruptedException {
+        // Setup, a journal the follower book must not be attached to mid-stream
+        OrderBook primary = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        primary.setJournal(journal);
+        applyRandomEvents(primary, new Random(7L), 1L, 100);
+        journal.close();
+        BookReplica replica = new BookReplica(new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()),
+                journalDirectory, null);
+        Thread follower = new Thread(replica);
+
+        // Promoting doesn't wait for a thread not started yet, which then finds the replica stopped
+        OrderBook promoted = replica.promote();
+        follower.start();
+        follower.join(10_000L);
+        Assert.assertFalse(follower.isAlive());
+        Assert.assertEquals(primary.checksum(), promoted.checksum());
+        replica.close();
+
+        // The journal sequence must follow on from the book's event sequence
+        EventJournal reopened = new EventJournal(journalDirectory, 1_000);
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setJournal(reopened));
+        promoted.setJournal(reopened);
+        reopened.close();
+    }
+
+    private void awaitSequence(BookReplica replica, long sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (replica.getAppliedSequence() < sequence && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        Assert.assertEquals(sequence, replica.getAppliedSequence());
+    }
+
+    private void awaitVerifications(BookReplica replica, long verifications) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (replica.getVerified() + replica.getMissedVerifications() + replica.getMismatches() < verifications
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * Adds orders and randomly amends, trades or cancels some of the resting ones.
+     */
+    private void applyRandomEvents(OrderBook book, Random random, long firstOrderId, int orders) {
+        for (long orderId = firstOrderId; orderId < firstOrderId + orders; orderId++) {
+            boolean bid = random.nextBoolean();
+            book.onNewOrder(bid ? BID : ASK, bid ? 900L + random.nextInt(70) : 940L + random.nextInt(70),
+                    1L + random.nextInt(100), orderId);
+            long target = firstOrderId + random.nextInt((int) (orderId - firstOrderId + 1L));
+            switch (random.nextInt(4)) {
+                case 0 -> book.onCancelOrder(target);
+                case 1 -> book.onTrade(1L, target);
+                case 2 -> book.onReplaceOrder(900L + random.nextInt(110), 1L + random.nextInt(100), target);
+                default -> {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Close;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+
+public class BookSnapshotTest {
+
+    @Test
+    public void snapshotMatchesBook() {
+        // Setup
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        BookSnapshot snapshot = book.enableSnapshot();
+        Assert.assertEquals(0L, snapshot.getVersion());
+
+        // Add, amend, trade and cancel across several levels
+        book.onNewOrder(BID, 940L, 100L, 1L);
+        book.onNewOrder(BID, 940L, 50L, 2L);
+        book.onNewOrder(BID, 930L, 70L, 3L);
+        book.onNewOrder(ASK, 950L, 30L, 4L);
+        book.onNewOrder(ASK, 960L, 20L, 5L);
+        book.publishSnapshot();
+        Assert.assertEquals(5L, snapshot.getVersion());
+        Assert.assertEquals(2L, snapshot.getSizeForPriceLevel(BID, 940L));
+        Assert.assertEquals(150L, snapshot.getQuantityForPriceLevel(BID, 940L));
+        Assert.assertEquals(2L, snapshot.getBookDepth(BID));
+        Assert.assertEquals(940L, snapshot.getTopOfBookTicks(BID));
+        Assert.assertEquals(new BigDecimal("9.50"), snapshot.getTopOfBook(ASK));
+        Assert.assertEquals(10L, snapshot.getSpreadTicks());
+
+        // Changes are only visible once published
+        book.onTrade(30L, 4L);
+        book.onReplaceOrder(930L, 40L, 3L);
+        book.onCancelOrder(1L);
+        Assert.assertEquals(950L, snapshot.getTopOfBookTicks(ASK));
+        book.publishSnapshot();
+        Assert.assertEquals(8L, snapshot.getVersion());
+        Assert.assertEquals(960L, snapshot.getTopOfBookTicks(ASK));
+        Assert.assertEquals(1L, snapshot.getBookDepth(ASK));
+        Assert.assertEquals(1L, snapshot.getSizeForPriceLevel(BID, 940L));
+        Assert.assertEquals(50L, snapshot.getQuantityForPriceLevel(BID, 940L));
+        Assert.assertEquals(40L, snapshot.getQuantityForPriceLevel(BID, 930L));
+        Assert.assertEquals(0L, snapshot.getSizeForPriceLevel(ASK, 950L));
+
+        // Rejected events don't change the version
+        book.onCancelOrder(1L);
+        book.publishSnapshot();
+        Assert.assertEquals(8L, snapshot.getVersion());
+
+        // Top of both sides in one consistent read
+        long[] bidPrices = new long[3];
+        long[] bidQuantities = new long[3];
+        long[] askPrices = new long[3];
+        long[] askQuantities = new long[3];
+        Assert.assertEquals(8L, snapshot.getDepth(bidPrices, bidQuantities, askPrices, askQuantities));
+        Assert.assertArrayEquals(new long[]{940L, 930L, 0L}, bidPrices);
+        Assert.assertArrayEquals(new long[]{50L, 40L, 0L}, bidQuantities);
+        Assert.assertArrayEquals(new long[]{960L, 0L, 0L}, askPrices);
+        Assert.assertArrayEquals(new long[]{20L, 0L, 0L}, askQuantities);
+        Assert.assertEquals(1, snapshot.getDepth(BID, new long[1], new long[1]));
+    }
+
+    @Test
+    public void queueThatNeverRunsDryStillPublishes() throws InterruptedException {
+        // Setup, a queue that waits for messages rather than ever reporting itself empty
+        LinkedBlockingQueue<OrderMessage> queue = new LinkedBlockingQueue<>() {
+            @Override
+            public OrderMessage poll() {
+                try {
+                    return take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        };
+        OrderBook book = new OrderBook("VOD.L", queue, TickSize.DEFAULT, new HashOrderIndex());
+        BookSnapshot snapshot = book.enableSnapshot();
+        Thread thread = new Thread(book);
+        thread.start();
+
+        // The snapshot follows the book every SNAPSHOT_BATCH messages
+        int orders = 3 * OrderBook.SNAPSHOT_BATCH + 10;
+        for (long orderId = 1L; orderId <= orders; orderId++) {
+            queue.add(new OrderMessage().set(New, BID, 900L + orderId % 20, 10L, orderId));
+        }
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (snapshot.getVersion() < 3L * OrderBook.SNAPSHOT_BATCH && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        Assert.assertEquals(3L * OrderBook.SNAPSHOT_BATCH, snapshot.getVersion());
+        queue.add(new OrderMessage().set(Close, null, 0L, 0L, 0L));
+        thread.join(10_000L);
+        Assert.assertEquals(orders, snapshot.getVersion());
+    }
+
+    @Test
+    public void snapshotGrowsWithDepth() {
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        BookSnapshot snapshot = book.enableSnapshot();
+        for (long orderId = 1L; orderId <= 200L; orderId++) {
+            book.onNewOrder(BID, orderId, 10L, orderId);
+        }
+        book.publishSnapshot();
+        Assert.assertEquals(200L, snapshot.getBookDepth(BID));
+        Assert.assertEquals(200L, snapshot.getTopOfBookTicks(BID));
+        Assert.assertEquals(10L, snapshot.getQuantityForPriceLevel(BID, 1L));
+        Assert.assertEquals(0L, snapshot.getTopOfBookTicks(ASK));
+    }
+
+    @Test
+    public void readersNeverSeeCrossedBook() throws InterruptedException {
+        // Setup, a book applying a ring on its own thread with a one tick spread
+        RingBuffer<OrderMessage> ring = new RingBuffer<>(64, OrderMessage::new, new WaitStrategy.Yielding());
+        OrderBook book = new OrderBook("VOD.L", ring, TickSize.DEFAULT, new HashOrderIndex());
+        BookSnapshot snapshot = book.enableSnapshot();
+        publish(ring, New, BID, 1000L, 10L, 1L);
+        publish(ring, New, ASK, 1001L, 10L, 2L);
+        Thread process = new Thread(book);
+        process.start();
+
+        // Readers check every snapshot against the book invariants while the writer runs
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                long lastVersion = -1L;
+                while (process.isAlive() && failure.get() == null) {
+                    long version = snapshot.getVersion();
+                    long spread = snapshot.getSpreadTicks();
+                    if (version < lastVersion) {
+                        failure.set("Version went back from " + lastVersion + " to " + version);
+                    } else if (version >= 2L && spread != 1L && spread != 2L) {
+                        failure.set("Inconsistent spread " + spread + " at version " + version);
+                    }
+                    lastVersion = version;
+                }
+            });
+            readers[i].start();
+        }
+
+        // Move the book up one tick at a time without ever crossing it, so the spread is always 1 or 2 ticks
+        long bidId = 1L;
+        long askId = 2L;
+        for (long price = 1000L; price < 11_000L; price++) {
+            publish(ring, New, ASK, price + 2L, 10L, askId + 2L);
+            publish(ring, Cancel, null, 0L, 0L, askId);
+            askId += 2L;
+            publish(ring, New, BID, price + 1L, 10L, bidId + 2L);
+            publish(ring, Cancel, null, 0L, 0L, bidId);
+            bidId += 2L;
+        }
+        publish(ring, Close, null, 0L, 0L, 0L);
+        process.join(10_000L);
+        for (Thread reader : readers) {
+            reader.join(10_000L);
+        }
+
+        Assert.assertNull(failure.get(), failure.get());
+        Assert.assertEquals(book.getEventSequence(), snapshot.getVersion());
+        Assert.assertEquals(11_000L, snapshot.getTopOfBookTicks(BID));
+        Assert.assertEquals(11_001L, snapshot.getTopOfBookTicks(ASK));
+        Assert.assertEquals(1L, snapshot.getBookDepth(BID));
+    }
+
+    private void publish(RingBuffer<OrderMessage> ring, OrderMessage.MessageType type, Level2View.Side side,
+                         long priceTicks, long quantity, long orderId) {
+        long sequence = ring.next();
+        ring.get(sequence).set(type, side, priceTicks, quantity, orderId);
+        ring.publish(sequence);
+    }
+}
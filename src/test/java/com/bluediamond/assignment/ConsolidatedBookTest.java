@@ -0,0 +1,172 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Close;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+
+public class ConsolidatedBookTest {
+    private static final int VENUES = 3;
+    private Level previousLevel;
+
+    @Before
+    public void setUp() {
+        // Per order logging would slow the random event streams down
+        previousLevel = LogManager.getLogger(OrderBook.class).getLevel();
+        Configurator.setLevel("com.bluediamond.assignment", Level.WARN);
+    }
+
+    @After
+    public void tearDown() {
+        Configurator.setLevel("com.bluediamond.assignment", previousLevel);
+    }
+
+    @Test
+    public void mergesVenueLevelsWithAttribution() {
+        // Setup, a venue with orders before it joins and one joining empty
+        OrderBook lse = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        OrderBook chix = new OrderBook("VOD.CHI", TickSize.DEFAULT, new HashOrderIndex());
+        lse.onNewOrder(BID, 940L, 100L, 1L);
+        lse.onNewOrder(ASK, 950L, 30L, 2L);
+        ConsolidatedBook book = new ConsolidatedBook("VOD", TickSize.DEFAULT, 2);
+        Assert.assertEquals(0, book.addVenue(lse));
+        Assert.assertEquals(1, book.addVenue(chix));
+
+        chix.onNewOrder(BID, 940L, 50L, 1L);
+        chix.onNewOrder(BID, 941L, 20L, 2L);
+        chix.onNewOrder(ASK, 951L, 10L, 3L);
+        Assert.assertEquals(0L, book.getBookDepth(BID));
+        Assert.assertTrue(book.poll() > 0);
+        Assert.assertEquals(941L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(new BigDecimal("9.50"), book.getTopOfBook(ASK));
+        Assert.assertEquals(2L, book.getBookDepth(BID));
+        Assert.assertEquals(2L, book.getSizeForPriceLevel(BID, 940L));
+        Assert.assertEquals(150L, book.getQuantityForPriceLevel(BID, 940L));
+        Assert.assertEquals(100L, book.getVenueQuantity(0, BID, 940L));
+        Assert.assertEquals(50L, book.getVenueQuantity(1, BID, 940L));
+        Assert.assertEquals(1L, book.getVenueSizeForPriceLevel(1, BID, 941L));
+        Assert.assertEquals(0L, book.getVenueSizeForPriceLevel(0, BID, 941L));
+        long[] venueQuantities = new long[2];
+        Assert.assertEquals(941L, book.getTopOfBookByVenue(BID, venueQuantities));
+        Assert.assertArrayEquals(new long[]{0L, 20L}, venueQuantities);
+
+        // A level stays while any venue is on it
+        chix.onCancelOrder(2L);
+        lse.onTrade(30L, 2L);
+        book.poll();
+        Assert.assertEquals(940L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(951L, book.getTopOfBookTicks(ASK));
+        lse.onCancelOrder(1L);
+        book.poll();
+        Assert.assertEquals(50L, book.getQuantityForPriceLevel(BID, 940L));
+        Assert.assertEquals(1L, book.getBookDepth(BID));
+        Assert.assertEquals(chix.getEventSequence(), book.getVenueSequence(1));
+        Assert.assertEquals("VOD.CHI", book.getVenueId(1));
+
+        lse.onNewOrder(BID, 939L, 10L, 3L);
+        Assert.assertEquals(1, book.poll());
+        Assert.assertEquals(0, book.poll());
+        Assert.assertEquals(2L, book.getBookDepth(BID));
+        Assert.assertEquals(10L, book.getVenueQuantity(0, BID, 939L));
+
+        // Venues share the tick size of the consolidated book
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new ConsolidatedBook("VOD", TickSize.ofScale(3), 1).addVenue(lse));
+    }
+
+    @Test
+    public void tracksVenuesRunningOnTheirOwnThreads() throws InterruptedException {
+        // Setup, each venue book on its own thread, and the consolidated book on another
+        ConsolidatedBook book = new ConsolidatedBook("VOD", TickSize.DEFAULT, VENUES);
+        OrderBook[] venues = new OrderBook[VENUES];
+        Thread[] threads = new Thread[VENUES];
+        List<RingBuffer<OrderMessage>> rings = new ArrayList<>();
+        for (int venue = 0; venue < VENUES; venue++) {
+            rings.add(new RingBuffer<>(1024, OrderMessage::new, new WaitStrategy.Yielding()));
+            venues[venue] = new OrderBook("VOD." + venue, rings.get(venue), TickSize.DEFAULT, new HashOrderIndex());
+            book.addVenue(venues[venue]);
+            threads[venue] = new Thread(venues[venue]);
+        }
+        Thread consolidating = new Thread(book);
+        consolidating.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        // Random events spread over the venues, with overlapping prices
+        Random random = new Random(17L);
+        for (long orderId = 1L; orderId <= 30_000L; orderId++) {
+            RingBuffer<OrderMessage> ring = rings.get(random.nextInt(VENUES));
+            long sequence = ring.next();
+            OrderMessage msg = ring.get(sequence);
+            if (random.nextInt(3) == 0) {
+                msg.set(OrderMessage.MessageType.Cancel, null, 0L, 0L, 1L + random.nextInt((int) orderId));
+            } else {
+                boolean bid = random.nextBoolean();
+                msg.set(New, bid ? BID : ASK, bid ? 900L + random.nextInt(50) : 951L + random.nextInt(50),
+                        1L + random.nextInt(100), orderId);
+            }
+            ring.publish(sequence);
+        }
+        for (int venue = 0; venue < VENUES; venue++) {
+            RingBuffer<OrderMessage> ring = rings.get(venue);
+            long sequence = ring.next();
+            ring.get(sequence).set(Close, null, 0L, 0L, 0L);
+            ring.publish(sequence);
+            threads[venue].join(10_000L);
+            Assert.assertFalse(threads[venue].isAlive());
+        }
+        book.close();
+        consolidating.join(10_000L);
+        Assert.assertFalse(consolidating.isAlive());
+
+        // The consolidated ladder matches the venue books merged afterwards
+        for (int venue = 0; venue < VENUES; venue++) {
+            Assert.assertTrue(book.getVenueSequence(venue) > 0L);
+            Assert.assertTrue(book.getVenueSequence(venue) <= venues[venue].getEventSequence());
+        }
+        for (Side side : Side.values()) {
+            TreeMap<Long, Long> expected = new TreeMap<>();
+            for (OrderBook venue : venues) {
+                long[] prices = new long[100];
+                long[] quantities = new long[100];
+                int depth = venue.getDepth(side, prices, quantities);
+                for (int i = 0; i < depth; i++) {
+                    expected.merge(prices[i], quantities[i], Long::sum);
+                }
+            }
+            long[] prices = new long[100];
+            long[] quantities = new long[100];
+            int depth = book.getDepth(side, prices, quantities);
+            Map<Long, Long> actual = new TreeMap<>();
+            for (int i = 0; i < depth; i++) {
+                actual.put(prices[i], quantities[i]);
+            }
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(expected.size(), book.getBookDepth(side));
+            long best = side == BID ? expected.lastKey() : expected.firstKey();
+            Assert.assertEquals(best, book.getTopOfBookTicks(side));
+            long orders = 0L;
+            for (OrderBook venue : venues) {
+                orders += venue.getSizeForPriceLevel(side, best);
+            }
+            Assert.assertEquals(orders, book.getSizeForPriceLevel(side, best));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Amend;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class EventJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bookJournalsAcceptedEvents() throws IOException {
+        // Setup
+        Path directory = folder.getRoot().toPath().resolve("VOD.L");
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        EventJournal journal = new EventJournal(directory, 4);
+        book.setJournal(journal);
+
+        // Accepted events, with rejected ones in between
+        book.onNewOrder(BID, 940L, 100L, 1L);
+        book.onNewOrder(BID, 940L, 100L, 1L);
+        book.onNewOrder(ASK, 950L, 50L, 2L);
+        book.onReplaceOrder(945L, 80L, 1L);
+        book.onTrade(500L, 2L);
+        book.onTrade(20L, 2L);
+        book.onCancelOrder(3L);
+        book.onCancelOrder(2L);
+        journal.close();
+        Assert.assertEquals(6L, journal.getNextSequence());
+
+        // Every accepted event is read back in order, with its sequence
+        try (JournalReader reader = new JournalReader(directory)) {
+            OrderMessage msg = new OrderMessage();
+            assertRecord(reader, msg, 1L, New, BID, 940L, 100L, 1L);
+            assertRecord(reader, msg, 2L, New, ASK, 950L, 50L, 2L);
+            assertRecord(reader, msg, 3L, Amend, BID, 945L, 80L, 1L);
+            assertRecord(reader, msg, 4L, Trade, ASK, 950L, 20L, 2L);
+            assertRecord(reader, msg, 5L, Cancel, ASK, 950L, 30L, 2L);
+            Assert.assertFalse(reader.read(msg));
+        }
+    }
+
+    @Test
+    public void journalRollsSegmentsAndResumes() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        EventJournal journal = new EventJournal(directory, 3);
+        for (long orderId = 1L; orderId <= 7L; orderId++) {
+            Assert.assertEquals(orderId, journal.append(New, BID, 900L + orderId, 10L, orderId));
+        }
+        journal.close();
+        Assert.assertEquals(3, EventJournal.listSegments(directory).size());
+
+        // Reopening carries on after the last record
+        journal = new EventJournal(directory, 3);
+        Assert.assertEquals(8L, journal.getNextSequence());
+        Assert.assertEquals(8L, journal.append(Cancel, BID, 901L, 10L, 1L));
+        journal.close();
+
+        // A reader can start in the middle of the journal
+        try (JournalReader reader = new JournalReader(directory, 5L)) {
+            OrderMessage msg = new OrderMessage();
+            assertRecord(reader, msg, 5L, New, BID, 905L, 10L, 5L);
+            assertRecord(reader, msg, 6L, New, BID, 906L, 10L, 6L);
+            assertRecord(reader, msg, 7L, New, BID, 907L, 10L, 7L);
+            assertRecord(reader, msg, 8L, Cancel, BID, 901L, 10L, 1L);
+            Assert.assertFalse(reader.read(msg));
+        }
+    }
+
+    @Test
+    public void readerTailsJournalWhileWritten() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int events = 10_000;
+        EventJournal journal = new EventJournal(directory, 1_000);
+        Thread writer = new Thread(() -> {
+            for (long orderId = 1L; orderId <= events; orderId++) {
+                journal.append(New, orderId % 2 == 0 ? BID : ASK, 1000L + orderId, orderId, orderId);
+            }
+        });
+        writer.start();
+
+        try (JournalReader reader = new JournalReader(directory)) {
+            OrderMessage msg = new OrderMessage();
+            long expected = 1L;
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (expected <= events && System.nanoTime() < deadline) {
+                if (reader.read(msg)) {
+                    Order order = msg.getOrderData();
+                    Assert.assertEquals(expected, order.getOrderId());
+                    Assert.assertEquals(expected, order.getQuantity());
+                    Assert.assertEquals(1000L + expected, order.getPriceTicks());
+                    expected++;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            Assert.assertEquals(events + 1L, expected);
+        }
+        writer.join();
+        journal.close();
+    }
+
+    private void assertRecord(JournalReader reader, OrderMessage msg, long sequence, OrderMessage.MessageType type,
+                              Level2View.Side side, long priceTicks, long quantity, long orderId) throws IOException {
+        Assert.assertEquals(sequence, reader.getNextSequence());
+        Assert.assertTrue(reader.read(msg));
+        Order order = msg.getOrderData();
+        Assert.assertEquals(type, msg.getMsgType());
+        Assert.assertEquals(side, order.getSide());
+        Assert.assertEquals(priceTicks, order.getPriceTicks());
+        Assert.assertEquals(quantity, order.getQuantity());
+        Assert.assertEquals(orderId, order.getOrderId());
+    }
+}
@@ -0,0 +1,71 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class EventLogTest {
+
+    @Test
+    public void bookEventsAndRejectionsAreRecorded() {
+        EventLog eventLog = new EventLog("VOD.L", 1024, 3);
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setEventLog(eventLog);
+        book.onNewOrder(BID, 940L, 10L, 1L);
+        book.onNewOrder(BID, 941L, 10L, 2L);
+        book.onNewOrder(ASK, 950L, 10L, 3L);
+        book.onReplaceOrder(942L, 5L, 1L);
+        book.onTrade(10L, 3L);
+        book.onCancelOrder(2L);
+        Assert.assertEquals(6, eventLog.drain());
+
+        // Rejections of each reason are rate limited, the others being counted as suppressed
+        for (long orderId = 10L; orderId < 20L; orderId++) {
+            book.onCancelOrder(orderId);
+        }
+        book.onNewOrder(BID, 0L, 10L, 4L);
+        book.onNewOrder(BID, 940L, 0L, 5L);
+        Assert.assertEquals(5, eventLog.drain());
+        Assert.assertEquals(0, eventLog.drain());
+        Assert.assertEquals(0L, eventLog.getDropped());
+    }
+
+    @Test
+    public void fullRingDropsRecordsWithoutBlocking() {
+        EventLog eventLog = new EventLog("VOD.L", 4, 100);
+        OrderBook book = new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 16).setEventLog(eventLog);
+        for (long orderId = 1L; orderId <= 10L; orderId++) {
+            book.onNewOrder(BID, 940L, 10L, orderId);
+        }
+        Assert.assertEquals(10L, book.getSizeForPriceLevel(BID, 940L));
+        Assert.assertEquals(6L, eventLog.getDropped());
+        Assert.assertEquals(4, eventLog.drain());
+
+        // Drained records free the ring up again
+        book.onCancelOrder(1L);
+        Assert.assertEquals(1, eventLog.drain());
+        Assert.assertEquals(6L, eventLog.getDropped());
+    }
+
+    @Test
+    public void drainerStopsOnceClosed() throws InterruptedException {
+        EventLog eventLog = new EventLog("VOD.L", 64, 100);
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setEventLog(eventLog);
+        Thread drainer = new Thread(eventLog);
+        drainer.start();
+        for (long orderId = 1L; orderId <= 1_000L; orderId++) {
+            book.onNewOrder(orderId % 2 == 0 ? BID : ASK, orderId % 2 == 0 ? 940L : 950L, 10L, orderId);
+        }
+        eventLog.close();
+        drainer.join(10_000L);
+
+        Assert.assertFalse(drainer.isAlive());
+        Assert.assertEquals(0, eventLog.drain());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new EventLog("VOD.L", 100, 10);
+    }
+}
@@ -0,0 +1,171 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class FeedHandlerTest {
+    private static final long TIMEOUT_NANOS = 5_000_000_000L;
+
+    @Test
+    public void udpPacketsWithGapsAndDuplicates() throws Exception {
+        // Setup
+        OrderBook vod = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        OrderBook bp = new OrderBook("BP.L", TickSize.DEFAULT, new HashOrderIndex());
+        List<String> gaps = new ArrayList<>();
+        try (FeedHandler handler = new FeedHandler();
+             DatagramChannel publisher = DatagramChannel.open()) {
+            handler.register(1, vod).register(2, bp)
+                    .setGapListener((feed, expected, received) -> gaps.add(expected + "-" + received));
+            FeedHandler.Feed feed = handler.openUdp("udp",
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketAddress target = feed.getLocalAddress();
+            FeedPacketWriter writer = new FeedPacketWriter();
+            ByteBuffer packet = ByteBuffer.allocate(1024);
+
+            // Packet 1: messages 1-3 for two instruments
+            writer.begin(packet, 0).newOrder(1, BID, 940L, 100L, 1L).newOrder(2, ASK, 500L, 10L, 1L)
+                    .newOrder(1, ASK, 950L, 30L, 2L);
+            send(publisher, packet, writer.finish(3), target);
+            awaitPackets(handler, 1);
+            Assert.assertEquals(940L, vod.getTopOfBookTicks(BID));
+            Assert.assertEquals(500L, bp.getTopOfBookTicks(ASK));
+
+            // The same packet again is a duplicate
+            send(publisher, packet, FeedPacketWriter.lengthOf(packet, 0), target);
+            awaitPackets(handler, 2);
+            Assert.assertEquals(1, vod.getSizeForPriceLevel(BID, 940L));
+
+            // Messages 4-5 are lost, 6-7 arrive
+            writer.setNextSequence(6L);
+            writer.begin(packet, 0).trade(1, 10L, 2L).cancel(2, 1L);
+            send(publisher, packet, writer.finish(2), target);
+            awaitPackets(handler, 3);
+            Assert.assertEquals(List.of("4-6"), gaps);
+            Assert.assertEquals(8L, feed.getExpectedSequence());
+            Assert.assertEquals(0L, bp.getBookDepth(ASK));
+
+            FeedHandler.Statistics statistics = handler.getStatistics();
+            Assert.assertEquals(3L, statistics.getPackets());
+            Assert.assertEquals(5L, statistics.getMessages());
+            Assert.assertEquals(1L, statistics.getGaps());
+            Assert.assertEquals(1L, statistics.getDuplicates());
+            Assert.assertEquals(2L, statistics.getDecodeLatency().getCount());
+            Assert.assertTrue(statistics.getPacketsPerSecond() > 0.0);
+        }
+        Assert.assertEquals(20L, vod.sells.getLevel(950L).getQuantity());
+    }
+
+    @Test
+    public void malformedDatagramIsDroppedAndHandlerCarriesOn() throws Exception {
+        // Setup
+        OrderBook vod = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        List<String> gaps = new ArrayList<>();
+        try (FeedHandler handler = new FeedHandler();
+             DatagramChannel publisher = DatagramChannel.open()) {
+            handler.register(1, vod).setGapListener((feed, expected, received) -> gaps.add(expected + "-" + received));
+            FeedHandler.Feed feed = handler.openUdp("udp",
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketAddress target = feed.getLocalAddress();
+            FeedPacketWriter writer = new FeedPacketWriter();
+            ByteBuffer packet = ByteBuffer.allocate(1024);
+
+            // Messages 1-2, the second one from a foreign schema
+            writer.begin(packet, 0).newOrder(1, BID, 940L, 100L, 1L).newOrder(1, BID, 941L, 100L, 2L);
+            int length = writer.finish(2);
+            int second = FeedPacketWriter.HEADER_LENGTH + WireFormat.encodedLengthOf(OrderMessage.MessageType.New);
+            packet.putShort(second + WireFormat.SCHEMA_ID_OFFSET, (short) 0x7777);
+            send(publisher, packet, length, target);
+            awaitPackets(handler, 1);
+            Assert.assertEquals(1L, handler.getStatistics().getMalformed());
+            Assert.assertEquals(2L, feed.getExpectedSequence());
+            Assert.assertEquals(940L, vod.getTopOfBookTicks(BID));
+
+            // The next valid packet is applied, the dropped message being reported as a gap
+            writer.begin(packet, 0).newOrder(1, ASK, 950L, 30L, 3L);
+            send(publisher, packet, writer.finish(1), target);
+            awaitPackets(handler, 2);
+            Assert.assertEquals(List.of("2-3"), gaps);
+            Assert.assertEquals(950L, vod.getTopOfBookTicks(ASK));
+            Assert.assertEquals(4L, feed.getExpectedSequence());
+            Assert.assertEquals(2L, handler.getStatistics().getMessages());
+        }
+    }
+
+    @Test
+    public void tcpFramesThroughManager() throws Exception {
+        // Setup
+        OrderBookManager manager = new OrderBookManager(1);
+        OrderBook book = manager.addBook("VOD.L", TickSize.DEFAULT);
+        manager.start();
+        FeedHandler handler = new FeedHandler();
+        Thread thread = new Thread(handler, "feed");
+        try {
+            try (handler;
+                 ServerSocketChannel server = ServerSocketChannel.open()
+                         .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                handler.register(3, manager, "VOD.L");
+                handler.connectTcp("tcp", (InetSocketAddress) server.getLocalAddress());
+                thread.start();
+
+                try (SocketChannel publisher = server.accept()) {
+                    // A hundred packets back to back, written in chunks that split them
+                    FeedPacketWriter writer = new FeedPacketWriter();
+                    ByteBuffer stream = ByteBuffer.allocate(1 << 16);
+                    for (long orderId = 1L; orderId <= 100L; orderId++) {
+                        int start = stream.position();
+                        writer.begin(stream, start).newOrder(3, BID, 900L + orderId % 10, 10L, orderId)
+                                .amend(3, 900L + orderId % 10, 5L, orderId);
+                        stream.position(start + writer.finish(2));
+                    }
+                    stream.flip();
+                    while (stream.hasRemaining()) {
+                        ByteBuffer chunk = stream.slice().limit(Math.min(stream.remaining(), 77));
+                        while (chunk.hasRemaining()) {
+                            publisher.write(chunk);
+                        }
+                        stream.position(stream.position() + chunk.position());
+                    }
+
+                    long deadline = System.nanoTime() + TIMEOUT_NANOS;
+                    while (manager.getBookMessages("VOD.L") < 200L && System.nanoTime() < deadline) {
+                        Thread.sleep(1L);
+                    }
+                }
+                Assert.assertEquals(200L, manager.getBookMessages("VOD.L"));
+                Assert.assertEquals(100L, handler.getStatistics().getPackets());
+                Assert.assertEquals(0L, handler.getStatistics().getGaps());
+            }
+            thread.join();
+        } finally {
+            manager.close();
+        }
+        Assert.assertEquals(10L, book.getBookDepth(BID));
+        Assert.assertEquals(50L, book.buys.getLevel(909L).getQuantity());
+    }
+
+    private static void send(DatagramChannel publisher, ByteBuffer packet, int length, SocketAddress target)
+            throws Exception {
+        publisher.send(packet.duplicate().position(0).limit(length), target);
+    }
+
+    private static void awaitPackets(FeedHandler handler, long packets) throws Exception {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (handler.getStatistics().getPackets() < packets && System.nanoTime() < deadline) {
+            handler.poll();
+        }
+        Assert.assertEquals(packets, handler.getStatistics().getPackets());
+    }
+}
@@ -0,0 +1,81 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class FeedReplayTest {
+    private static final List<String> FEED = List.of(
+            "type,side,price,quantity,orderId",
+            "New,BID,9.40,100,1",
+            "New,BID,9.4,50,2",
+            "New,ASK,9.50,30,3",
+            "New,ASK,9.505,30,4",
+            "Amend,,9.45,80,1",
+            "Trade,,,10,3",
+            "Cancel,,,,2",
+            "New,ASK,9.60,20,5",
+            "");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayCsvFeed() throws IOException {
+        Path csv = writeFeed();
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        FeedReplay.Report report;
+        try (FeedSource source = FeedReplay.open(csv, TickSize.DEFAULT)) {
+            report = FeedReplay.replay(source, book);
+        }
+        Assert.assertEquals(8L, report.getMessages());
+        assertFinalBook(book);
+    }
+
+    @Test
+    public void convertAndReplayBinaryFeed() throws IOException {
+        Path csv = writeFeed();
+        Path binary = folder.getRoot().toPath().resolve("feed.bin");
+        Assert.assertEquals(8L, FeedReplay.convert(csv, binary, TickSize.DEFAULT));
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        try (FeedSource source = FeedReplay.open(binary, TickSize.DEFAULT)) {
+            Assert.assertEquals(8L, ((BinaryFeed) source).getCount());
+            Assert.assertEquals(8L, FeedReplay.replay(source, book).getMessages());
+        }
+        assertFinalBook(book);
+
+        // Converting back gives the same messages, with normalised prices
+        Path roundTrip = folder.getRoot().toPath().resolve("round-trip.csv");
+        Assert.assertEquals(8L, FeedReplay.convert(binary, roundTrip, TickSize.DEFAULT));
+        List<String> lines = Files.readAllLines(roundTrip);
+        Assert.assertEquals("New,BID,9.40,50,2", lines.get(2));
+        Assert.assertEquals("New,ASK,,30,4", lines.get(4));
+        Assert.assertEquals("Cancel,,,0,2", lines.get(7));
+    }
+
+    private Path writeFeed() throws IOException {
+        Path csv = folder.getRoot().toPath().resolve("feed.csv");
+        Files.write(csv, FEED);
+        return csv;
+    }
+
+    private void assertFinalBook(OrderBook book) {
+        // Order 4 is off the tick grid and rejected
+        Assert.assertEquals(new BigDecimal("9.45"), book.getTopOfBook(BID));
+        Assert.assertEquals(1L, book.getBookDepth(BID));
+        Assert.assertEquals(new BigDecimal("9.50"), book.getTopOfBook(ASK));
+        Assert.assertEquals(2L, book.getBookDepth(ASK));
+        Assert.assertEquals(20L, book.orderMap.get(3L).getQuantity());
+        Assert.assertNull(book.orderMap.get(4L));
+    }
+}
@@ -0,0 +1,217 @@
+package com.bluediamond.assignment;
+
+import com.bluediamond.assignment.Level2View.Side;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class Level2ListenerTest {
+
+    /**
+     * Records updates as "SIDE price quantity count @sequence" strings, and images between brackets.
+     */
+    private static class RecordingListener implements Level2Listener {
+        final List<String> updates = new ArrayList<>();
+
+        @Override
+        public void onLevelUpdate(Side side, long priceTicks, long quantity, long orderCount, long sequence) {
+            updates.add(side + " " + priceTicks + " " + quantity + " " + orderCount + " @" + sequence);
+        }
+
+        @Override
+        public void onImageBegin(long sequence) {
+            updates.add("[ @" + sequence);
+        }
+
+        @Override
+        public void onImageEnd(long sequence) {
+            updates.add("] @" + sequence);
+        }
+    }
+
+    @Test
+    public void everyAcceptedEventUpdatesItsLevels() {
+        // Setup
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        book.onNewOrder(BID, 940L, 100L, 1L);
+        book.onNewOrder(ASK, 950L, 30L, 2L);
+        RecordingListener listener = new RecordingListener();
+
+        // Joining late starts with an image
+        book.addLevel2Listener(listener);
+        Assert.assertEquals(List.of("[ @2", "BID 940 100 1 @2", "ASK 950 30 1 @2", "] @2"), listener.updates);
+        listener.updates.clear();
+
+        book.onNewOrder(BID, 940L, 50L, 3L);
+        book.onReplaceOrder(930L, 40L, 1L);
+        book.onReplaceOrder(930L, 20L, 1L);
+        book.onTrade(10L, 2L);
+        book.onTrade(20L, 2L);
+        book.onCancelOrder(3L);
+        // Rejected events don't update anything
+        book.onCancelOrder(3L);
+        book.onTrade(100L, 1L);
+
+        Assert.assertEquals(List.of(
+                "BID 940 150 2 @3",
+                "BID 940 50 1 @4",
+                "BID 930 40 1 @4",
+                "BID 930 20 1 @5",
+                "ASK 950 20 1 @6",
+                "ASK 950 0 0 @7",
+                "BID 940 0 0 @8"), listener.updates);
+
+        Assert.assertTrue(book.removeLevel2Listener(listener));
+        book.onNewOrder(BID, 940L, 50L, 4L);
+        Assert.assertEquals(7, listener.updates.size());
+    }
+
+    @Test
+    public void conflatesUpdatesPerLevel() {
+        // Setup
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        ConflatingLevel2Listener conflater = new ConflatingLevel2Listener();
+        book.addLevel2Listener(conflater);
+        RecordingListener consumer = new RecordingListener();
+
+        // Many changes to few levels arrive as one update per level, in the order the levels first changed
+        for (long orderId = 1L; orderId <= 100L; orderId++) {
+            book.onNewOrder(BID, 940L + orderId % 2, 10L, orderId);
+        }
+        book.onNewOrder(ASK, 950L, 5L, 101L);
+        book.onCancelOrder(101L);
+        Assert.assertEquals(3, conflater.pending());
+        Assert.assertEquals(3, conflater.poll(consumer));
+        Assert.assertEquals(List.of("BID 941 500 50 @99", "BID 940 500 50 @100", "ASK 950 0 0 @102"),
+                consumer.updates);
+        Assert.assertEquals(0, conflater.poll(consumer));
+
+        // A consumer joining late asks the listener for an image, empty levels being left out
+        consumer.updates.clear();
+        book.onNewOrder(ASK, 952L, 5L, 102L);
+        book.onNewOrder(ASK, 951L, 5L, 103L);
+        Assert.assertEquals(4, conflater.pollImage(consumer));
+        Assert.assertEquals(List.of("[ @104", "BID 941 500 50 @99", "BID 940 500 50 @100", "ASK 951 5 1 @104",
+                "ASK 952 5 1 @103", "] @104"), consumer.updates);
+        Assert.assertEquals(0, conflater.pending());
+    }
+
+    @Test
+    public void imageFromBookSupersedesPendingUpdates() {
+        // Setup
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        ConflatingLevel2Listener conflater = new ConflatingLevel2Listener();
+        book.addLevel2Listener(conflater);
+        RecordingListener consumer = new RecordingListener();
+        book.onNewOrder(BID, 940L, 10L, 1L);
+        book.onNewOrder(ASK, 950L, 10L, 2L);
+        Assert.assertEquals(2, conflater.poll(consumer));
+        consumer.updates.clear();
+
+        // Levels changed before the image are replaced by it, levels gone before it are emptied
+        book.onNewOrder(BID, 940L, 5L, 3L);
+        book.onCancelOrder(2L);
+        book.onNewOrder(BID, 941L, 5L, 4L);
+        book.publishImage(conflater);
+        book.onCancelOrder(4L);
+        Assert.assertEquals(2, conflater.pending());
+        Assert.assertEquals(3, conflater.poll(consumer));
+        Assert.assertEquals(List.of("BID 940 15 2 @5", "ASK 950 0 0 @5", "BID 941 0 0 @6"), consumer.updates);
+    }
+
+    @Test
+    public void pollDuringImageWaitsForItsEnd() throws InterruptedException {
+        // Setup, the consumer knows of four levels
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        ConflatingLevel2Listener conflater = new ConflatingLevel2Listener();
+        book.addLevel2Listener(conflater);
+        book.onNewOrder(BID, 941L, 10L, 1L);
+        book.onNewOrder(BID, 940L, 10L, 2L);
+        book.onNewOrder(ASK, 950L, 10L, 3L);
+        book.onNewOrder(ASK, 951L, 10L, 4L);
+        RecordingListener consumer = new RecordingListener();
+        Assert.assertEquals(4, conflater.poll(consumer));
+        consumer.updates.clear();
+
+        // The book thread is half way through an image when the consumer thread polls: nothing is delivered
+        conflater.onImageBegin(4L);
+        conflater.onLevelUpdate(BID, 941L, 10L, 1L, 4L);
+        conflater.onLevelUpdate(BID, 940L, 10L, 1L, 4L);
+        int[] polled = new int[1];
+        Thread poller = new Thread(() -> polled[0] = conflater.poll(consumer));
+        poller.start();
+        poller.join();
+        Assert.assertEquals(0, polled[0]);
+        Assert.assertTrue(consumer.updates.isEmpty());
+
+        // Once the image ends, the next poll delivers it whole, no live level reported empty
+        conflater.onLevelUpdate(ASK, 950L, 10L, 1L, 4L);
+        conflater.onLevelUpdate(ASK, 951L, 10L, 1L, 4L);
+        conflater.onImageEnd(4L);
+        poller = new Thread(() -> polled[0] = conflater.poll(consumer));
+        poller.start();
+        poller.join();
+        Assert.assertEquals(4, polled[0]);
+        Assert.assertEquals(List.of("BID 941 10 1 @4", "BID 940 10 1 @4", "ASK 950 10 1 @4", "ASK 951 10 1 @4"),
+                consumer.updates);
+    }
+
+    @Test
+    public void slowConsumerTracksBook() throws InterruptedException {
+        // Setup
+        RingBuffer<OrderMessage> ring = new RingBuffer<>(1024, OrderMessage::new, new WaitStrategy.Yielding());
+        OrderBook book = new OrderBook("VOD.L", ring, TickSize.DEFAULT, new HashOrderIndex());
+        ConflatingLevel2Listener conflater = new ConflatingLevel2Listener();
+        book.addLevel2Listener(conflater);
+        Thread thread = new Thread(book);
+        thread.start();
+
+        // The consumer rebuilds the book from conflated updates while the book churns through prices
+        Map<Long, Long> bids = new TreeMap<>();
+        Map<Long, Long> asks = new TreeMap<>();
+        Level2Listener consumer = (side, priceTicks, quantity, orderCount, sequence) -> {
+            Map<Long, Long> levels = side == BID ? bids : asks;
+            if (quantity == 0L) {
+                levels.remove(priceTicks);
+            } else {
+                levels.put(priceTicks, quantity);
+            }
+        };
+        for (long orderId = 1L; orderId <= 20_000L; orderId++) {
+            publish(ring, OrderMessage.MessageType.New, orderId % 2 == 0 ? BID : ASK,
+                    orderId % 2 == 0 ? 1000L - orderId % 300 - orderId / 100 : 1001L + orderId % 300, 10L, orderId);
+            if (orderId > 500L) {
+                publish(ring, OrderMessage.MessageType.Cancel, null, 0L, 0L, orderId - 500L);
+            }
+            if (orderId % 1000 == 0) {
+                conflater.poll(consumer);
+            }
+        }
+        publish(ring, OrderMessage.MessageType.Close, null, 0L, 0L, 0L);
+        thread.join();
+        conflater.poll(consumer);
+
+        Assert.assertEquals(book.getBookDepth(BID), bids.size());
+        Assert.assertEquals(book.getBookDepth(ASK), asks.size());
+        for (Map.Entry<Long, Long> level : bids.entrySet()) {
+            Assert.assertEquals(book.buys.getLevel(level.getKey()).getQuantity(), (long) level.getValue());
+        }
+        for (Map.Entry<Long, Long> level : asks.entrySet()) {
+            Assert.assertEquals(book.sells.getLevel(level.getKey()).getQuantity(), (long) level.getValue());
+        }
+    }
+
+    private static void publish(RingBuffer<OrderMessage> ring, OrderMessage.MessageType type, Side side,
+                                long priceTicks, long quantity, long orderId) {
+        long sequence = ring.next();
+        ring.get(sequence).set(type, side, priceTicks, quantity, orderId);
+        ring.publish(sequence);
+    }
+}
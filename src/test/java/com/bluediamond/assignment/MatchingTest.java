@@ -0,0 +1,121 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class MatchingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> fills = new ArrayList<>();
+
+    private OrderBook matchingBook() {
+        return new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setMatching(true)
+                .setFillListener((aggressorOrderId, restingOrderId, aggressorSide, priceTicks, quantity, sequence) ->
+                        fills.add(aggressorOrderId + "x" + restingOrderId + " " + quantity + "@" + priceTicks));
+    }
+
+    @Test
+    public void crossingOrderSweepsInPriceTimePriority() {
+        // Setup
+        OrderBook book = matchingBook();
+        book.onNewOrder(ASK, 951L, 10L, 1L);
+        book.onNewOrder(ASK, 950L, 10L, 2L);
+        book.onNewOrder(ASK, 950L, 20L, 3L);
+        book.onNewOrder(ASK, 952L, 10L, 4L);
+        book.onNewOrder(BID, 940L, 10L, 5L);
+        Assert.assertTrue(fills.isEmpty());
+
+        // Sweeps 950 oldest first, then 951, and rests the remainder at its limit
+        book.onNewOrder(BID, 951L, 45L, 6L);
+        Assert.assertEquals(List.of("6x2 10@950", "6x3 20@950", "6x1 10@951"), fills);
+        Assert.assertEquals(951L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(5L, book.buys.getLevel(951L).getQuantity());
+        Assert.assertEquals(952L, book.getTopOfBookTicks(ASK));
+        Assert.assertEquals(1L, book.getBookDepth(ASK));
+        // Three trades and the remainder
+        Assert.assertEquals(9L, book.getEventSequence());
+
+        // A partial fill of a resting order leaves the rest of it in place
+        fills.clear();
+        book.onNewOrder(ASK, 900L, 8L, 7L);
+        Assert.assertEquals(List.of("7x6 5@951", "7x5 3@940"), fills);
+        Assert.assertEquals(7L, book.buys.getLevel(940L).getQuantity());
+        Assert.assertNull(book.orderMap.get(7L));
+        Assert.assertNull(book.orderMap.get(6L));
+        Assert.assertEquals(2, book.orderMap.size());
+
+        // Without matching, a crossing order rests
+        book.setMatching(false);
+        book.onNewOrder(BID, 960L, 1L, 8L);
+        Assert.assertEquals(960L, book.getTopOfBookTicks(BID));
+    }
+
+    @Test
+    public void crossingAmendMatchesAsNewOrder() {
+        // Setup
+        OrderBook book = matchingBook();
+        book.onNewOrder(ASK, 950L, 10L, 1L);
+        book.onNewOrder(BID, 940L, 15L, 2L);
+
+        // Amending to a price that doesn't cross keeps the usual semantics
+        book.onReplaceOrder(945L, 15L, 2L);
+        Assert.assertTrue(fills.isEmpty());
+        Assert.assertEquals(945L, book.getTopOfBookTicks(BID));
+
+        // Amending through the spread trades
+        book.onReplaceOrder(955L, 15L, 2L);
+        Assert.assertEquals(List.of("2x1 10@950"), fills);
+        Assert.assertEquals(0L, book.getBookDepth(ASK));
+        Assert.assertEquals(5L, book.buys.getLevel(955L).getQuantity());
+        Assert.assertEquals(1L, book.getBookDepth(BID));
+    }
+
+    @Test
+    public void journalReplaysMatchedBook() throws IOException {
+        // Setup
+        Path directory = folder.getRoot().toPath();
+        OrderBook book = matchingBook();
+        EventJournal journal = new EventJournal(directory, 64);
+        book.setJournal(journal);
+        for (long orderId = 1L; orderId <= 500L; orderId++) {
+            boolean bid = orderId % 2 == 0;
+            book.onNewOrder(bid ? BID : ASK, bid ? 945L + orderId % 13 : 955L - orderId % 11, orderId % 7 + 1L, orderId);
+        }
+        journal.close();
+        Assert.assertFalse(fills.isEmpty());
+
+        // Trades and remainders are journaled, so a book replaying them without matching ends up the same
+        OrderBook replayed = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        try (JournalReader reader = new JournalReader(directory)) {
+            OrderMessage msg = new OrderMessage();
+            while (reader.read(msg)) {
+                replayed.process(msg);
+            }
+        }
+        Assert.assertEquals(book.getEventSequence(), replayed.getEventSequence());
+        Assert.assertTrue(book.getTopOfBookTicks(BID) < book.getTopOfBookTicks(ASK));
+        long[] prices = new long[32];
+        long[] quantities = new long[32];
+        long[] replayedPrices = new long[32];
+        long[] replayedQuantities = new long[32];
+        Assert.assertEquals(book.getDepth(prices, quantities, new long[32], new long[32]),
+                replayed.getDepth(replayedPrices, replayedQuantities, new long[32], new long[32]));
+        Assert.assertArrayEquals(prices, replayedPrices);
+        Assert.assertArrayEquals(quantities, replayedQuantities);
+        Assert.assertEquals(book.getDepth(ASK, prices, quantities), replayed.getDepth(ASK, replayedPrices,
+                replayedQuantities));
+        Assert.assertArrayEquals(prices, replayedPrices);
+        Assert.assertArrayEquals(quantities, replayedQuantities);
+    }
+}
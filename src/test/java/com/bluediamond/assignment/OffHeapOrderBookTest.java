@@ -0,0 +1,191 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class OffHeapOrderBookTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Level previousLevel;
+
+    @Before
+    public void setUp() {
+        // Per order logging would slow the random event streams down
+        previousLevel = LogManager.getLogger(OrderBook.class).getLevel();
+        Configurator.setLevel("com.bluediamond.assignment", Level.WARN);
+    }
+
+    @After
+    public void tearDown() {
+        Configurator.setLevel("com.bluediamond.assignment", previousLevel);
+    }
+
+    @Test
+    public void sameBookAsHeapStorage() {
+        OrderBook heap = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        OffHeapOrderBook offHeap = new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 16);
+        applyRandomEvents(heap, offHeap, new Random(3L), 1L, 20_000, 900L);
+        assertSameBook(heap, offHeap);
+        Assert.assertEquals(heap.getEventSequence(), offHeap.getEventSequence());
+    }
+
+    @Test
+    public void sameMatchesAsHeapStorage() {
+        List<String> heapFills = new ArrayList<>();
+        List<String> offHeapFills = new ArrayList<>();
+        OrderBook heap = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex()).setMatching(true)
+                .setFillListener((aggressorOrderId, restingOrderId, aggressorSide, priceTicks, quantity, sequence) ->
+                        heapFills.add(aggressorOrderId + "x" + restingOrderId + " " + quantity + "@" + priceTicks));
+        OrderBook offHeap = new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 16).setMatching(true)
+                .setFillListener((aggressorOrderId, restingOrderId, aggressorSide, priceTicks, quantity, sequence) ->
+                        offHeapFills.add(aggressorOrderId + "x" + restingOrderId + " " + quantity + "@" + priceTicks));
+
+        // Bid and ask prices overlap, so that new and amended orders cross
+        applyRandomEvents(heap, offHeap, new Random(5L), 1L, 20_000, 940L);
+        Assert.assertFalse(heapFills.isEmpty());
+        Assert.assertEquals(heapFills, offHeapFills);
+        assertSameBook(heap, (OffHeapOrderBook) offHeap);
+    }
+
+    @Test
+    public void freedSlotsAreReused() {
+        OffHeapOrderBook book = new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 1_000);
+        long reservedBytes = book.getReservedBytes();
+        for (int round = 0; round < 10; round++) {
+            for (long orderId = 1L; orderId <= 1_000L; orderId++) {
+                book.onNewOrder(orderId % 2 == 0 ? BID : ASK, orderId % 2 == 0 ? 900L : 901L, 10L,
+                        round * 1_000L + orderId);
+            }
+            Assert.assertEquals(1_000, book.getOrderCount());
+            for (long orderId = 1L; orderId <= 1_000L; orderId++) {
+                if (orderId % 2 == 0) {
+                    book.onTrade(10L, round * 1_000L + orderId);
+                } else {
+                    book.onCancelOrder(round * 1_000L + orderId);
+                }
+            }
+            Assert.assertEquals(0, book.getOrderCount());
+        }
+        Assert.assertEquals(reservedBytes, book.getReservedBytes());
+        Assert.assertEquals(0L, book.getBookDepth(BID));
+        Assert.assertEquals(0L, book.getBookDepth(ASK));
+
+        // Growing past the reserved slots adds a chunk
+        for (long orderId = 1L; orderId <= 5_000L; orderId++) {
+            book.onNewOrder(BID, 800L + orderId % 100, 1L, orderId);
+        }
+        Assert.assertEquals(5_000, book.getOrderCount());
+        Assert.assertTrue(book.getReservedBytes() > reservedBytes);
+        Assert.assertEquals(50L, book.getSizeForPriceLevel(BID, 850L));
+    }
+
+    @Test
+    public void restoreFromCheckpointAndJournalTail() throws IOException {
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        Path checkpointDirectory = folder.getRoot().toPath().resolve("checkpoints");
+        OrderBook heap = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        OffHeapOrderBook book = new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 1_000);
+        EventJournal journal = new EventJournal(journalDirectory, 1_000);
+        book.setJournal(journal);
+        Random random = new Random(11L);
+        try (BookCheckpointer checkpointer = new BookCheckpointer("VOD.L", TickSize.DEFAULT, journalDirectory,
+                checkpointDirectory)) {
+            applyRandomEvents(heap, book, random, 1L, 3_000, 900L);
+            Assert.assertEquals(book.getEventSequence(), checkpointer.checkpoint());
+            applyRandomEvents(heap, book, random, 3_001L, 500, 900L);
+        }
+        journal.close();
+
+        OffHeapOrderBook restored = (OffHeapOrderBook) BookCheckpointer.restore(
+                new OffHeapOrderBook("VOD.L", TickSize.DEFAULT, 1_000), journalDirectory, checkpointDirectory);
+        Assert.assertEquals(describe(book, BID), describe(restored, BID));
+        Assert.assertEquals(describe(book, ASK), describe(restored, ASK));
+        Assert.assertEquals(book.getEventSequence(), restored.getEventSequence());
+    }
+
+    /**
+     * Applies the same stream of orders to both books, randomly amending, trading or cancelling some of the resting
+     * ones.
+     */
+    private void applyRandomEvents(OrderBook heap, OrderBook offHeap, Random random, long firstOrderId, int orders,
+                                   long firstAskTicks) {
+        OrderMessage msg = new OrderMessage();
+        for (long orderId = firstOrderId; orderId < firstOrderId + orders; orderId++) {
+            boolean bid = random.nextBoolean();
+            apply(heap, offHeap, msg.set(OrderMessage.MessageType.New, bid ? BID : ASK,
+                    bid ? 900L + random.nextInt(50) : firstAskTicks + random.nextInt(50), 1L + random.nextInt(100),
+                    orderId));
+            long target = Math.max(1L, orderId - random.nextInt(200));
+            switch (random.nextInt(4)) {
+                case 0 -> apply(heap, offHeap, msg.set(OrderMessage.MessageType.Cancel, null, 0L, 0L, target));
+                case 1 -> apply(heap, offHeap, msg.set(OrderMessage.MessageType.Trade, null, 0L,
+                        1L + random.nextInt(20), target));
+                case 2 -> apply(heap, offHeap, msg.set(OrderMessage.MessageType.Amend, null,
+                        900L + random.nextInt(100), 1L + random.nextInt(100), target));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void apply(OrderBook heap, OrderBook offHeap, OrderMessage msg) {
+        heap.process(msg);
+        offHeap.process(msg);
+    }
+
+    private void assertSameBook(OrderBook heap, OffHeapOrderBook offHeap) {
+        Assert.assertEquals(describe(heap.buys), describe(offHeap, BID));
+        Assert.assertEquals(describe(heap.sells), describe(offHeap, ASK));
+        Assert.assertEquals(heap.orderMap.size(), offHeap.getOrderCount());
+        for (Level2View.Side side : Level2View.Side.values()) {
+            long[] expectedPrices = new long[20];
+            long[] expectedQuantities = new long[20];
+            long[] actualPrices = new long[20];
+            long[] actualQuantities = new long[20];
+            heap.getDepth(side, expectedPrices, expectedQuantities);
+            offHeap.getDepth(side, actualPrices, actualQuantities);
+            Assert.assertArrayEquals(expectedPrices, actualPrices);
+            Assert.assertArrayEquals(expectedQuantities, actualQuantities);
+            Assert.assertEquals(heap.getBookDepth(side), offHeap.getBookDepth(side));
+        }
+    }
+
+    private List<String> describe(BookSide side) {
+        List<String> orders = new ArrayList<>();
+        for (Order order : side) {
+            orders.add(order.getOrderId() + "@" + order.getPriceTicks() + "x" + order.getQuantity());
+        }
+        return orders;
+    }
+
+    /**
+     * @return The resting orders of a side of an off-heap book, in price-time priority
+     */
+    private List<String> describe(OffHeapOrderBook book, Level2View.Side side) {
+        OrderSlots slots = book.getSlots();
+        BookSide bookSide = side == BID ? book.buys : book.sells;
+        List<String> orders = new ArrayList<>();
+        for (int i = bookSide.getDepth() - 1; i >= 0; i--) {
+            for (int slot = bookSide.getLevelAt(i).getHeadSlot(); slot != OrderSlots.NONE; slot = slots.getNext(slot)) {
+                orders.add(slots.getOrderId(slot) + "@" + slots.getPriceTicks(slot) + "x" + slots.getQuantity(slot));
+            }
+        }
+        return orders;
+    }
+}
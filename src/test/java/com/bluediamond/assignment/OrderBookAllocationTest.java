@@ -0,0 +1,157 @@
+package com.bluediamond.assignment;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Amend;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class OrderBookAllocationTest {
+    private static final String LOGGER_NAME = "com.bluediamond.assignment";
+    private static final int ORDERS_PER_ROUND = 1_000;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private Level previousLevel;
+
+    @Before
+    public void setup() {
+        // Per event logging is switched off, as it would be with the book in garbage free mode
+        previousLevel = LogManager.getLogger(LOGGER_NAME).getLevel();
+        Configurator.setLevel(LOGGER_NAME, Level.WARN);
+    }
+
+    @After
+    public void tearDown() {
+        Configurator.setLevel(LOGGER_NAME, previousLevel);
+    }
+
+    @Test
+    public void steadyStateEventsDoNotAllocate() {
+        assertSteadyStateDoesNotAllocate(new OrderBook("VOD.L", new ArrayBlockingQueue<>(1)));
+    }
+
+    @Test
+    public void steadyStateEventsWithMetricsDoNotAllocate() {
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(1));
+        BookMetrics metrics = book.enableMetrics();
+        assertSteadyStateDoesNotAllocate(book);
+        Assert.assertTrue(metrics.getProcessing(New).snapshot().getCount() > 0L);
+    }
+
+    @Test
+    public void steadyStateEventsWithEventLogDoNotAllocate() throws InterruptedException {
+        EventLog eventLog = new EventLog("VOD.L", 1 << 12, 10);
+        Thread drainer = new Thread(eventLog);
+        drainer.start();
+        assertSteadyStateDoesNotAllocate(new OrderBook("VOD.L", new ArrayBlockingQueue<>(1)).setEventLog(eventLog));
+        eventLog.close();
+        drainer.join();
+    }
+
+    @Test
+    public void steadyStateMatchingDoesNotAllocate() {
+        Assert.assertTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long[] fills = new long[1];
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(1)).setMatching(true)
+                .setFillListener((aggressorOrderId, restingOrderId, aggressorSide, priceTicks, quantity, sequence) ->
+                        fills[0]++);
+        OrderMessage msg = new OrderMessage();
+
+        long orderId = 0L;
+        for (int round = 0; round < 200; round++) {
+            orderId = playMatchingRound(book, msg, orderId);
+        }
+        long allocated = -1L;
+        for (int window = 0; window < 5 && allocated != 0L; window++) {
+            long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+            for (int round = 0; round < 100; round++) {
+                orderId = playMatchingRound(book, msg, orderId);
+            }
+            allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        }
+
+        Assert.assertEquals(0L, allocated);
+        Assert.assertTrue(fills[0] > 0L);
+    }
+
+    /**
+     * Rests a round of orders on both sides, then sweeps them with crossing orders from either side.
+     */
+    private long playMatchingRound(OrderBook book, OrderMessage msg, long firstOrderId) {
+        long orderId = firstOrderId;
+        for (int i = 0; i < ORDERS_PER_ROUND; i++) {
+            book.process(msg.set(New, i % 2 == 0 ? BID : ASK, i % 2 == 0 ? 900L - i % 50 : 901L + i % 50, 100L, ++orderId));
+        }
+        for (int i = 0; i < ORDERS_PER_ROUND / 2; i++) {
+            book.process(msg.set(New, i % 2 == 0 ? BID : ASK, i % 2 == 0 ? 1000L : 800L, 200L, ++orderId));
+        }
+        return orderId;
+    }
+
+    private void assertSteadyStateDoesNotAllocate(OrderBook book) {
+        Assert.assertTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        OrderMessage msg = new OrderMessage();
+
+        // Warm up pools, level arrays and the JIT
+        long orderId = 0L;
+        for (int round = 0; round < 200; round++) {
+            orderId = playRound(book, msg, orderId);
+        }
+
+        // A deoptimisation triggered by classes loaded from other tests can materialise scalar replaced objects
+        // once, so a few measurement windows are allowed for the JIT to settle
+        long allocated = -1L;
+        for (int window = 0; window < 5 && allocated != 0L; window++) {
+            long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+            for (int round = 0; round < 100; round++) {
+                orderId = playRound(book, msg, orderId);
+            }
+            allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        }
+
+        Assert.assertEquals(0L, allocated);
+        Assert.assertTrue(book.orderMap.isEmpty());
+    }
+
+    /**
+     * Adds a round of orders over a spread of price levels, then amends, trades and cancels all of them, so that
+     * levels are created and dropped on both sides.
+     */
+    private long playRound(OrderBook book, OrderMessage msg, long firstOrderId) {
+        long orderId = firstOrderId;
+        for (int i = 0; i < ORDERS_PER_ROUND; i++) {
+            book.process(msg.set(New, i % 2 == 0 ? BID : ASK, i % 2 == 0 ? 900L - i % 50 : 901L + i % 50, 100L, ++orderId));
+        }
+        for (long id = firstOrderId + 1; id <= orderId; id++) {
+            if (id % 3 == 0) {
+                book.process(msg.set(Amend, null, 900L - id % 7, 80L, id));
+            }
+            if (id % 2 == 0) {
+                book.process(msg.set(Trade, null, 0L, 50L, id));
+            }
+        }
+        for (long id = firstOrderId + 1; id <= orderId; id++) {
+            if (id % 4 == 0) {
+                book.onTrade(book.orderMap.get(id).getQuantity(), id);
+            } else {
+                book.process(msg.set(Cancel, null, 0L, 0L, id));
+            }
+        }
+        return orderId;
+    }
+}
@@ -0,0 +1,101 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class OrderBookManagerTest {
+    private static final int SYMBOLS = 40;
+
+    @Test
+    public void routesMessagesBySymbol() throws InterruptedException {
+        // Setup, many books on a few workers
+        OrderBookManager manager = new OrderBookManager(3);
+        for (int i = 0; i < SYMBOLS; i++) {
+            manager.addBook("SYM" + i, TickSize.DEFAULT);
+        }
+        manager.start();
+
+        // Every book gets one BID and one ASK, with prices derived from its symbol
+        for (int i = 0; i < SYMBOLS; i++) {
+            Assert.assertTrue(manager.submit("SYM" + i, New, BID, 100L + i, 10L, 1L));
+            Assert.assertTrue(manager.submit("SYM" + i, New, ASK, 200L + i, 10L, 2L));
+        }
+        Assert.assertFalse(manager.submit("UNKNOWN", New, BID, 100L, 10L, 1L));
+        manager.close();
+
+        // Books were spread over all workers and only received their own messages
+        Set<Integer> usedWorkers = new HashSet<>();
+        for (int i = 0; i < SYMBOLS; i++) {
+            OrderBook book = manager.getBook("SYM" + i);
+            Assert.assertEquals(100L + i, book.getTopOfBookTicks(BID));
+            Assert.assertEquals(200L + i, book.getTopOfBookTicks(ASK));
+            usedWorkers.add(manager.getWorkerIndex("SYM" + i));
+        }
+        Assert.assertEquals(3, usedWorkers.size());
+        long messages = 0L;
+        for (OrderBookManager.WorkerMetrics metrics : manager.getWorkerMetrics()) {
+            messages += metrics.getMessages();
+            Assert.assertEquals(0L, metrics.getBacklog());
+        }
+        Assert.assertEquals(2L * SYMBOLS, messages);
+    }
+
+    @Test
+    public void rebalanceMovesHotBookWithoutReordering() throws InterruptedException {
+        // Setup, two hot books that start out on the same worker
+        OrderBookManager manager = new OrderBookManager(2);
+        String hot1 = null;
+        String hot2 = null;
+        for (int i = 0; i < SYMBOLS; i++) {
+            String symbol = "SYM" + i;
+            manager.addBook(symbol, TickSize.DEFAULT);
+            if (manager.getWorkerIndex(symbol) == 0) {
+                if (hot1 == null) {
+                    hot1 = symbol;
+                } else if (hot2 == null) {
+                    hot2 = symbol;
+                }
+            }
+        }
+        manager.start();
+
+        // Load the hot books, then keep trading them while the load is rebalanced
+        long orderId = 0L;
+        for (int i = 0; i < 1_000; i++) {
+            manager.submit(hot1, New, BID, 100L, 10L, ++orderId);
+            manager.submit(hot2, New, BID, 100L, 10L, ++orderId);
+        }
+        waitForIdleWorkers(manager);
+        String moved = manager.rebalance();
+        Assert.assertTrue(hot1.equals(moved) || hot2.equals(moved));
+        Assert.assertEquals(1, manager.getWorkerIndex(moved));
+        for (long id = 1L; id <= orderId; id++) {
+            manager.submit(id % 2 == 1 ? hot1 : hot2, Trade, null, 0L, 4L, id);
+            manager.submit(id % 2 == 1 ? hot1 : hot2, Cancel, null, 0L, 0L, id);
+        }
+        manager.close();
+
+        // Messages routed before and after the move were applied in order, so every order was traded, then cancelled
+        Assert.assertTrue(manager.getBook(hot1).orderMap.isEmpty());
+        Assert.assertTrue(manager.getBook(hot2).orderMap.isEmpty());
+        Assert.assertEquals(3_000L, manager.getBookMessages(moved));
+        Assert.assertNull(manager.rebalance());
+    }
+
+    private void waitForIdleWorkers(OrderBookManager manager) throws InterruptedException {
+        boolean idle = false;
+        while (!idle) {
+            Thread.sleep(10);
+            idle = manager.getWorkerMetrics().stream().allMatch(metrics -> metrics.getBacklog() == 0L);
+        }
+    }
+}
@@ -45,7 +45,7 @@ public class OrderBookTest {
 
         // Wait for message to be processed
         try {
-            waitForEmptyQueue(queue);
+            process.join(10_000L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -75,6 +75,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -83,7 +84,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 6L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -116,6 +117,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -124,7 +126,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 6L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -156,6 +158,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -165,7 +168,7 @@ public class OrderBookTest {
         queue.add(newOrders.get(4));
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -198,6 +201,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -206,7 +210,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 6L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -223,6 +227,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -231,7 +236,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 6L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -263,6 +268,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -272,7 +278,7 @@ public class OrderBookTest {
         queue.add(new OrderMessage(OrderMessage.MessageType.New, order1L));
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -301,6 +307,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -309,7 +316,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -322,7 +329,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -339,6 +346,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -347,7 +355,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -360,7 +368,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -377,6 +385,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -385,7 +394,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -399,7 +408,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -417,6 +426,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -425,7 +435,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -460,6 +470,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -468,7 +479,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -530,6 +541,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -538,7 +550,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -551,7 +563,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -596,6 +608,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -604,7 +617,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -616,7 +629,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -633,6 +646,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -641,7 +655,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -653,7 +667,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -666,7 +680,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 3L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -683,6 +697,7 @@ public class OrderBookTest {
         // Setup
         BlockingQueue<OrderMessage> queue = new ArrayBlockingQueue<>(100);
         OrderBook book = new OrderBook("VOD.L", queue);
+        BookSnapshot snapshot = book.enableSnapshot();
         Thread process = new Thread(book);
         process.start();
 
@@ -691,7 +706,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 1L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -703,7 +718,7 @@ public class OrderBookTest {
 
         // Wait for orders to be processed
         try {
-            waitForEmptyQueue(queue);
+            waitForEvents(snapshot, 2L);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -715,11 +730,180 @@ public class OrderBookTest {
         queue.add(new OrderMessage(OrderMessage.MessageType.Close, Order.EMPTY));
     }
 
+    @Test
+    public void priceLevelAggregates() {
+        // Setup, events are applied directly on the calling thread
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(100));
+        for (OrderMessage msg : newOrders) {
+            Order order = msg.getOrderData();
+            book.onNewOrder(order.getSide(), order.getPrice(), order.getQuantity(), order.getOrderId());
+        }
+
+        // Orders 1L & 2L rest at 9.40
+        PriceLevel level = book.buys.getLevel(940L);
+        Assert.assertEquals(15L, level.getQuantity());
+        Assert.assertEquals(2L, level.getOrderCount());
+
+        // Partial trade reduces the level quantity only
+        book.onTrade(3L, 1L);
+        Assert.assertEquals(12L, level.getQuantity());
+        Assert.assertEquals(2L, book.getSizeForPriceLevel(BID, new BigDecimal("9.40")));
+
+        // Amending order 2L to another price moves its quantity over
+        book.onReplaceOrder(new BigDecimal("9.35"), 5L, 2L);
+        Assert.assertEquals(7L, level.getQuantity());
+        Assert.assertEquals(7L, book.buys.getLevel(935L).getQuantity());
+        Assert.assertEquals(2L, book.getSizeForPriceLevel(BID, new BigDecimal("9.35")));
+
+        // Fully trading order 1L empties and removes the top level
+        book.onTrade(7L, 1L);
+        Assert.assertEquals(1, book.getBookDepth(BID));
+        Assert.assertEquals(new BigDecimal("9.35"), book.getTopOfBook(BID));
+
+        // Cancelling the best ask promotes the next level
+        book.onCancelOrder(4L);
+        Assert.assertEquals(2, book.getBookDepth(ASK));
+        Assert.assertEquals(new BigDecimal("9.50"), book.getTopOfBook(ASK));
+        Assert.assertEquals(0L, book.getSizeForPriceLevel(ASK, new BigDecimal("9.45")));
+    }
+
+    @Test
+    public void priceTimePriority() {
+        // Setup, events are applied directly on the calling thread
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(100));
+        book.onNewOrder(BID, new BigDecimal("9.40"), 10L, 1L);
+        book.onNewOrder(BID, new BigDecimal("9.35"), 10L, 2L);
+        book.onNewOrder(BID, new BigDecimal("9.40"), 10L, 3L);
+        book.onNewOrder(BID, new BigDecimal("9.45"), 10L, 4L);
+        book.onNewOrder(BID, new BigDecimal("9.40"), 10L, 5L);
+
+        // Best price first, then oldest first within a price level
+        assertOrderIds(book.buys, 4L, 1L, 3L, 5L, 2L);
+
+        // Amending the quantity down keeps the place in the queue
+        book.onReplaceOrder(new BigDecimal("9.40"), 4L, 1L);
+        assertOrderIds(book.buys, 4L, 1L, 3L, 5L, 2L);
+
+        // Amending the price moves the order to the back of the new price level
+        book.onReplaceOrder(new BigDecimal("9.35"), 10L, 3L);
+        assertOrderIds(book.buys, 4L, 1L, 5L, 2L, 3L);
+        Assert.assertEquals(14L, book.buys.getLevel(940L).getQuantity());
+
+        // Amending the quantity up sends the order to the back of its price level
+        book.onReplaceOrder(new BigDecimal("9.40"), 6L, 1L);
+        assertOrderIds(book.buys, 4L, 5L, 1L, 2L, 3L);
+        Assert.assertEquals(16L, book.buys.getLevel(940L).getQuantity());
+        Assert.assertEquals(2L, book.getSizeForPriceLevel(BID, 940L));
+
+        // Amending the price of the only order at a level drops the level, and the top of book follows
+        book.onReplaceOrder(new BigDecimal("9.30"), 10L, 4L);
+        assertOrderIds(book.buys, 5L, 1L, 2L, 3L, 4L);
+        Assert.assertEquals(940L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(3L, book.getBookDepth(BID));
+    }
+
+    @Test
+    public void removeFromLevelQueue() {
+        // Setup, three orders queued on one level
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(100));
+        book.onNewOrder(ASK, new BigDecimal("9.45"), 10L, 1L);
+        book.onNewOrder(ASK, new BigDecimal("9.45"), 20L, 2L);
+        book.onNewOrder(ASK, new BigDecimal("9.45"), 30L, 3L);
+
+        // Cancel from the middle, fill the tail, the head keeps its place
+        book.onCancelOrder(2L);
+        book.onTrade(30L, 3L);
+        assertOrderIds(book.sells, 1L);
+        Assert.assertEquals(10L, book.sells.getLevel(945L).getQuantity());
+
+        // New orders queue behind the remaining head
+        book.onNewOrder(ASK, new BigDecimal("9.45"), 40L, 4L);
+        assertOrderIds(book.sells, 1L, 4L);
+
+        // Removing the last orders drops the level
+        book.onCancelOrder(1L);
+        book.onCancelOrder(4L);
+        Assert.assertTrue(book.sells.isEmpty());
+        Assert.assertEquals(0, book.getBookDepth(ASK));
+    }
+
+    @Test
+    public void tickPrices() {
+        // Setup, a book quoted in half cents
+        OrderBook book = new OrderBook("VOD.L", new ArrayBlockingQueue<>(100), new TickSize(new BigDecimal("0.005")));
+        book.onNewOrder(BID, 1881L, 10L, 1L);
+        book.onNewOrder(ASK, new BigDecimal("9.41"), 10L, 2L);
+
+        // Tick and decimal prices describe the same levels
+        Assert.assertEquals(1881L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(new BigDecimal("9.405"), book.getTopOfBook(BID));
+        Assert.assertEquals(1882L, book.getTopOfBookTicks(ASK));
+        Assert.assertEquals(1L, book.getSizeForPriceLevel(ASK, 1882L));
+        Assert.assertEquals(1L, book.getSizeForPriceLevel(ASK, new BigDecimal("9.410")));
+
+        // Prices off the tick grid are rejected
+        book.onNewOrder(BID, new BigDecimal("9.401"), 10L, 3L);
+        Assert.assertEquals(2, book.orderMap.size());
+
+        // Empty sides report a zero price
+        book.onCancelOrder(1L);
+        Assert.assertEquals(0L, book.getTopOfBookTicks(BID));
+    }
+
+    @Test
+    public void depthIntoArrays() {
+        // Setup
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        book.onNewOrder(BID, 940L, 10L, 1L);
+        book.onNewOrder(BID, 940L, 5L, 2L);
+        book.onNewOrder(BID, 935L, 2L, 3L);
+        book.onNewOrder(BID, 930L, 7L, 4L);
+        book.onNewOrder(ASK, 945L, 10L, 5L);
+        long[] prices = new long[2];
+        long[] quantities = new long[2];
+
+        // Best levels first, as many as the arrays hold
+        Assert.assertEquals(2, book.getDepth(BID, prices, quantities));
+        Assert.assertArrayEquals(new long[]{940L, 935L}, prices);
+        Assert.assertArrayEquals(new long[]{15L, 2L}, quantities);
+
+        // Entries past the depth of the side are zeroed
+        long[] bidPrices = {1L, 1L, 1L, 1L};
+        long[] bidQuantities = new long[4];
+        long[] askPrices = {1L, 1L, 1L, 1L};
+        long[] askQuantities = new long[4];
+        Assert.assertEquals(5L, book.getDepth(bidPrices, bidQuantities, askPrices, askQuantities));
+        Assert.assertArrayEquals(new long[]{940L, 935L, 930L, 0L}, bidPrices);
+        Assert.assertArrayEquals(new long[]{15L, 2L, 7L, 0L}, bidQuantities);
+        Assert.assertArrayEquals(new long[]{945L, 0L, 0L, 0L}, askPrices);
+        Assert.assertArrayEquals(new long[]{10L, 0L, 0L, 0L}, askQuantities);
+        Assert.assertEquals(0, book.getDepth(ASK, new long[0], new long[0]));
+    }
+
+    private void assertOrderIds(Iterable<Order> orders, long... expectedOrderIds) {
+        List<Long> orderIds = new ArrayList<>();
+        for (Order order : orders) {
+            orderIds.add(order.getOrderId());
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long orderId : expectedOrderIds) {
+            expected.add(orderId);
+        }
+        Assert.assertEquals(expected, orderIds);
+    }
+
     private void waitForEmptyQueue(BlockingQueue<OrderMessage> queue) throws InterruptedException {
         while (!queue.isEmpty()) {
             System.out.println("Sleeping...");
             Thread.sleep(50);
         }
     }
+
+    private void waitForEvents(BookSnapshot snapshot, long events) throws InterruptedException {
+        // The book thread publishes its snapshot once it has applied every message queued
+        while (snapshot.getVersion() < events) {
+            Thread.sleep(1);
+        }
+    }
 }
 
@@ -0,0 +1,74 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class OrderIndexTest {
+
+    @Test
+    public void hashIndexBasicOperations() {
+        basicOperations(new HashOrderIndex());
+    }
+
+    @Test
+    public void denseIndexBasicOperations() {
+        basicOperations(new DenseOrderIndex(1_000));
+    }
+
+    @Test
+    public void hashIndexMatchesHashMap() {
+        // Small initial capacity, so the index resizes and probe runs collide
+        matchesHashMap(new HashOrderIndex(4), 1_000_000L);
+    }
+
+    @Test
+    public void denseIndexMatchesHashMap() {
+        // Ids above the dense range end up in the overflow index
+        matchesHashMap(new DenseOrderIndex(5_000), 10_000L);
+    }
+
+    private void basicOperations(OrderIndex index) {
+        Order order = new Order(7L, BID, 940L, 10L);
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertNull(index.get(7L));
+
+        // First put wins, later puts return the order already indexed
+        Assert.assertNull(index.putIfAbsent(7L, order));
+        Assert.assertSame(order, index.putIfAbsent(7L, new Order(7L, BID, 950L, 5L)));
+        Assert.assertSame(order, index.get(7L));
+        Assert.assertEquals(1, index.size());
+
+        // Removing returns the order only once
+        Assert.assertSame(order, index.remove(7L));
+        Assert.assertNull(index.remove(7L));
+        Assert.assertTrue(index.isEmpty());
+
+        // Negative ids are valid keys
+        Assert.assertNull(index.putIfAbsent(-3L, order));
+        Assert.assertSame(order, index.get(-3L));
+    }
+
+    private void matchesHashMap(OrderIndex index, long idRange) {
+        Map<Long, Order> expected = new HashMap<>();
+        Random random = new Random(42L);
+        for (int i = 0; i < 200_000; i++) {
+            long orderId = (long) (random.nextDouble() * idRange);
+            if (random.nextInt(3) == 0) {
+                Assert.assertSame(expected.remove(orderId), index.remove(orderId));
+            } else {
+                Order order = new Order(orderId, BID, 940L, 10L);
+                Assert.assertSame(expected.putIfAbsent(orderId, order), index.putIfAbsent(orderId, order));
+            }
+            Assert.assertEquals(expected.size(), index.size());
+        }
+        for (Map.Entry<Long, Order> entry : expected.entrySet()) {
+            Assert.assertSame(entry.getValue(), index.get(entry.getKey()));
+        }
+    }
+}
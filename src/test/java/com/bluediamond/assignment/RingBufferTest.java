@@ -0,0 +1,72 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Close;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class RingBufferTest {
+    private static final int ORDERS = 4_000;
+
+    @Test
+    public void busySpinIngress() throws InterruptedException {
+        orderBookConsumesRing(new WaitStrategy.BusySpin());
+    }
+
+    @Test
+    public void yieldingIngress() throws InterruptedException {
+        orderBookConsumesRing(new WaitStrategy.Yielding());
+    }
+
+    @Test
+    public void parkingIngress() throws InterruptedException {
+        orderBookConsumesRing(new WaitStrategy.Parking(1_000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new RingBuffer<>(100, OrderMessage::new, new WaitStrategy.BusySpin());
+    }
+
+    private void orderBookConsumesRing(WaitStrategy waitStrategy) throws InterruptedException {
+        // Setup, a ring much smaller than the number of messages so that the producer wraps around
+        RingBuffer<OrderMessage> ring = new RingBuffer<>(64, OrderMessage::new, waitStrategy);
+        OrderBook book = new OrderBook("VOD.L", ring, TickSize.DEFAULT, new HashOrderIndex(ORDERS));
+        Thread process = new Thread(book);
+        process.start();
+
+        // Add orders, trade half of every BID and cancel every other ASK
+        for (long orderId = 1L; orderId <= ORDERS; orderId++) {
+            boolean bid = orderId % 2 == 0;
+            publish(ring, New, bid ? BID : ASK, bid ? 900L + orderId % 10 : 1000L + orderId % 10, 10L, orderId);
+            if (bid) {
+                publish(ring, Trade, null, 0L, 5L, orderId);
+            } else if (orderId % 4 == 1) {
+                publish(ring, Cancel, null, 0L, 0L, orderId);
+            }
+        }
+        publish(ring, Close, null, 0L, 0L, 0L);
+        process.join(10_000L);
+
+        // Every message was applied in order before the book closed
+        Assert.assertFalse(process.isAlive());
+        Assert.assertEquals(0L, ring.backlog());
+        Assert.assertEquals(ORDERS / 2, book.buys.size());
+        Assert.assertEquals(ORDERS / 4, book.sells.size());
+        Assert.assertEquals(908L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(1001L, book.getTopOfBookTicks(ASK));
+        Assert.assertEquals(5L, book.orderMap.get(2L).getQuantity());
+    }
+
+    private void publish(RingBuffer<OrderMessage> ring, OrderMessage.MessageType type, Level2View.Side side,
+                         long priceTicks, long quantity, long orderId) {
+        long sequence = ring.next();
+        ring.get(sequence).set(type, side, priceTicks, quantity, orderId);
+        ring.publish(sequence);
+    }
+}
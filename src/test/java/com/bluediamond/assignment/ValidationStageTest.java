@@ -0,0 +1,75 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+
+public class ValidationStageTest {
+    private static final int ORDERS = 4_000;
+    private static final int VOD = 7;
+
+    @Test
+    public void onlyValidMessagesReachTheBook() throws InterruptedException {
+        // Setup, two small rings so that both hand-offs wrap around
+        RingBuffer<WireBatch> inbound = new RingBuffer<>(16, () -> new WireBatch(256), new WaitStrategy.Yielding());
+        RingBuffer<OrderMessage> bookRing = new RingBuffer<>(64, OrderMessage::new, new WaitStrategy.Yielding());
+        ValidationStage stage = new ValidationStage("VOD.L", VOD, inbound, bookRing);
+        OrderBook book = new OrderBook("VOD.L", bookRing, TickSize.DEFAULT, new HashOrderIndex(ORDERS));
+        Thread validation = new Thread(stage);
+        Thread process = new Thread(book);
+        validation.start();
+        process.start();
+
+        // Batches of a valid order followed by an invalid message of every kind in turn
+        OrderMessageEncoder encoder = new OrderMessageEncoder();
+        for (long orderId = 1L; orderId <= ORDERS; orderId++) {
+            long sequence = inbound.next();
+            WireBatch batch = inbound.get(sequence);
+            encoder.wrap(batch.getBuffer(), 0);
+            boolean bid = orderId % 2 == 0;
+            encoder.newOrder(VOD, bid ? BID : ASK, bid ? 900L + orderId % 10 : 1000L + orderId % 10, 10L, orderId);
+            switch ((int) (orderId % 6)) {
+                case 0 -> encoder.newOrder(VOD, BID, 0L, 10L, orderId + ORDERS);
+                case 1 -> encoder.newOrder(VOD, ASK, 1000L, -1L, orderId + ORDERS);
+                case 2 -> encoder.amend(VOD, -5L, 10L, orderId);
+                case 3 -> encoder.trade(VOD, 0L, orderId);
+                case 4 -> encoder.newOrder(VOD, null, 950L, 10L, orderId + ORDERS);
+                default -> encoder.newOrder(VOD + 1, BID, 950L, 10L, orderId + ORDERS);
+            }
+            batch.setLength(encoder.getEncodedLength()).stamp();
+            inbound.publish(sequence);
+        }
+
+        // A batch cut short by a message from another schema is forwarded up to that message
+        long sequence = inbound.next();
+        WireBatch batch = inbound.get(sequence);
+        encoder.wrap(batch.getBuffer(), 0).newOrder(VOD, BID, 950L, 7L, ORDERS + 1L);
+        int foreign = encoder.getPosition();
+        encoder.newOrder(VOD, BID, 951L, 7L, ORDERS + 2L);
+        batch.getBuffer().putShort(foreign + WireFormat.SCHEMA_ID_OFFSET, (short) 0x7777);
+        batch.setLength(encoder.getEncodedLength());
+        inbound.publish(sequence);
+        sequence = inbound.next();
+        batch = inbound.get(sequence);
+        encoder.wrap(batch.getBuffer(), 0).trade(VOD, 5L, 2L).cancel(VOD, 1L).close(VOD);
+        batch.setLength(encoder.getEncodedLength());
+        inbound.publish(sequence);
+        validation.join(10_000L);
+        process.join(10_000L);
+
+        // The book only applied valid messages, and the stage accounts for every message
+        Assert.assertFalse(validation.isAlive());
+        Assert.assertFalse(process.isAlive());
+        Assert.assertEquals(ORDERS + 3L, book.getEventSequence());
+        Assert.assertEquals(ORDERS + 4L, stage.getForwarded());
+        Assert.assertEquals(ORDERS, stage.getRejected());
+        Assert.assertEquals(1L, stage.getMalformed());
+        Assert.assertEquals(ORDERS / 2 + 1, book.buys.size());
+        Assert.assertEquals(ORDERS / 2 - 1, book.sells.size());
+        Assert.assertEquals(950L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(7L, book.orderMap.get(ORDERS + 1L).getQuantity());
+        Assert.assertEquals(5L, book.orderMap.get(2L).getQuantity());
+    }
+}
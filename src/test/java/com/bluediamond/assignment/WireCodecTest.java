@@ -0,0 +1,121 @@
+package com.bluediamond.assignment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static com.bluediamond.assignment.Level2View.Side.ASK;
+import static com.bluediamond.assignment.Level2View.Side.BID;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Amend;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Cancel;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Close;
+import static com.bluediamond.assignment.OrderMessage.MessageType.New;
+import static com.bluediamond.assignment.OrderMessage.MessageType.Trade;
+
+public class WireCodecTest {
+
+    @Test
+    public void bookConsumesBatchInPlace() {
+        // Setup
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        OrderMessageEncoder encoder = new OrderMessageEncoder().wrap(buffer, 16);
+        encoder.newOrder(7, BID, 940L, 100L, 1L)
+                .newOrder(7, ASK, 950L, 30L, 2L)
+                .amend(7, 945L, 80L, 1L)
+                .trade(7, 10L, 2L)
+                .newOrder(7, BID, 930L, 5L, 3L)
+                .cancel(7, 3L)
+                .close(7);
+        Assert.assertEquals(40 + 40 + 40 + 32 + 40 + 24 + 16, encoder.getEncodedLength());
+
+        // Decode the batch straight into the book
+        OrderBook book = new OrderBook("VOD.L", TickSize.DEFAULT, new HashOrderIndex());
+        BookMetrics metrics = book.enableMetrics();
+        OrderMessageDecoder decoder = new OrderMessageDecoder().wrap(buffer, 16, encoder.getEncodedLength());
+        int messages = 0;
+        while (decoder.next()) {
+            Assert.assertEquals(7, decoder.getInstrumentId());
+            messages++;
+            if (!book.process(decoder)) {
+                break;
+            }
+        }
+        Assert.assertEquals(7, messages);
+        Assert.assertEquals(Close, decoder.getMsgType());
+        Assert.assertFalse(decoder.next());
+        Assert.assertEquals(16 + encoder.getEncodedLength(), decoder.getPosition());
+        Assert.assertEquals(945L, book.getTopOfBookTicks(BID));
+        Assert.assertEquals(1L, book.getBookDepth(BID));
+        Assert.assertEquals(20L, book.sells.getLevel(950L).getQuantity());
+        Assert.assertEquals(6L, book.getEventSequence());
+
+        // Measured like any other message, but without a producer stamp to measure queue wait from
+        Assert.assertEquals(3L, metrics.getProcessing(New).snapshot().getCount());
+        Assert.assertEquals(1L, metrics.getProcessing(Close).snapshot().getCount());
+        Assert.assertEquals(0L, metrics.getQueueWait(New).snapshot().getCount());
+    }
+
+    @Test
+    public void fieldsRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        OrderMessageEncoder encoder = new OrderMessageEncoder().wrap(buffer, 0);
+        OrderMessage[] messages = {
+                new OrderMessage().set(New, ASK, 1234L, 56L, Long.MAX_VALUE),
+                new OrderMessage().set(Amend, null, 1235L, 57L, 8L),
+                new OrderMessage().set(Cancel, null, 0L, 0L, 9L),
+                new OrderMessage().set(Trade, null, 0L, 58L, 10L),
+                new OrderMessage().set(Close, null, 0L, 0L, 0L)
+        };
+        for (OrderMessage msg : messages) {
+            encoder.encode(-1, msg);
+        }
+
+        OrderMessageDecoder decoder = new OrderMessageDecoder().wrap(buffer, 0, encoder.getPosition());
+        OrderMessage decoded = new OrderMessage();
+        for (OrderMessage msg : messages) {
+            Assert.assertTrue(decoder.next());
+            Assert.assertEquals(-1, decoder.getInstrumentId());
+            Assert.assertEquals(WireFormat.encodedLengthOf(msg.getMsgType()), decoder.getEncodedLength());
+            decoder.decodeInto(decoded);
+            Assert.assertEquals(msg.getMsgType(), decoded.getMsgType());
+            Assert.assertEquals(msg.getOrderData().getSide(), decoded.getOrderData().getSide());
+            Assert.assertEquals(msg.getOrderData().getPriceTicks(), decoded.getOrderData().getPriceTicks());
+            Assert.assertEquals(msg.getOrderData().getQuantity(), decoded.getOrderData().getQuantity());
+            Assert.assertEquals(msg.getOrderData().getOrderId(), decoded.getOrderData().getOrderId());
+        }
+        Assert.assertFalse(decoder.next());
+
+        // The buffer's limit bounds the encoder
+        encoder.wrap(buffer.limit(20), 0);
+        Assert.assertFalse(encoder.hasRoom(New));
+        Assert.assertThrows(BufferOverflowException.class, () -> encoder.cancel(1, 1L));
+    }
+
+    @Test
+    public void partialAndUnknownMessages() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        OrderMessageEncoder encoder = new OrderMessageEncoder().wrap(buffer, 0);
+        encoder.cancel(1, 1L);
+        // A message of a newer template id, which this version skips
+        int unknown = encoder.getPosition();
+        encoder.trade(1, 5L, 2L);
+        WireFormat.SHORTS.set(buffer, unknown + WireFormat.TEMPLATE_ID_OFFSET, (short) 42);
+        encoder.cancel(1, 3L);
+        int end = encoder.getPosition();
+
+        // The last message is cut short: the decoder stops before it
+        OrderMessageDecoder decoder = new OrderMessageDecoder().wrap(buffer, 0, end - 1);
+        Assert.assertTrue(decoder.next());
+        Assert.assertEquals(1L, decoder.getOrderId());
+        Assert.assertFalse(decoder.next());
+        Assert.assertEquals(end - 24, decoder.getPosition());
+
+        // Once complete, it follows the skipped message
+        decoder.wrap(buffer, decoder.getPosition(), 24);
+        Assert.assertTrue(decoder.next());
+        Assert.assertEquals(Cancel, decoder.getMsgType());
+        Assert.assertEquals(3L, decoder.getOrderId());
+    }
+}